@@ -0,0 +1,141 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * A layer for accessing a database that can have several operations outstanding at once, e.g. a store
+ * with a pipelining or event-driven client library. Each client thread will be given its own instance.
+ * The operations return immediately and report their result to a callback once the database answers;
+ * the callback may be invoked from any thread, including the calling one.
+ *
+ * The client keeps at most "maxinflight" operations outstanding per client thread. Blocking bindings
+ * (subclasses of DB) can also be run this way; they are then executed on a pool of threads, see
+ * BlockingAsyncDB.
+ *
+ * As with DB, this class should be constructed using a no-argument constructor, and any argument-based
+ * initialization should be done by init(). The result codes follow the same conventions as DB.
+ */
+public abstract class AsyncDB
+{
+	/**
+	 * Receives the result of an asynchronous operation.
+	 */
+	public interface Callback
+	{
+		/**
+		 * Called once when the operation has completed.
+		 *
+		 * @param result Zero on success, a non-zero error code on error.
+		 */
+		public void complete(int result);
+	}
+
+	/**
+	 * Properties for configuring this DB.
+	 */
+	Properties _p=new Properties();
+
+	/**
+	 * Set the properties for this DB.
+	 */
+	public void setProperties(Properties p)
+	{
+		_p=p;
+	}
+
+	/**
+	 * Get the set of properties for this DB.
+	 */
+	public Properties getProperties()
+	{
+		return _p;
+	}
+
+	/**
+	 * Initialize any state for this DB.
+	 * Called once per DB instance; there is one DB instance per client thread.
+	 */
+	public void init() throws DBException
+	{
+	}
+
+	/**
+	 * Cleanup any state for this DB. No operations are outstanding when this is called.
+	 * Called once per DB instance; there is one DB instance per client thread.
+	 */
+	public void cleanup() throws DBException
+	{
+	}
+
+	/**
+	 * Read a record from the database. Each field/value pair from the result will be stored in a HashMap.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to read.
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param result A HashMap of field/value pairs for the result
+	 * @param callback Receives zero on success, a non-zero error code on error or "not found".
+	 */
+	public abstract void read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result, Callback callback);
+
+	/**
+	 * Perform a range scan for a set of records in the database. Each field/value pair from the result will be stored in a HashMap.
+	 *
+	 * @param table The name of the table
+	 * @param startkey The record key of the first record to read.
+	 * @param recordcount The number of records to read
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param result A Vector of HashMaps, where each HashMap is a set field/value pairs for one record
+	 * @param callback Receives zero on success, a non-zero error code on error.
+	 */
+	public abstract void scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result, Callback callback);
+
+	/**
+	 * Update a record in the database. Any field/value pairs in the specified values HashMap will be written into the record with the specified
+	 * record key, overwriting any existing values with the same field name.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to write.
+	 * @param values A HashMap of field/value pairs to update in the record
+	 * @param callback Receives zero on success, a non-zero error code on error.
+	 */
+	public abstract void update(String table, String key, HashMap<String,ByteIterator> values, Callback callback);
+
+	/**
+	 * Insert a record in the database. Any field/value pairs in the specified values HashMap will be written into the record with the specified
+	 * record key.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to insert.
+	 * @param values A HashMap of field/value pairs to insert in the record
+	 * @param callback Receives zero on success, a non-zero error code on error.
+	 */
+	public abstract void insert(String table, String key, HashMap<String,ByteIterator> values, Callback callback);
+
+	/**
+	 * Delete a record from the database.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to delete.
+	 * @param callback Receives zero on success, a non-zero error code on error.
+	 */
+	public abstract void delete(String table, String key, Callback callback);
+}
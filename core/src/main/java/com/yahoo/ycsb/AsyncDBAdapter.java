@@ -0,0 +1,214 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Presents an AsyncDB to a client thread and its workload as a DB, keeping up to a fixed number of operations
+ * in flight. Each call issues the operation and returns zero as soon as it is outstanding; it only blocks while
+ * the maximum number of operations are already in flight. The actual results are counted by AsyncDBWrapper
+ * when the operations complete.
+ *
+ * Since the workload does not wait for results, operations that depend on each other (e.g. the read and the
+ * write of a read-modify-write) are simply pipelined, and the contents of read and scan results are not
+ * available to the workload. Transactions are not supported.
+ */
+public class AsyncDBAdapter extends DB
+{
+	/**
+	 * The maximum number of operations each client thread keeps outstanding.
+	 */
+	public static final String MAX_IN_FLIGHT_PROPERTY="maxinflight";
+
+	public static final String MAX_IN_FLIGHT_PROPERTY_DEFAULT="1";
+
+	AsyncDB _db;
+	int _maxinflight;
+	Semaphore _inflight;
+
+	/**
+	 * One operation's turn in flight, ended by its callback or by the failure to issue it, whichever comes first:
+	 * a binding may call the callback and then throw, and the turn must only be given back once.
+	 */
+	class Turn implements AsyncDB.Callback
+	{
+		AtomicBoolean _ended=new AtomicBoolean();
+
+		public void complete(int result)
+		{
+			if (_ended.compareAndSet(false,true))
+			{
+				_inflight.release();
+			}
+		}
+	}
+
+	public AsyncDBAdapter(AsyncDB db, int maxinflight)
+	{
+		_db=db;
+		_maxinflight=maxinflight;
+		_inflight=new Semaphore(maxinflight);
+	}
+
+	/**
+	 * Set the properties for this DB.
+	 */
+	public void setProperties(Properties p)
+	{
+		_db.setProperties(p);
+	}
+
+	/**
+	 * Get the set of properties for this DB.
+	 */
+	public Properties getProperties()
+	{
+		return _db.getProperties();
+	}
+
+	/**
+	 * Initialize any state for this DB.
+	 */
+	public void init() throws DBException
+	{
+		_db.init();
+	}
+
+	/**
+	 * Wait for all outstanding operations to complete. Client threads call this when they are done, so that the
+	 * operations they issued are counted in their own phase (or probe of a throughput search), not in the next one.
+	 */
+	public void drain()
+	{
+		_inflight.acquireUninterruptibly(_maxinflight);
+		_inflight.release(_maxinflight);
+	}
+
+	/**
+	 * Wait for all outstanding operations to complete, then cleanup any state for this DB.
+	 */
+	public void cleanup() throws DBException
+	{
+		drain();
+		_db.cleanup();
+	}
+
+	/**
+	 * Wait for a turn in flight.
+	 */
+	Turn takeTurn()
+	{
+		_inflight.acquireUninterruptibly();
+		return new Turn();
+	}
+
+	/**
+	 * End the turn in flight if the operation couldn't be issued; its callback may never be called.
+	 */
+	void endUnlessIssued(Turn turn, boolean issued)
+	{
+		if (!issued)
+		{
+			turn.complete(-1);
+		}
+	}
+
+	public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
+	{
+		Turn turn=takeTurn();
+		boolean issued=false;
+		try
+		{
+			_db.read(table,key,fields,result,turn);
+			issued=true;
+		}
+		finally
+		{
+			endUnlessIssued(turn,issued);
+		}
+		return 0;
+	}
+
+	public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
+	{
+		Turn turn=takeTurn();
+		boolean issued=false;
+		try
+		{
+			_db.scan(table,startkey,recordcount,fields,result,turn);
+			issued=true;
+		}
+		finally
+		{
+			endUnlessIssued(turn,issued);
+		}
+		return 0;
+	}
+
+	public int update(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		Turn turn=takeTurn();
+		boolean issued=false;
+		try
+		{
+			_db.update(table,key,values,turn);
+			issued=true;
+		}
+		finally
+		{
+			endUnlessIssued(turn,issued);
+		}
+		return 0;
+	}
+
+	public int insert(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		Turn turn=takeTurn();
+		boolean issued=false;
+		try
+		{
+			_db.insert(table,key,values,turn);
+			issued=true;
+		}
+		finally
+		{
+			endUnlessIssued(turn,issued);
+		}
+		return 0;
+	}
+
+	public int delete(String table, String key)
+	{
+		Turn turn=takeTurn();
+		boolean issued=false;
+		try
+		{
+			_db.delete(table,key,turn);
+			issued=true;
+		}
+		finally
+		{
+			endUnlessIssued(turn,issued);
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.JvmTelemetry;
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * Wrapper around a "real" AsyncDB that measures latencies and counts return codes. The latency of an
+ * operation is taken when its callback fires, so it covers the whole time the operation was outstanding.
+ */
+public class AsyncDBWrapper extends AsyncDB
+{
+	AsyncDB _db;
+	Measurements _measurements;
+
+	public AsyncDBWrapper(AsyncDB db)
+	{
+		_db=db;
+		_measurements=Measurements.getMeasurements();
+	}
+
+	/**
+	 * Set the properties for this DB.
+	 */
+	public void setProperties(Properties p)
+	{
+		_db.setProperties(p);
+	}
+
+	/**
+	 * Get the set of properties for this DB.
+	 */
+	public Properties getProperties()
+	{
+		return _db.getProperties();
+	}
+
+	/**
+	 * Initialize any state for this DB.
+	 */
+	public void init() throws DBException
+	{
+		_db.init();
+	}
+
+	/**
+	 * Cleanup any state for this DB.
+	 */
+	public void cleanup() throws DBException
+	{
+		long st=System.nanoTime();
+		_db.cleanup();
+		long en=System.nanoTime();
+		_measurements.measureNanos("CLEANUP", en-st);
+	}
+
+	/**
+	 * A callback that records the latency and result of one operation before passing the result on.
+	 * The start times are taken on the thread issuing the operation.
+	 */
+	class MeasuringCallback implements Callback
+	{
+		final String _op;
+		final Callback _callback;
+		final long _intendedstarttime;
+		final long _starttime;
+
+		MeasuringCallback(String op, Callback callback)
+		{
+			_op=op;
+			_callback=callback;
+			_intendedstarttime=_measurements.takeIntendedStartTimeNs();
+			_starttime=System.nanoTime();
+		}
+
+		public void complete(int result)
+		{
+			long en=System.nanoTime();
+			String name=Measurements.outcome(_op,result);
+			_measurements.measureNanos(name,en-_starttime);
+			_measurements.measureIntendedNanos(name,en-_intendedstarttime);
+			_measurements.reportReturnCode(name,result);
+			JvmTelemetry telemetry=_measurements.getJvmTelemetry();
+			if (telemetry!=null)
+			{
+				telemetry.countPause(name,_starttime,en);
+			}
+			_callback.complete(result);
+		}
+	}
+
+	public void read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result, Callback callback)
+	{
+		_db.read(table,key,fields,result,new MeasuringCallback("READ",callback));
+	}
+
+	public void scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result, Callback callback)
+	{
+		_db.scan(table,startkey,recordcount,fields,result,new MeasuringCallback("SCAN",callback));
+	}
+
+	public void update(String table, String key, HashMap<String,ByteIterator> values, Callback callback)
+	{
+		_db.update(table,key,values,new MeasuringCallback("UPDATE",callback));
+	}
+
+	public void insert(String table, String key, HashMap<String,ByteIterator> values, Callback callback)
+	{
+		_db.insert(table,key,values,new MeasuringCallback("INSERT",callback));
+	}
+
+	public void delete(String table, String key, Callback callback)
+	{
+		_db.delete(table,key,new MeasuringCallback("DELETE",callback));
+	}
+}
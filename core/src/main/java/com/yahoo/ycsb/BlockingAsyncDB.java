@@ -0,0 +1,190 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a blocking DB binding as an AsyncDB, by executing the operations on a pool of threads. Since DB
+ * instances are not expected to be thread safe, every pool thread gets an instance of its own, so a
+ * client thread with n operations in flight uses n instances of the blocking binding.
+ */
+public class BlockingAsyncDB extends AsyncDB
+{
+	/**
+	 * The number of threads (and blocking DB instances) used to execute operations. Defaults to "maxinflight".
+	 */
+	public static final String THREADS_PROPERTY="asyncdb.threads";
+
+	String _dbname;
+	int _threads;
+	Vector<DB> _dbs;
+	BlockingQueue<DB> _idle;
+	ExecutorService _executor;
+
+	/**
+	 * @param dbname the class name of the blocking DB binding
+	 * @param threads the default number of threads to execute operations on
+	 */
+	public BlockingAsyncDB(String dbname, int threads)
+	{
+		_dbname=dbname;
+		_threads=threads;
+	}
+
+	/**
+	 * Create and initialize the blocking DB instances and the threads to run them on.
+	 */
+	public void init() throws DBException
+	{
+		_threads=Integer.parseInt(getProperties().getProperty(THREADS_PROPERTY,""+_threads));
+		_dbs=new Vector<DB>();
+		_idle=new ArrayBlockingQueue<DB>(_threads);
+		for (int i=0; i<_threads; i++)
+		{
+			DB db=DBFactory.newRawDB(_dbname,getProperties());
+			if (db==null)
+			{
+				throw new DBException("Could not create DB "+_dbname);
+			}
+			db.init();
+			_dbs.add(db);
+			_idle.add(db);
+		}
+		_executor=Executors.newFixedThreadPool(_threads);
+	}
+
+	/**
+	 * Stop the threads and cleanup the blocking DB instances.
+	 */
+	public void cleanup() throws DBException
+	{
+		_executor.shutdown();
+		try
+		{
+			_executor.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			// do nothing.
+		}
+		for (DB db : _dbs)
+		{
+			db.cleanup();
+		}
+	}
+
+	/**
+	 * One operation against a blocking DB instance.
+	 */
+	abstract class Operation implements Runnable
+	{
+		final Callback _callback;
+
+		Operation(Callback callback)
+		{
+			_callback=callback;
+		}
+
+		abstract int execute(DB db);
+
+		public void run()
+		{
+			DB db=null;
+			int res;
+			try
+			{
+				db=_idle.take();
+				res=execute(db);
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+				res=-1;
+			}
+			finally
+			{
+				if (db!=null)
+				{
+					_idle.add(db);
+				}
+			}
+			_callback.complete(res);
+		}
+	}
+
+	public void read(final String table, final String key, final Set<String> fields, final HashMap<String,ByteIterator> result, Callback callback)
+	{
+		_executor.execute(new Operation(callback)
+		{
+			int execute(DB db)
+			{
+				return db.read(table,key,fields,result);
+			}
+		});
+	}
+
+	public void scan(final String table, final String startkey, final int recordcount, final Set<String> fields, final Vector<HashMap<String,ByteIterator>> result, Callback callback)
+	{
+		_executor.execute(new Operation(callback)
+		{
+			int execute(DB db)
+			{
+				return db.scan(table,startkey,recordcount,fields,result);
+			}
+		});
+	}
+
+	public void update(final String table, final String key, final HashMap<String,ByteIterator> values, Callback callback)
+	{
+		_executor.execute(new Operation(callback)
+		{
+			int execute(DB db)
+			{
+				return db.update(table,key,values);
+			}
+		});
+	}
+
+	public void insert(final String table, final String key, final HashMap<String,ByteIterator> values, Callback callback)
+	{
+		_executor.execute(new Operation(callback)
+		{
+			int execute(DB db)
+			{
+				return db.insert(table,key,values);
+			}
+		});
+	}
+
+	public void delete(final String table, final String key, Callback callback)
+	{
+		_executor.execute(new Operation(callback)
+		{
+			int execute(DB db)
+			{
+				return db.delete(table,key);
+			}
+		});
+	}
+}
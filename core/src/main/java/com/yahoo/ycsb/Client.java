@@ -21,7 +21,12 @@ package com.yahoo.ycsb;
 import java.io.*;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
 
+import com.yahoo.ycsb.measurements.HistogramLogWriter;
+import com.yahoo.ycsb.measurements.HotKeys;
+import com.yahoo.ycsb.measurements.JvmTelemetry;
+import com.yahoo.ycsb.measurements.RawCapture;
 import com.yahoo.ycsb.measurements.Measurements;
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
@@ -37,17 +42,24 @@ import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
 class StatusThread extends Thread
 {
 	Vector<Thread> _threads;
+	Vector<ClientThread> _clients;
 	String _label;
 	boolean _standardstatus;
+	TargetProfile _profile;
 	
 	/**
 	 * The interval for reporting status.
 	 */
 	public static final long sleeptime=10000;
 
-	public StatusThread(Vector<Thread> threads, String label, boolean standardstatus)
+	/**
+	 * @param profile the target throughput of the run, or null if it is unthrottled
+	 */
+	public StatusThread(Vector<Thread> threads, Vector<ClientThread> clients, String label, boolean standardstatus, TargetProfile profile)
 	{
+		_profile=profile;
 		_threads=threads;
+		_clients=clients;
 		_label=label;
 		_standardstatus=standardstatus;
 	}
@@ -68,7 +80,7 @@ class StatusThread extends Thread
 		{
 			alldone=true;
 
-			int totalops=0;
+			long totalops=0;
 
 			//terminate this thread when all the worker threads are done
 			for (Thread t : _threads)
@@ -77,8 +89,10 @@ class StatusThread extends Thread
 				{
 					alldone=false;
 				}
+			}
 
-				ClientThread ct=(ClientThread)t;
+			for (ClientThread ct : _clients)
+			{
 				totalops+=ct.getOpsDone();
 			}
 
@@ -93,6 +107,12 @@ class StatusThread extends Thread
 			lasten=en;
 			
 			DecimalFormat d = new DecimalFormat("#.##");
+
+			String target="";
+			if (_profile!=null)
+			{
+				target=d.format(Math.max(_profile.targetAt(interval/1000.0),0))+" target ops/sec; ";
+			}
 			
 			if (totalops==0)
 			{
@@ -100,7 +120,7 @@ class StatusThread extends Thread
 			}
 			else
 			{
-				System.err.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+Measurements.getMeasurements().getSummary());
+				System.err.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+target+Measurements.getMeasurements().getSummary());
 			}
 
 			if (_standardstatus)
@@ -111,7 +131,7 @@ class StatusThread extends Thread
 			}
 			else
 			{
-				System.out.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+Measurements.getMeasurements().getSummary());
+				System.out.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+target+Measurements.getMeasurements().getSummary());
 			}
 			}
 
@@ -129,192 +149,6 @@ class StatusThread extends Thread
 	}
 }
 
-/**
- * A thread for executing transactions or data inserts to the database.
- * 
- * @author cooperb
- *
- */
-class ClientThread extends Thread
-{
-	DB _db;
-	boolean _dotransactions;
-	Workload _workload;
-	int _opcount;
-	double _target;
-
-	int _opsdone;
-	int _threadid;
-	int _threadcount;
-	Object _workloadstate;
-	Properties _props;
-
-
-	/**
-	 * Constructor.
-	 * 
-	 * @param db the DB implementation to use
-	 * @param dotransactions true to do transactions, false to insert data
-	 * @param workload the workload to use
-	 * @param threadid the id of this thread 
-	 * @param threadcount the total number of threads 
-	 * @param props the properties defining the experiment
-	 * @param opcount the number of operations (transactions or inserts) to do
-	 * @param targetperthreadperms target number of operations per thread per ms
-	 */
-	public ClientThread(DB db, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, int opcount, double targetperthreadperms)
-	{
-		//TODO: consider removing threadcount and threadid
-		_db=db;
-		_dotransactions=dotransactions;
-		_workload=workload;
-		_opcount=opcount;
-		_opsdone=0;
-		_target=targetperthreadperms;
-		_threadid=threadid;
-		_threadcount=threadcount;
-		_props=props;
-		//System.out.println("Interval = "+interval);
-	}
-
-	public int getOpsDone()
-	{
-		return _opsdone;
-	}
-
-	public void run()
-	{
-		try
-		{
-			_db.init();
-		}
-		catch (DBException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-
-		try
-		{
-			_workloadstate=_workload.initThread(_props,_threadid,_threadcount);
-		}
-		catch (WorkloadException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-
-		//spread the thread operations out so they don't all hit the DB at the same time
-		try
-		{
-		   //GH issue 4 - throws exception if _target>1 because random.nextInt argument must be >0
-		   //and the sleep() doesn't make sense for granularities < 1 ms anyway
-		   if ( (_target>0) && (_target<=1.0) ) 
-		   {
-		      sleep(Utils.random().nextInt((int)(1.0/_target)));
-		   }
-		}
-		catch (InterruptedException e)
-		{
-		  // do nothing.
-		}
-		
-		try
-		{
-			if (_dotransactions)
-			{
-				long st=System.currentTimeMillis();
-
-				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-				{
-
-					if (!_workload.doTransaction(_db,_workloadstate))
-					{
-						break;
-					}
-
-					_opsdone++;
-
-					//throttle the operations
-					if (_target>0)
-					{
-						//this is more accurate than other throttling approaches we have tried,
-						//like sleeping for (1/target throughput)-operation latency,
-						//because it smooths timing inaccuracies (from sleep() taking an int, 
-						//current time in millis) over many operations
-						while (System.currentTimeMillis()-st<((double)_opsdone)/_target)
-						{
-							try
-							{
-								sleep(1);
-							}
-							catch (InterruptedException e)
-							{
-							  // do nothing.
-							}
-
-						}
-					}
-				}
-			}
-			else
-			{
-				long st=System.currentTimeMillis();
-
-				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-				{
-
-					if (!_workload.doInsert(_db,_workloadstate))
-					{
-						break;
-					}
-
-					_opsdone++;
-
-					//throttle the operations
-					if (_target>0)
-					{
-						//this is more accurate than other throttling approaches we have tried,
-						//like sleeping for (1/target throughput)-operation latency,
-						//because it smooths timing inaccuracies (from sleep() taking an int, 
-						//current time in millis) over many operations
-						while (System.currentTimeMillis()-st<((double)_opsdone)/_target)
-						{
-							try 
-							{
-								sleep(1);
-							}
-							catch (InterruptedException e)
-							{
-							  // do nothing.
-							}
-						}
-					}
-				}
-			}
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			System.exit(0);
-		}
-
-		try
-		{
-			_db.cleanup();
-		}
-		catch (DBException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-	}
-}
-
 /**
  * Main class for executing YCSB.
  */
@@ -339,14 +173,61 @@ public class Client
    */
   public static final String MAX_EXECUTION_TIME = "maxexecutiontime";
 
+	/**
+	 * The kind of threads the client threads run on: "platform" (the default) or "virtual". Virtual threads are much
+	 * cheaper, so tens of thousands of client threads can be simulated from one JVM, but they need Java 21 or later.
+	 */
+	public static final String EXECUTOR_PROPERTY="executor";
+
+	public static final String EXECUTOR_PROPERTY_DEFAULT="platform";
+
+	/**
+	 * The fraction of the target throughput (or profile) this client runs at, e.g. as one of the workers of a
+	 * Coordinator.
+	 */
+	public static final String TARGET_SHARE_PROPERTY="targetshare";
+
+	/**
+	 * A list of phases to run one after the other in the same JVM, e.g.
+	 * "load:workloads/workloada,run:workloads/workloada,run:workloads/workloadb". Each phase is "load" or "run",
+	 * optionally followed by a property file whose properties override the others for that phase (but not those
+	 * given with -p). Each phase has its own measurements and export; with "exportfile", the phase's name is
+	 * added to the file name. The workload of each phase can take over state from the previous one, see
+	 * Workload.init(Properties, Workload).
+	 */
+	public static final String PHASES_PROPERTY="phases";
+
+	/**
+	 * Whether a phase reuses the DB instances, and so the connections, of the previous phase if it uses the same DB.
+	 */
+	public static final String PHASES_REUSE_DB_PROPERTY="phases.reusedb";
+
+	public static final String PHASES_REUSE_DB_PROPERTY_DEFAULT="true";
+
+	/**
+	 * What one phase of a multi-phase run leaves for the next.
+	 */
+	static class PhaseState
+	{
+		Workload workload;
+		String dbname;
+		Vector<DB> dbs=new Vector<DB>();
+	}
+
 	public static void usageMessage()
 	{
 		System.out.println("Usage: java com.yahoo.ycsb.Client [options]");
 		System.out.println("Options:");
 		System.out.println("  -threads n: execute using n threads (default: 1) - can also be specified as the \n" +
 				"              \"threadcount\" property using -p");
+		System.out.println("  -vthreads: run each client thread on a virtual thread (requires Java 21 or later) -\n" +
+				"              can also be specified as the \"executor=virtual\" property using -p");
 		System.out.println("  -target n: attempt to do n operations per second (default: unlimited) - can also\n" +
 				"             be specified as the \"target\" property using -p");
+		System.out.println("             To vary the target over time, use the \"targetprofile\" property instead, e.g.\n" +
+				"             \"ramp:1000,10000,300\", \"step:0=1000,60=5000\", \"sine:5000,2000,600\" or \"csv:file\"");
+		System.out.println("  -search: search for the highest throughput that meets a latency SLA, e.g. a READ 99th\n" +
+				"             percentile below 5 ms (see the \"search.*\" properties of ThroughputSearch)");
 		System.out.println("  -load:  run the loading phase of the workload");
 		System.out.println("  -t:  run the transactions phase of the workload (default)");
 		System.out.println("  -db dbname: specify the name of the DB to use (default: com.yahoo.ycsb.BasicDB) - \n" +
@@ -357,6 +238,26 @@ public class Client
 		System.out.println("                  multiple properties can be specified, and override any");
 		System.out.println("                  values in the propertyfile");
 		System.out.println("  -s:  show status during run (default: no status)");
+		System.out.println("  -p phases=load:file,run:file,...:  run several phases one after the other, each with");
+		System.out.println("                  its own property file and export, reusing the DB connections");
+		System.out.println("  -p coordinator.workers=n:  run on n worker processes launched on this machine, splitting");
+		System.out.println("                  the key range and target between them and merging their measurements");
+		System.out.println("  -p histogramlog.file=file:  log the latency distribution of each operation every second, to");
+		System.out.println("                  extract percentiles over any time range with HistogramLogReader");
+		System.out.println("  -p throughputseries.granularity=ms:  export the throughput of each operation over time,");
+		System.out.println("                  in intervals of ms milliseconds (e.g. READ-THROUGHPUT)");
+		System.out.println("  -p metrics.port=n:  serve the progress of the run in the OpenMetrics format at");
+		System.out.println("                  http://localhost:n/metrics");
+		System.out.println("  -p rawcapture.file=file:  capture every operation (start time, key, latency, return code)");
+		System.out.println("                  to file, to convert to CSV with RawCaptureReader");
+		System.out.println("  -p hotkeys.topk=n:  export the n keys with the most operations and the n keys with the");
+		System.out.println("                  most total latency, found in bounded memory");
+		System.out.println("  -p jvmtelemetry.interval=ms:  sample GC time, client stalls and allocations every ms");
+		System.out.println("                  milliseconds, and export the stall time of each operation");
+		System.out.println("  -p hdrhistogram.exportdistribution=true:  export the whole latency distribution of each");
+		System.out.println("                  operation, to merge the exports of several clients with MergedMeasurements");
+		System.out.println("  -worker host:port:  run as a worker of the coordinator at host:port (with");
+		System.out.println("                  \"coordinator.launch=false\")");
 		System.out.println("  -l label:  use label for status (e.g. to label one experiment out of a whole batch)");
 		System.out.println("");
 		System.out.println("Required properties:");
@@ -367,6 +268,43 @@ public class Client
 		System.out.println("use the \"insertcount\" and \"insertstart\" properties to divide up the records to be inserted");
 	}
 
+	/**
+	 * Create the factory for the threads that run the client threads, as selected by the "executor" property.
+	 * Virtual threads are looked up reflectively, so that the client still builds and runs on older JVMs; there
+	 * it falls back to platform threads.
+	 */
+	static ThreadFactory newThreadFactory(Properties props)
+	{
+		String executor=props.getProperty(EXECUTOR_PROPERTY,EXECUTOR_PROPERTY_DEFAULT);
+
+		if (executor.compareTo("virtual")==0)
+		{
+			try
+			{
+				Class<?> builderclass=Class.forName("java.lang.Thread$Builder");
+				Object builder=Thread.class.getMethod("ofVirtual").invoke(null);
+				builder=builderclass.getMethod("name",String.class,long.class).invoke(builder,"ClientThread-",0L);
+				return (ThreadFactory)builderclass.getMethod("factory").invoke(builder);
+			}
+			catch (Exception e)
+			{
+				System.err.println("Virtual threads are not supported by Java "+System.getProperty("java.version")+", using platform threads instead.");
+			}
+		}
+		else if (executor.compareTo(EXECUTOR_PROPERTY_DEFAULT)!=0)
+		{
+			System.err.println("Unknown "+EXECUTOR_PROPERTY+" \""+executor+"\", using platform threads.");
+		}
+
+		return new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				return new Thread(r);
+			}
+		};
+	}
+
 	public static boolean checkRequiredProperties(Properties props)
 	{
 		if (props.getProperty(WORKLOAD_PROPERTY)==null)
@@ -379,46 +317,109 @@ public class Client
 	}
 
 
+	/**
+	 * Creates the exporter loaded from conf, writing to either sysout or a file.
+	 * @throws IOException Failed to open the file.
+	 */
+	static MeasurementsExporter newExporter(Properties props) throws IOException
+	{
+		// if no destination file is provided the results will be written to stdout
+		OutputStream out;
+		String exportFile = props.getProperty("exportfile");
+		if (exportFile == null)
+		{
+			out = System.out;
+		} else
+		{
+			out = new FileOutputStream(exportFile);
+		}
+
+		// if no exporter is provided the default text one will be used
+		String exporterStr = props.getProperty("exporter", "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
+		try
+		{
+			return (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
+		} catch (Exception e)
+		{
+			System.err.println("Could not find exporter " + exporterStr
+					+ ", will use default text reporter.");
+			e.printStackTrace();
+			return new TextMeasurementsExporter(out);
+		}
+	}
+
 	/**
 	 * Exports the measurements to either sysout or a file using the exporter
 	 * loaded from conf.
 	 * @throws IOException Either failed to write to output stream or failed to close it.
 	 */
-	private static void exportMeasurements(Properties props, int opcount, long runtime)
+	private static void exportMeasurements(Properties props, long opcount, long runtime, Vector<ClientThread> clients, ThroughputSearch search, WarmupThread warmup, RawCapture capture, HotKeys hotkeys, JvmTelemetry telemetry)
 			throws IOException
 	{
 		MeasurementsExporter exporter = null;
 		try
 		{
-			// if no destination file is provided the results will be written to stdout
-			OutputStream out;
-			String exportFile = props.getProperty("exportfile");
-			if (exportFile == null)
+			exporter = newExporter(props);
+
+			exporter.write("OVERALL", "RunTime(ms)", runtime);
+			double throughput = (runtime > 0) ? 1000.0 * ((double) opcount) / ((double) runtime) : 0.0;
+			exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
+
+			//the throughput above counts every operation attempted; count the successful ones by their return codes
+			long[] outcomes = Measurements.getMeasurements().getOutcomes("");
+			if (warmup != null)
 			{
-				out = System.out;
-			} else
+				long[] warmupoutcomes = Measurements.getMeasurements().getOutcomes(WarmupThread.NAMESPACE);
+				outcomes[0] -= warmupoutcomes[0];
+				outcomes[1] -= warmupoutcomes[1];
+			}
+			if (outcomes[0] + outcomes[1] > 0)
 			{
-				out = new FileOutputStream(exportFile);
+				exporter.write("OVERALL", "SuccessfulThroughput(ops/sec)", throughput * outcomes[0] / (outcomes[0] + outcomes[1]));
+				exporter.write("OVERALL", "FailedOperations", outcomes[1]);
 			}
 
-			// if no exporter is provided the default text one will be used
-			String exporterStr = props.getProperty("exporter", "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
-			try
+			if (warmup != null)
 			{
-				exporter = (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
-			} catch (Exception e)
+				exporter.write("OVERALL", "WarmupTime(ms)", warmup.getWarmupTime());
+				exporter.write("OVERALL", "WarmupOperations", warmup.getOpsDone());
+			}
+
+			if (capture != null)
 			{
-				System.err.println("Could not find exporter " + exporterStr
-						+ ", will use default text reporter.");
-				e.printStackTrace();
-				exporter = new TextMeasurementsExporter(out);
+				exporter.write("RAWCAPTURE", "Operations", capture.getRecords());
+				exporter.write("RAWCAPTURE", "Dropped", capture.getDropped());
 			}
 
-			exporter.write("OVERALL", "RunTime(ms)", runtime);
-			double throughput = 1000.0 * ((double) opcount) / ((double) runtime);
-			exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
+			Vector<Pacer> pacers=new Vector<Pacer>();
+			for (ClientThread ct : clients)
+			{
+				if (ct.getPacer()!=null)
+				{
+					pacers.add(ct.getPacer());
+				}
+			}
+			if (!pacers.isEmpty())
+			{
+				Pacer.exportMeasurements(pacers,exporter);
+			}
+
+			if (search!=null)
+			{
+				search.exportMeasurements(exporter);
+			}
 
 			Measurements.getMeasurements().exportMeasurements(exporter);
+
+			if (hotkeys != null)
+			{
+				hotkeys.exportMeasurements(exporter);
+			}
+
+			if (telemetry != null)
+			{
+				telemetry.exportMeasurements(exporter);
+			}
 		} finally
 		{
 			if (exporter != null)
@@ -431,14 +432,12 @@ public class Client
 	@SuppressWarnings("unchecked")
 	public static void main(String[] args)
 	{
-		String dbname;
 		Properties props=new Properties();
 		Properties fileprops=new Properties();
 		boolean dotransactions=true;
-		int threadcount=1;
-		int target=0;
 		boolean status=false;
 		String label="";
+		String worker=null;
 
 		//parse arguments
 		int argindex=0;
@@ -475,6 +474,27 @@ public class Client
 				props.setProperty("target", ttarget+"");
 				argindex++;
 			}
+			else if (args[argindex].compareTo("-worker")==0)
+			{
+				argindex++;
+				if (argindex>=args.length)
+				{
+					usageMessage();
+					System.exit(0);
+				}
+				worker=args[argindex];
+				argindex++;
+			}
+			else if (args[argindex].compareTo("-search")==0)
+			{
+				props.setProperty(ThroughputSearch.SEARCH_PROPERTY, "true");
+				argindex++;
+			}
+			else if (args[argindex].compareTo("-vthreads")==0)
+			{
+				props.setProperty(EXECUTOR_PROPERTY, "virtual");
+				argindex++;
+			}
 			else if (args[argindex].compareTo("-load")==0)
 			{
 				dotransactions=false;
@@ -596,27 +616,24 @@ public class Client
 		   fileprops.setProperty(prop,props.getProperty(prop));
 		}
 
+		Properties cmdlineprops=props;
 		props=fileprops;
 
-		if (!checkRequiredProperties(props))
+		//a worker gets everything else from its coordinator
+		if (worker!=null)
 		{
+			try
+			{
+				Coordinator.runWorker(worker);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Worker failed: "+e.getMessage());
+				e.printStackTrace();
+				System.exit(-1);
+			}
 			System.exit(0);
 		}
-		
-		long maxExecutionTime = Integer.parseInt(props.getProperty(MAX_EXECUTION_TIME, "0"));
-
-		//get number of threads, target and db
-		threadcount=Integer.parseInt(props.getProperty("threadcount","1"));
-		dbname=props.getProperty("db","com.yahoo.ycsb.BasicDB");
-		target=Integer.parseInt(props.getProperty("target","0"));
-		
-		//compute the target throughput
-		double targetperthreadperms=-1;
-		if (target>0)
-		{
-			double targetperthread=((double)target)/((double)threadcount);
-			targetperthreadperms=targetperthread/1000.0;
-		}	 
 
 		System.out.println("YCSB Client 0.1");
 		System.out.print("Command line:");
@@ -625,6 +642,196 @@ public class Client
 			System.out.print(" "+args[i]);
 		}
 		System.out.println();
+
+		String phases=props.getProperty(PHASES_PROPERTY);
+		if (props.getProperty(Coordinator.WORKERS_PROPERTY)!=null)
+		{
+			if (!checkRequiredProperties(props))
+			{
+				System.exit(0);
+			}
+			if ( (phases!=null) || Boolean.parseBoolean(props.getProperty(ThroughputSearch.SEARCH_PROPERTY,ThroughputSearch.SEARCH_PROPERTY_DEFAULT)) )
+			{
+				System.out.println("Phases and searches can't be run by a coordinator");
+				System.exit(0);
+			}
+			try
+			{
+				new Coordinator(props,dotransactions).run();
+			}
+			catch (IOException e)
+			{
+				System.err.println("Coordinator failed: "+e.getMessage());
+				e.printStackTrace();
+				System.exit(-1);
+			}
+		}
+		else if (phases==null)
+		{
+			if (!checkRequiredProperties(props))
+			{
+				System.exit(0);
+			}
+			runPhase(props,dotransactions,status,label,null,true);
+		}
+		else
+		{
+			runPhases(phases,props,cmdlineprops,status,label);
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Run the phases of a multi-phase run one after the other (see PHASES_PROPERTY).
+	 *
+	 * @param phases the list of phases
+	 * @param props the properties of the run
+	 * @param cmdlineprops the properties given on the command line, which override those of the phases
+	 */
+	static void runPhases(String phases, Properties props, Properties cmdlineprops, boolean status, String label)
+	{
+		String[] specs=phases.split(",");
+		PhaseState state=null;
+		for (int i=0; i<specs.length; i++)
+		{
+			String spec=specs[i].trim();
+			int colon=spec.indexOf(':');
+			String type=(colon<0) ? spec : spec.substring(0,colon);
+			String propfile=(colon<0) ? null : spec.substring(colon+1);
+
+			boolean dotransactions;
+			if (type.equals("load"))
+			{
+				dotransactions=false;
+			}
+			else if (type.equals("run") || type.equals("t"))
+			{
+				dotransactions=true;
+			}
+			else
+			{
+				System.out.println("Unknown phase type \""+type+"\" in \""+spec+"\", should be load or run");
+				System.exit(0);
+				return;
+			}
+
+			//the phase's property file overrides the run's properties, the command line overrides both
+			Properties phaseprops=new Properties();
+			for (String prop : props.stringPropertyNames())
+			{
+				phaseprops.setProperty(prop,props.getProperty(prop));
+			}
+			String name=(i+1)+"-"+type;
+			if (propfile!=null)
+			{
+				Properties myfileprops=new Properties();
+				try
+				{
+					myfileprops.load(new FileInputStream(propfile));
+				}
+				catch (IOException e)
+				{
+					System.out.println(e.getMessage());
+					System.exit(0);
+				}
+				for (String prop : myfileprops.stringPropertyNames())
+				{
+					phaseprops.setProperty(prop,myfileprops.getProperty(prop));
+				}
+				name+="-"+new File(propfile).getName();
+			}
+			for (String prop : cmdlineprops.stringPropertyNames())
+			{
+				phaseprops.setProperty(prop,cmdlineprops.getProperty(prop));
+			}
+			phaseprops.remove(PHASES_PROPERTY);
+
+			//each phase is exported to a file of its own
+			String exportfile=phaseprops.getProperty("exportfile");
+			if (exportfile!=null)
+			{
+				int dot=exportfile.lastIndexOf('.');
+				if (dot>exportfile.lastIndexOf(File.separatorChar))
+				{
+					exportfile=exportfile.substring(0,dot)+"-"+name+exportfile.substring(dot);
+				}
+				else
+				{
+					exportfile=exportfile+"-"+name;
+				}
+				phaseprops.setProperty("exportfile",exportfile);
+			}
+
+			if (!checkRequiredProperties(phaseprops))
+			{
+				System.exit(0);
+			}
+
+			System.err.println("Phase "+name);
+			System.out.println("Phase "+name);
+			state=runPhase(phaseprops,dotransactions,status,label,state,i==specs.length-1);
+		}
+	}
+
+	/**
+	 * Run one phase: load the data set or run the transactions of a workload, then export the measurements.
+	 *
+	 * @param previous what the previous phase of a multi-phase run left, or null for the first phase
+	 * @param last true if no phase follows, so the DBs are cleaned up at the end
+	 * @return what this phase leaves for the next
+	 */
+	static PhaseState runPhase(Properties props, boolean dotransactions, boolean status, String label, PhaseState previous, boolean last)
+	{
+		return runPhase(props,dotransactions,status,label,previous,last,null);
+	}
+
+	/**
+	 * Run one phase, waiting at the given gate once everything is set up and before the client threads start.
+	 *
+	 * @param startgate blocks until the run is to start, or null to start right away
+	 */
+	static PhaseState runPhase(Properties props, boolean dotransactions, boolean status, String label, PhaseState previous, boolean last, Runnable startgate)
+	{
+		long maxExecutionTime = Integer.parseInt(props.getProperty(MAX_EXECUTION_TIME, "0"));
+
+		//get number of threads, target and db
+		int threadcount=Integer.parseInt(props.getProperty("threadcount","1"));
+		String dbname=props.getProperty("db","com.yahoo.ycsb.BasicDB");
+		int target=Integer.parseInt(props.getProperty("target","0"));
+		
+		//get the target throughput over time, either from a profile or the fixed target
+		TargetProfile profile=null;
+		String profilespec=props.getProperty(TargetProfile.TARGET_PROFILE_PROPERTY);
+		if (profilespec!=null)
+		{
+			try
+			{
+				profile=TargetProfile.parse(profilespec);
+			}
+			catch (IllegalArgumentException e)
+			{
+				System.out.println(e.getMessage());
+				System.exit(0);
+			}
+		}
+		else if (target>0)
+		{
+			profile=new TargetProfile.Constant(target);
+		}
+		double targetshare=Double.parseDouble(props.getProperty(TARGET_SHARE_PROPERTY,"1"));
+		if ( (profile!=null) && (targetshare!=1.0) )
+		{
+			profile=new TargetProfile.Scaled(profile,targetshare);
+		}
+
+		//set up the schedule shared by all threads, if requested; otherwise each thread gets its share of the target
+		Pacer.Schedule sharedschedule=null;
+		if ( (profile!=null) && Boolean.parseBoolean(props.getProperty(Pacer.SHARED_PROPERTY,Pacer.SHARED_PROPERTY_DEFAULT)) )
+		{
+			sharedschedule=new Pacer.Schedule(profile,1.0,false);
+		}
+
 		System.err.println("Loading workload...");
 		
 		//show a warning message that creating the workload is taking a while
@@ -650,6 +857,10 @@ public class Client
 		
 		//set up measurements
 		Measurements.setProperties(props);
+		if (previous!=null)
+		{
+			Measurements.getMeasurements().reset(props);
+		}
 		
 		//load the workload
 		ClassLoader classLoader = Client.class.getClassLoader();
@@ -671,7 +882,7 @@ public class Client
 
 		try
 		{
-			workload.init(props);
+			workload.init(props,(previous==null) ? null : previous.workload);
 		}
 		catch (WorkloadException e)
 		{
@@ -686,44 +897,156 @@ public class Client
 
 		System.err.println("Starting test.");
 
-		int opcount;
+		long opcount;
 		if (dotransactions)
 		{
-			opcount=Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
+			opcount=Long.parseLong(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
 		}
 		else
 		{
 			if (props.containsKey(INSERT_COUNT_PROPERTY))
 			{
-				opcount=Integer.parseInt(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
+				opcount=Long.parseLong(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
 			}
 			else
 			{
-				opcount=Integer.parseInt(props.getProperty(RECORD_COUNT_PROPERTY,"0"));
+				opcount=Long.parseLong(props.getProperty(RECORD_COUNT_PROPERTY,"0"));
 			}
 		}
 
+		ThreadFactory threadfactory=newThreadFactory(props);
 		Vector<Thread> threads=new Vector<Thread>();
+		Vector<ClientThread> clients=new Vector<ClientThread>();
+		Vector<DB> dbs=new Vector<DB>();
+		boolean search=Boolean.parseBoolean(props.getProperty(ThroughputSearch.SEARCH_PROPERTY,ThroughputSearch.SEARCH_PROPERTY_DEFAULT));
+
+		//take over the DBs of the previous phase if it used the same DB, and clean up those that aren't needed
+		Vector<DB> reused=new Vector<DB>();
+		if (previous!=null)
+		{
+			boolean reuse=(!search) && dbname.equals(previous.dbname)
+					&& Boolean.parseBoolean(props.getProperty(PHASES_REUSE_DB_PROPERTY,PHASES_REUSE_DB_PROPERTY_DEFAULT));
+			for (DB db : previous.dbs)
+			{
+				if (reuse && (reused.size()<threadcount))
+				{
+					reused.add(db);
+					continue;
+				}
+				try
+				{
+					db.cleanup();
+				}
+				catch (DBException e)
+				{
+					e.printStackTrace();
+					e.printStackTrace(System.out);
+				}
+			}
+		}
 
 		for (int threadid=0; threadid<threadcount; threadid++)
 		{
 			DB db=null;
-			try
+			if (threadid<reused.size())
 			{
-				db=DBFactory.newDB(dbname,props);
+				db=reused.get(threadid);
 			}
-			catch (UnknownDBException e)
+			else
 			{
-				System.out.println("Unknown DB "+dbname);
-				System.exit(0);
+				try
+				{
+					db=DBFactory.newDB(dbname,props);
+				}
+				catch (UnknownDBException e)
+				{
+					System.out.println("Unknown DB "+dbname);
+					System.exit(0);
+				}
+			}
+
+			//in a search, the client threads are created for each probe
+			dbs.add(db);
+			if (search)
+			{
+				continue;
+			}
+
+			Pacer pacer=null;
+			if (sharedschedule!=null)
+			{
+				pacer=new Pacer(sharedschedule);
+			}
+			else if (profile!=null)
+			{
+				pacer=new Pacer(profile,1.0/threadcount);
 			}
 
-			Thread t=new ClientThread(db,dotransactions,workload,threadid,threadcount,props,opcount/threadcount,targetperthreadperms);
+			ClientThread ct=new ClientThread(db,dotransactions,workload,threadid,threadcount,props,opcount/threadcount,pacer);
+			//keep the DB for the next phase unless this is the last one
+			ct.setManageDB(threadid>=reused.size(),last);
 
-			threads.add(t);
+			clients.add(ct);
+			threads.add(threadfactory.newThread(ct));
 			//t.start();
 		}
 
+		ThroughputSearch throughputsearch=null;
+		if (search)
+		{
+			throughputsearch=new ThroughputSearch(props,workload,dbs,dotransactions,threadfactory);
+		}
+
+		WarmupThread warmupthread=null;
+		if ( (throughputsearch==null) && WarmupThread.isEnabled(props) )
+		{
+			warmupthread=new WarmupThread(clients,props);
+		}
+
+		try
+		{
+			MetricsServer metrics=MetricsServer.getServer(props);
+			if (metrics!=null)
+			{
+				metrics.setClients(clients);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not start the metrics server, running without it: "+e.getMessage());
+		}
+
+		HistogramLogWriter histogramlog=null;
+		if (HistogramLogWriter.isEnabled(props))
+		{
+			try
+			{
+				histogramlog=new HistogramLogWriter(props,previous!=null);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not open the histogram log, running without it: "+e.getMessage());
+			}
+		}
+
+		RawCapture capture=null;
+		if (RawCapture.isEnabled(props))
+		{
+			try
+			{
+				capture=new RawCapture(props,previous!=null);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not open the raw capture, running without it: "+e.getMessage());
+			}
+		}
+
+		if (startgate!=null)
+		{
+			startgate.run();
+		}
+
 		StatusThread statusthread=null;
 
 		if (status)
@@ -733,16 +1056,42 @@ public class Client
 			{
 				standardstatus=true;
 			}	
-			statusthread=new StatusThread(threads,label,standardstatus);
+			statusthread=new StatusThread(threads,clients,label,standardstatus,profile);
 			statusthread.start();
 		}
 
 		long st=System.currentTimeMillis();
 
+		if (histogramlog!=null)
+		{
+			histogramlog.start();
+		}
+
+		if (capture!=null)
+		{
+			Measurements.getMeasurements().setRawCapture(capture);
+			capture.start();
+		}
+
+		HotKeys hotkeys=HotKeys.isEnabled(props) ? new HotKeys(props) : null;
+		Measurements.getMeasurements().setHotKeys(hotkeys);
+
+		JvmTelemetry telemetry=JvmTelemetry.isEnabled(props) ? new JvmTelemetry(props) : null;
+		if (telemetry!=null)
+		{
+			Measurements.getMeasurements().setJvmTelemetry(telemetry);
+			telemetry.start();
+		}
+
 		for (Thread t : threads)
 		{
 			t.start();
 		}
+
+		if (warmupthread!=null)
+		{
+			warmupthread.start();
+		}
 		
     Thread terminator = null;
     
@@ -751,21 +1100,60 @@ public class Client
       terminator.start();
     }
     
-    int opsDone = 0;
+    long opsDone = 0;
+
+		if (throughputsearch!=null)
+		{
+			try
+			{
+				throughputsearch.run();
+			}
+			catch (DBException e)
+			{
+				e.printStackTrace();
+				e.printStackTrace(System.out);
+				System.exit(0);
+			}
+			opsDone+=throughputsearch.getOpsDone();
+		}
 
 		for (Thread t : threads)
 		{
 			try
 			{
 				t.join();
-				opsDone += ((ClientThread)t).getOpsDone();
 			}
 			catch (InterruptedException e)
 			{
 			}
 		}
 
+		for (ClientThread ct : clients)
+		{
+			opsDone += ct.getOpsDone();
+		}
+
 		long en=System.currentTimeMillis();
+
+		//only count the operations and time after the warmup
+		if (warmupthread!=null)
+		{
+			warmupthread.interrupt();
+			try
+			{
+				warmupthread.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+			if (!warmupthread.isDone())
+			{
+				System.err.println("The run ended during the warmup, all measurements are in the "+WarmupThread.NAMESPACE+" namespace");
+				warmupthread.end();
+			}
+			opsDone-=warmupthread.getOpsDone();
+			st=Math.min(warmupthread.getEndTime(),en);
+		}
 		
 		if (terminator != null && !terminator.isInterrupted()) {
       terminator.interrupt();
@@ -776,6 +1164,24 @@ public class Client
 			statusthread.interrupt();
 		}
 
+		if (histogramlog!=null)
+		{
+			histogramlog.finish();
+		}
+
+		if (capture!=null)
+		{
+			Measurements.getMeasurements().setRawCapture(null);
+			capture.finish();
+		}
+
+		Measurements.getMeasurements().setHotKeys(null);
+
+		if (telemetry!=null)
+		{
+			telemetry.finish();
+		}
+
 		try
 		{
 			workload.cleanup();
@@ -789,7 +1195,7 @@ public class Client
 
 		try
 		{
-			exportMeasurements(props, opsDone, en - st);
+			exportMeasurements(props, opsDone, en - st, clients, throughputsearch, warmupthread, capture, hotkeys, telemetry);
 		} catch (IOException e)
 		{
 			System.err.println("Could not export measurements, error: " + e.getMessage());
@@ -797,6 +1203,17 @@ public class Client
 			System.exit(-1);
 		}
 
-		System.exit(0);
+		//the client stalls were exported next to the measurements
+		Measurements.getMeasurements().setJvmTelemetry(null);
+
+
+		PhaseState state=new PhaseState();
+		state.workload=workload;
+		state.dbname=dbname;
+		if ( (!last) && (!search) )
+		{
+			state.dbs=dbs;
+		}
+		return state;
 	}
 }
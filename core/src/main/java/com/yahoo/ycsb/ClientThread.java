@@ -0,0 +1,226 @@
+/**                                                                                                                                                                                
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.                                                                                                                             
+ *                                                                                                                                                                                 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you                                                                                                             
+ * may not use this file except in compliance with the License. You                                                                                                                
+ * may obtain a copy of the License at                                                                                                                                             
+ *                                                                                                                                                                                 
+ * http://www.apache.org/licenses/LICENSE-2.0                                                                                                                                      
+ *                                                                                                                                                                                 
+ * Unless required by applicable law or agreed to in writing, software                                                                                                             
+ * distributed under the License is distributed on an "AS IS" BASIS,                                                                                                               
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or                                                                                                                 
+ * implied. See the License for the specific language governing                                                                                                                    
+ * permissions and limitations under the License. See accompanying                                                                                                                 
+ * LICENSE file.                                                                                                                                                                   
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * Executes transactions or data inserts to the database. Each one runs on a thread of its own, which is either
+ * a platform or a virtual thread (see Client.EXECUTOR_PROPERTY).
+ * 
+ * @author cooperb
+ *
+ */
+class ClientThread implements Runnable
+{
+	DB _db;
+	boolean _dotransactions;
+	Workload _workload;
+	long _opcount;
+	Pacer _pacer;
+
+	//read by the status and warmup threads; volatile so the long is never seen half written
+	volatile long _opsdone;
+	int _threadid;
+	int _threadcount;
+	Object _workloadstate;
+	Properties _props;
+	Measurements _measurements;
+	boolean _initdb=true;
+	boolean _cleanupdb=true;
+	volatile boolean _stoprequested;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param db the DB implementation to use
+	 * @param dotransactions true to do transactions, false to insert data
+	 * @param workload the workload to use
+	 * @param threadid the id of this thread 
+	 * @param threadcount the total number of threads 
+	 * @param props the properties defining the experiment
+	 * @param opcount the number of operations (transactions or inserts) to do
+	 * @param pacer the pacer keeping this thread to the target throughput, or null to run unthrottled
+	 */
+	public ClientThread(DB db, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, long opcount, Pacer pacer)
+	{
+		//TODO: consider removing threadcount and threadid
+		_db=db;
+		_dotransactions=dotransactions;
+		_workload=workload;
+		_opcount=opcount;
+		_opsdone=0;
+		_pacer=pacer;
+		_threadid=threadid;
+		_threadcount=threadcount;
+		_props=props;
+		_measurements=Measurements.getMeasurements();
+		//System.out.println("Interval = "+interval);
+	}
+
+	public long getOpsDone()
+	{
+		return _opsdone;
+	}
+
+	public Pacer getPacer()
+	{
+		return _pacer;
+	}
+
+	/**
+	 * Whether this thread initializes its DB before running and cleans it up afterwards (both by default). Pass
+	 * false to run on a DB that is initialized or cleaned up by the caller, e.g. to use the same DB for several
+	 * client threads run one after the other.
+	 */
+	public void setManageDB(boolean init, boolean cleanup)
+	{
+		_initdb=init;
+		_cleanupdb=cleanup;
+	}
+
+	/**
+	 * Ask this thread to stop after its current operation, without stopping the workload as a whole.
+	 */
+	public void requestStop()
+	{
+		_stoprequested=true;
+		if (_pacer!=null)
+		{
+			_pacer.stop();
+		}
+	}
+
+	boolean isStopRequested()
+	{
+		return _stoprequested || _workload.isStopRequested();
+	}
+
+	/**
+	 * Wait until the intended start time of the next operation, and tell the measurements about it.
+	 *
+	 * The schedule is fixed up front from the target throughput, no matter how long earlier operations took.
+	 * If the DB stalls, the client does not stop issuing requests; the operations that fell behind schedule
+	 * are issued back to back until the schedule is caught up, and the time they spent waiting shows up in
+	 * the INTENDED- measurements.
+	 */
+	void throttle()
+	{
+		if (_pacer!=null)
+		{
+			_measurements.setIntendedStartTimeNs(_pacer.pace(_workload));
+		}
+	}
+
+	public void run()
+	{
+		try
+		{
+			if (_initdb)
+			{
+				_db.init();
+			}
+		}
+		catch (DBException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			return;
+		}
+
+		try
+		{
+			_workloadstate=_workload.initThread(_props,_threadid,_threadcount);
+		}
+		catch (WorkloadException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			return;
+		}
+
+		try
+		{
+			if (_dotransactions)
+			{
+				while (((_opcount == 0) || (_opsdone < _opcount)) && !isStopRequested())
+				{
+					throttle();
+					if (isStopRequested())
+					{
+						break;
+					}
+
+					if (!_workload.doTransaction(_db,_workloadstate))
+					{
+						break;
+					}
+
+					_opsdone++;
+				}
+			}
+			else
+			{
+				while (((_opcount == 0) || (_opsdone < _opcount)) && !isStopRequested())
+				{
+					throttle();
+					if (isStopRequested())
+					{
+						break;
+					}
+
+					if (!_workload.doInsert(_db,_workloadstate))
+					{
+						break;
+					}
+
+					_opsdone++;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			System.exit(0);
+		}
+
+		//the operations still in flight belong to this phase (or probe), however the DB is managed
+		if (_db instanceof AsyncDBAdapter)
+		{
+			((AsyncDBAdapter)_db).drain();
+		}
+
+		try
+		{
+			if (_cleanupdb)
+			{
+				_db.cleanup();
+			}
+		}
+		catch (DBException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			return;
+		}
+	}
+}
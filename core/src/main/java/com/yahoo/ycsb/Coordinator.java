@@ -0,0 +1,430 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.HistogramLogWriter;
+import com.yahoo.ycsb.measurements.OneMeasurementHdrHistogram;
+import com.yahoo.ycsb.measurements.RawCapture;
+import com.yahoo.ycsb.measurements.MergedMeasurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+import com.yahoo.ycsb.workloads.CoreWorkload;
+
+/**
+ * Runs a workload on several worker processes, each a Client started with "-worker host:port", as if it were one
+ * client. The coordinator either launches the workers on the local machine or waits for them to connect, then
+ * hands each its share of the run: the load phase is split into consecutive key ranges (using "insertstart" and
+ * "insertcount"), the transaction phase into equal operation counts, and every worker runs at its share of the
+ * target throughput or profile. Once all workers are set up, they are told to start at the same moment. In the
+ * end, their measurements are merged into one report (see MergedMeasurements), which is exported as usual.
+ *
+ * Every worker runs the transaction phase on the whole key space. The keys inserted in it are interleaved: with
+ * n workers, each inserts every n-th key from "recordcount" on, starting at an offset of its own (see
+ * CoreWorkload.TRANSACTION_INSERT_STRIDE_PROPERTY), so no two workers insert the same key.
+ */
+public class Coordinator
+{
+	/**
+	 * The number of worker processes. If given, the client runs as the coordinator of that many workers.
+	 */
+	public static final String WORKERS_PROPERTY="coordinator.workers";
+
+	/**
+	 * Whether the coordinator launches the workers as processes on this machine ("true", the default), or waits for
+	 * them to be started separately with "-worker host:port".
+	 */
+	public static final String LAUNCH_PROPERTY="coordinator.launch";
+
+	public static final String LAUNCH_PROPERTY_DEFAULT="true";
+
+	/**
+	 * The address the coordinator listens on for workers.
+	 */
+	public static final String HOST_PROPERTY="coordinator.host";
+
+	public static final String HOST_PROPERTY_DEFAULT="localhost";
+
+	/**
+	 * The port the coordinator listens on for workers. By default, any free port is used.
+	 */
+	public static final String PORT_PROPERTY="coordinator.port";
+
+	public static final String PORT_PROPERTY_DEFAULT="0";
+
+	/**
+	 * Extra JVM options for the launched workers, separated by spaces (e.g. "-Xmx2g").
+	 */
+	public static final String JVM_ARGS_PROPERTY="coordinator.jvmargs";
+
+	/**
+	 * How long after the last worker is ready the run starts, in milliseconds. This covers the time it takes to
+	 * tell every worker when to start.
+	 */
+	public static final String START_DELAY_PROPERTY="coordinator.startdelay";
+
+	public static final String START_DELAY_PROPERTY_DEFAULT="1000";
+
+	/**
+	 * How long the coordinator waits for launched workers to connect, in milliseconds.
+	 */
+	static final int CONNECT_TIMEOUT=60000;
+
+	Properties _props;
+	boolean _dotransactions;
+	int _workers;
+
+	public Coordinator(Properties props, boolean dotransactions)
+	{
+		_props=props;
+		_dotransactions=dotransactions;
+		_workers=Integer.parseInt(props.getProperty(WORKERS_PROPERTY));
+	}
+
+	/**
+	 * @return the share of the given total that goes to a worker, spreading the remainder over the first workers
+	 */
+	static long share(long total, int worker, int workers)
+	{
+		return total/workers+((worker<total%workers) ? 1 : 0);
+	}
+
+	/**
+	 * @return the properties a worker runs with
+	 */
+	Properties workerProperties(int worker)
+	{
+		Properties props=new Properties();
+		for (String prop : _props.stringPropertyNames())
+		{
+			if (!prop.startsWith("coordinator."))
+			{
+				props.setProperty(prop,_props.getProperty(prop));
+			}
+		}
+
+		if (_dotransactions)
+		{
+			long opcount=Long.parseLong(_props.getProperty(Client.OPERATION_COUNT_PROPERTY,"0"));
+			props.setProperty(Client.OPERATION_COUNT_PROPERTY,""+share(opcount,worker,_workers));
+
+			//the keys this client would insert on its own, interleaved between the workers
+			long offset=Long.parseLong(_props.getProperty(CoreWorkload.TRANSACTION_INSERT_OFFSET_PROPERTY,CoreWorkload.TRANSACTION_INSERT_OFFSET_PROPERTY_DEFAULT));
+			long stride=Long.parseLong(_props.getProperty(CoreWorkload.TRANSACTION_INSERT_STRIDE_PROPERTY,CoreWorkload.TRANSACTION_INSERT_STRIDE_PROPERTY_DEFAULT));
+			props.setProperty(CoreWorkload.TRANSACTION_INSERT_OFFSET_PROPERTY,""+(offset+worker*stride));
+			props.setProperty(CoreWorkload.TRANSACTION_INSERT_STRIDE_PROPERTY,""+(stride*_workers));
+		}
+		else
+		{
+			//the same count as the client would insert on its own, split into consecutive ranges
+			long count=Long.parseLong(_props.getProperty(Client.INSERT_COUNT_PROPERTY,_props.getProperty(Client.RECORD_COUNT_PROPERTY,"0")));
+			long start=Long.parseLong(_props.getProperty("insertstart","0"));
+			for (int i=0; i<worker; i++)
+			{
+				start+=share(count,i,_workers);
+			}
+			props.setProperty("insertstart",""+start);
+			props.setProperty(Client.INSERT_COUNT_PROPERTY,""+share(count,worker,_workers));
+		}
+
+		double targetshare=Double.parseDouble(_props.getProperty(Client.TARGET_SHARE_PROPERTY,"1"));
+		props.setProperty(Client.TARGET_SHARE_PROPERTY,""+(targetshare/_workers));
+
+		//each worker serves its metrics on a port of its own
+		if (_props.getProperty(MetricsServer.PORT_PROPERTY)!=null)
+		{
+			int port=Integer.parseInt(_props.getProperty(MetricsServer.PORT_PROPERTY));
+			props.setProperty(MetricsServer.PORT_PROPERTY,""+((port==0) ? 0 : port+worker));
+		}
+
+		//each worker logs its intervals to a file of its own
+		if (HistogramLogWriter.isEnabled(_props))
+		{
+			props.setProperty(HistogramLogWriter.FILE_PROPERTY,_props.getProperty(HistogramLogWriter.FILE_PROPERTY)+"."+worker);
+		}
+
+		//the workers export their whole hdrhistograms, so that their percentiles can be merged exactly
+		props.setProperty(OneMeasurementHdrHistogram.EXPORT_DISTRIBUTION,"true");
+
+		//and captures its operations to a file of its own
+		if (RawCapture.isEnabled(_props))
+		{
+			props.setProperty(RawCapture.FILE_PROPERTY,_props.getProperty(RawCapture.FILE_PROPERTY)+"."+worker);
+		}
+		return props;
+	}
+
+	/**
+	 * Launch a worker process on this machine, copying its output to stderr.
+	 */
+	Process launch(final int worker, String host, int port) throws IOException
+	{
+		Vector<String> command=new Vector<String>();
+		command.add(System.getProperty("java.home")+File.separator+"bin"+File.separator+"java");
+		StringTokenizer jvmargs=new StringTokenizer(_props.getProperty(JVM_ARGS_PROPERTY,""));
+		while (jvmargs.hasMoreTokens())
+		{
+			command.add(jvmargs.nextToken());
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Client.class.getName());
+		command.add("-worker");
+		command.add(host+":"+port);
+
+		ProcessBuilder builder=new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		final Process process=builder.start();
+
+		Thread output=new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					BufferedReader reader=new BufferedReader(new InputStreamReader(process.getInputStream()));
+					String line;
+					while ((line=reader.readLine())!=null)
+					{
+						System.err.println("[worker "+worker+"] "+line);
+					}
+				}
+				catch (IOException e)
+				{
+					//the worker is gone
+				}
+			}
+		};
+		output.setDaemon(true);
+		output.start();
+		return process;
+	}
+
+	static void writeProperties(DataOutputStream out, Properties props) throws IOException
+	{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		props.store(bytes,null);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	static Properties readProperties(DataInputStream in) throws IOException
+	{
+		byte[] bytes=new byte[in.readInt()];
+		in.readFully(bytes);
+		Properties props=new Properties();
+		props.load(new ByteArrayInputStream(bytes));
+		return props;
+	}
+
+	/**
+	 * Run the workload on the workers and export the merged measurements.
+	 */
+	public void run() throws IOException
+	{
+		String host=_props.getProperty(HOST_PROPERTY,HOST_PROPERTY_DEFAULT);
+		int port=Integer.parseInt(_props.getProperty(PORT_PROPERTY,PORT_PROPERTY_DEFAULT));
+		boolean launch=Boolean.parseBoolean(_props.getProperty(LAUNCH_PROPERTY,LAUNCH_PROPERTY_DEFAULT));
+		long startdelay=Long.parseLong(_props.getProperty(START_DELAY_PROPERTY,START_DELAY_PROPERTY_DEFAULT));
+
+		ServerSocket server=new ServerSocket(port,_workers,InetAddress.getByName(host));
+		Vector<Process> processes=new Vector<Process>();
+		Vector<Socket> sockets=new Vector<Socket>();
+		try
+		{
+			port=server.getLocalPort();
+			System.err.println("Coordinating "+_workers+" workers on "+host+":"+port);
+			if (launch)
+			{
+				server.setSoTimeout(CONNECT_TIMEOUT);
+				for (int i=0; i<_workers; i++)
+				{
+					processes.add(launch(i,host,port));
+				}
+			}
+			else
+			{
+				System.err.println("Start each worker with: java "+Client.class.getName()+" -worker "+host+":"+port);
+			}
+
+			//hand out the work in the order the workers connect
+			Vector<DataInputStream> ins=new Vector<DataInputStream>();
+			Vector<DataOutputStream> outs=new Vector<DataOutputStream>();
+			for (int i=0; i<_workers; i++)
+			{
+				Socket socket=server.accept();
+				sockets.add(socket);
+				DataInputStream in=new DataInputStream(socket.getInputStream());
+				DataOutputStream out=new DataOutputStream(socket.getOutputStream());
+				out.writeInt(i);
+				out.writeBoolean(_dotransactions);
+				writeProperties(out,workerProperties(i));
+				out.flush();
+				ins.add(in);
+				outs.add(out);
+				System.err.println("Worker "+i+" connected from "+socket.getRemoteSocketAddress());
+			}
+
+			//wait until every worker is set up, then start them all at the same moment
+			for (int i=0; i<_workers; i++)
+			{
+				ins.get(i).readBoolean();
+			}
+			long start=System.currentTimeMillis()+startdelay;
+			for (DataOutputStream out : outs)
+			{
+				out.writeLong(start);
+				out.flush();
+			}
+			System.err.println("All workers ready, starting.");
+
+			MergedMeasurements merged=new MergedMeasurements();
+			merged.setExportDistribution(Boolean.parseBoolean(_props.getProperty(OneMeasurementHdrHistogram.EXPORT_DISTRIBUTION,OneMeasurementHdrHistogram.EXPORT_DISTRIBUTION_DEFAULT)));
+			for (int i=0; i<_workers; i++)
+			{
+				DataInputStream in=ins.get(i);
+				byte[] bytes=new byte[in.readInt()];
+				in.readFully(bytes);
+				merged.addSource(new StringReader(new String(bytes)));
+			}
+
+			for (int i=0; i<processes.size(); i++)
+			{
+				try
+				{
+					int exit=processes.get(i).waitFor();
+					if (exit!=0)
+					{
+						System.err.println("Worker "+i+" exited with status "+exit);
+					}
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+
+			MeasurementsExporter exporter=Client.newExporter(_props);
+			try
+			{
+				merged.exportMeasurements(exporter);
+			}
+			finally
+			{
+				exporter.close();
+			}
+		}
+		finally
+		{
+			for (Socket socket : sockets)
+			{
+				socket.close();
+			}
+			server.close();
+			for (Process process : processes)
+			{
+				process.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Run as a worker of the coordinator at the given address: take the properties of the run from the
+	 * coordinator, wait for the start, run and send back the measurements.
+	 *
+	 * @param address the host and port of the coordinator, as "host:port"
+	 */
+	public static void runWorker(String address) throws IOException
+	{
+		int colon=address.lastIndexOf(':');
+		if (colon<0)
+		{
+			throw new IOException("Coordinator address \""+address+"\" should be of the form host:port");
+		}
+		Socket socket=new Socket(address.substring(0,colon),Integer.parseInt(address.substring(colon+1)));
+		try
+		{
+			final DataInputStream in=new DataInputStream(socket.getInputStream());
+			final DataOutputStream out=new DataOutputStream(socket.getOutputStream());
+			int worker=in.readInt();
+			boolean dotransactions=in.readBoolean();
+			Properties props=readProperties(in);
+
+			//the measurements are exported as text to a file, then sent to the coordinator
+			File export=File.createTempFile("ycsb-worker-"+worker+"-",".txt");
+			export.deleteOnExit();
+			props.setProperty("exportfile",export.getPath());
+			props.setProperty("exporter",TextMeasurementsExporter.class.getName());
+
+			Runnable startgate=new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						out.writeBoolean(true);
+						out.flush();
+						long wait=in.readLong()-System.currentTimeMillis();
+						if (wait>0)
+						{
+							Thread.sleep(wait);
+						}
+					}
+					catch (Exception e)
+					{
+						System.err.println("Lost the coordinator: "+e);
+						System.exit(-1);
+					}
+				}
+			};
+			Client.runPhase(props,dotransactions,false,"worker "+worker,null,true,startgate);
+
+			byte[] bytes=new byte[(int)export.length()];
+			DataInputStream exported=new DataInputStream(new FileInputStream(export));
+			try
+			{
+				exported.readFully(bytes);
+			}
+			finally
+			{
+				exported.close();
+			}
+			export.delete();
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.flush();
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+}
@@ -24,29 +24,82 @@ import java.util.Properties;
  */
 public class DBFactory
 {
-      @SuppressWarnings("unchecked")
+      /**
+       * Create the DB layer for one client thread. Blocking bindings are wrapped to measure their latencies.
+       * Asynchronous bindings (subclasses of AsyncDB), and blocking bindings when "maxinflight" is more than 1,
+       * are presented as a DB that keeps up to "maxinflight" operations outstanding.
+       */
 	public static DB newDB(String dbname, Properties properties) throws UnknownDBException
       {
-	 ClassLoader classLoader = DBFactory.class.getClassLoader();
+	 Object instance=instantiate(dbname);
+
+	 if (instance==null)
+	 {
+	    return null;
+	 }
+
+	 int maxinflight=Integer.parseInt(properties.getProperty(AsyncDBAdapter.MAX_IN_FLIGHT_PROPERTY,AsyncDBAdapter.MAX_IN_FLIGHT_PROPERTY_DEFAULT));
+
+	 AsyncDB async;
+	 if (instance instanceof AsyncDB)
+	 {
+	    async=(AsyncDB)instance;
+	 }
+	 else if (!(instance instanceof DB))
+	 {
+	    System.err.println(dbname+" is neither a DB nor an AsyncDB");
+	    return null;
+	 }
+	 else if (maxinflight>1)
+	 {
+	    async=new BlockingAsyncDB(dbname,maxinflight);
+	 }
+	 else
+	 {
+	    DB ret=(DB)instance;
+	    ret.setProperties(properties);
+	    return new DBWrapper(ret);
+	 }
 
-	 DB ret=null;
+	 async.setProperties(properties);
+
+	 return new AsyncDBAdapter(new AsyncDBWrapper(async),maxinflight);
+      }
+
+      /**
+       * Create a blocking DB without any measurement wrapper.
+       */
+      static DB newRawDB(String dbname, Properties properties)
+      {
+	 Object instance=instantiate(dbname);
+
+	 if (!(instance instanceof DB))
+	 {
+	    return null;
+	 }
+
+	 DB ret=(DB)instance;
+	 ret.setProperties(properties);
+	 return ret;
+      }
+
+      @SuppressWarnings("unchecked")
+      static Object instantiate(String dbname)
+      {
+	 ClassLoader classLoader = DBFactory.class.getClassLoader();
 
 	 try 
 	 {
 	    Class dbclass = classLoader.loadClass(dbname);
 	    //System.out.println("dbclass.getName() = " + dbclass.getName());
 	    
-	    ret=(DB)dbclass.newInstance();
+	    return dbclass.newInstance();
 	 }
 	 catch (Exception e) 
 	 {  
 	    e.printStackTrace();
 	    return null;
 	 }
-	 
-	 ret.setProperties(properties);
-
-	 return new DBWrapper(ret);
       }
       
 }
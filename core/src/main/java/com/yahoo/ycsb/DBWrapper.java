@@ -22,7 +22,10 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 
+import com.yahoo.ycsb.measurements.HotKeys;
+import com.yahoo.ycsb.measurements.JvmTelemetry;
 import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.RawCapture;
 
 /**
  * Wrapper around a "real" DB that measures latencies and counts return codes.
@@ -32,6 +35,10 @@ public class DBWrapper extends DB
 	DB _db;
 	Measurements _measurements;
 
+	//the capture this thread's ring belongs to
+	RawCapture _capture;
+	RawCapture.Ring _ring;
+
 	public DBWrapper(DB db)
 	{
 		_db=db;
@@ -72,7 +79,54 @@ public class DBWrapper extends DB
     long st=System.nanoTime();
 		_db.cleanup();
     long en=System.nanoTime();
-    _measurements.measure("CLEANUP", (int)((en-st)/1000));
+    _measurements.measureNanos("CLEANUP", en-st);
+	}
+
+	/**
+	 * Record the latency of one operation, both from when it was issued and from when it was intended to be issued,
+	 * and its return code. Failed operations are measured apart from the successful ones (see Measurements.outcome).
+	 */
+	private void measure(String op, int res, long intendedstarttime, long starttime, long endtime)
+	{
+		String name=Measurements.outcome(op,res);
+		_measurements.measureNanos(name,endtime-starttime);
+		_measurements.measureIntendedNanos(name,endtime-intendedstarttime);
+		_measurements.reportReturnCode(name,res);
+		JvmTelemetry telemetry=_measurements.getJvmTelemetry();
+		if (telemetry!=null)
+		{
+			telemetry.countPause(name,starttime,endtime);
+		}
+	}
+
+	/**
+	 * Capture one operation, if every operation is being captured.
+	 */
+	private void capture(int op, String key, long starttime, long endtime, int res)
+	{
+		RawCapture capture=_measurements.getRawCapture();
+		if (capture==null)
+		{
+			return;
+		}
+		if (capture!=_capture)
+		{
+			_capture=capture;
+			_ring=capture.newRing();
+		}
+		capture.record(_ring,op,key,starttime,endtime,res);
+	}
+
+	/**
+	 * Count the key of one operation and its latency, if the hot keys are being looked for.
+	 */
+	private void countKey(String key, long starttime, long endtime)
+	{
+		HotKeys hotkeys=_measurements.getHotKeys();
+		if (hotkeys!=null)
+		{
+			hotkeys.add(key,endtime-starttime);
+		}
 	}
 
 	/**
@@ -86,11 +140,13 @@ public class DBWrapper extends DB
 	 */
 	public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
 	{
+		long ist=_measurements.takeIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.read(table,key,fields,result);
 		long en=System.nanoTime();
-		_measurements.measure("READ",(int)((en-st)/1000));
-		_measurements.reportReturnCode("READ",res);
+		measure("READ",res,ist,st,en);
+		capture(RawCapture.READ,key,st,en,res);
+		countKey(key,st,en);
 		return res;
 	}
 
@@ -106,11 +162,13 @@ public class DBWrapper extends DB
 	 */
 	public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
 	{
+		long ist=_measurements.takeIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.scan(table,startkey,recordcount,fields,result);
 		long en=System.nanoTime();
-		_measurements.measure("SCAN",(int)((en-st)/1000));
-		_measurements.reportReturnCode("SCAN",res);
+		measure("SCAN",res,ist,st,en);
+		capture(RawCapture.SCAN,startkey,st,en,res);
+		countKey(startkey,st,en);
 		return res;
 	}
 	
@@ -125,11 +183,13 @@ public class DBWrapper extends DB
 	 */
 	public int update(String table, String key, HashMap<String,ByteIterator> values)
 	{
+		long ist=_measurements.takeIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.update(table,key,values);
 		long en=System.nanoTime();
-		_measurements.measure("UPDATE",(int)((en-st)/1000));
-		_measurements.reportReturnCode("UPDATE",res);
+		measure("UPDATE",res,ist,st,en);
+		capture(RawCapture.UPDATE,key,st,en,res);
+		countKey(key,st,en);
 		return res;
 	}
 
@@ -144,11 +204,13 @@ public class DBWrapper extends DB
 	 */
 	public int insert(String table, String key, HashMap<String,ByteIterator> values)
 	{
+		long ist=_measurements.takeIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.insert(table,key,values);
 		long en=System.nanoTime();
-		_measurements.measure("INSERT",(int)((en-st)/1000));
-		_measurements.reportReturnCode("INSERT",res);
+		measure("INSERT",res,ist,st,en);
+		capture(RawCapture.INSERT,key,st,en,res);
+		countKey(key,st,en);
 		return res;
 	}
 
@@ -161,11 +223,13 @@ public class DBWrapper extends DB
 	 */
 	public int delete(String table, String key)
 	{
+		long ist=_measurements.takeIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.delete(table,key);
 		long en=System.nanoTime();
-		_measurements.measure("DELETE",(int)((en-st)/1000));
-		_measurements.reportReturnCode("DELETE",res);
+		measure("DELETE",res,ist,st,en);
+		capture(RawCapture.DELETE,key,st,en,res);
+		countKey(key,st,en);
 		return res;
 	}
 	
@@ -174,11 +238,12 @@ public class DBWrapper extends DB
      * belong to the same transaction.
      */
     public int startTransaction() {
+        long ist = _measurements.takeIntendedStartTimeNs();
         long st = System.nanoTime();
         int res = _db.startTransaction();
         long en = System.nanoTime();
-        _measurements.measure("START", (int) ((en - st) / 1000));
-        _measurements.reportReturnCode("START", res);
+        measure("START", res, ist, st, en);
+        capture(RawCapture.START, null, st, en, res);
         return res;
     }
 
@@ -186,11 +251,12 @@ public class DBWrapper extends DB
      * Commits the current transaction.
      */
     public int commitTransaction() {
+        long ist = _measurements.takeIntendedStartTimeNs();
         long st = System.nanoTime();
         int res = _db.commitTransaction();
         long en = System.nanoTime();
-        _measurements.measure("COMMIT", (int) ((en - st) / 1000));
-        _measurements.reportReturnCode("COMMIT", res);
+        measure("COMMIT", res, ist, st, en);
+        capture(RawCapture.COMMIT, null, st, en, res);
         return res;
     }
 
@@ -198,11 +264,12 @@ public class DBWrapper extends DB
      * Aborts the current transaction.
      */
     public int abortTransaction() {
+        long ist = _measurements.takeIntendedStartTimeNs();
         long st = System.nanoTime();
         int res = _db.abortTransaction();
         long en = System.nanoTime();
-        _measurements.measure("ABORT", (int) ((en - st) / 1000));
-        _measurements.reportReturnCode("ABORT", res);
+        measure("ABORT", res, ist, st, en);
+        capture(RawCapture.ABORT, null, st, en, res);
         return res;
     }
 	
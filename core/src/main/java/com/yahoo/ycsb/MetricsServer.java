@@ -0,0 +1,209 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurement;
+
+/**
+ * Serves the progress of a running client at http://host:metrics.port/metrics in the OpenMetrics text format,
+ * for Prometheus and the like to scrape: the operations done by the client threads, the current and average
+ * throughput, and for each operation measured, its latency percentiles and return codes so far.
+ *
+ * A scrape reads the measurements the same way the status thread does. With the default striped recorders
+ * (see Measurements.RECORDER), it never blocks the client threads: it takes what they counted so far from
+ * atomic counters, while they go on counting. With the synchronized recorders, they wait while it reads.
+ */
+public class MetricsServer implements HttpHandler
+{
+	/**
+	 * The port to serve the metrics on. There is no server unless this is set; 0 picks a free port.
+	 */
+	public static final String PORT_PROPERTY="metrics.port";
+
+	/**
+	 * The latency percentiles to serve, separated by commas.
+	 */
+	public static final String PERCENTILES_PROPERTY="metrics.percentiles";
+
+	public static final String PERCENTILES_PROPERTY_DEFAULT="50,90,99,99.9";
+
+	static final String CONTENT_TYPE="application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	/**
+	 * The one server of this JVM, which serves every phase of a multi-phase run.
+	 */
+	static MetricsServer _server;
+
+	HttpServer _http;
+	double[] _percentiles;
+
+	//the phase being run
+	volatile Vector<ClientThread> _clients=new Vector<ClientThread>();
+	volatile long _starttime=System.currentTimeMillis();
+
+	//the throughput is current as of the last scrape
+	long _lastscrape=System.currentTimeMillis();
+	long _lastops;
+
+	/**
+	 * @return the server of this JVM, started on the first call; null if the properties don't ask for one
+	 */
+	public static synchronized MetricsServer getServer(Properties props) throws IOException
+	{
+		if ( (_server==null) && (props.getProperty(PORT_PROPERTY)!=null) )
+		{
+			_server=new MetricsServer(props);
+		}
+		return _server;
+	}
+
+	MetricsServer(Properties props) throws IOException
+	{
+		String[] p=props.getProperty(PERCENTILES_PROPERTY,PERCENTILES_PROPERTY_DEFAULT).split(",");
+		_percentiles=new double[p.length];
+		for (int i=0; i<p.length; i++)
+		{
+			_percentiles[i]=Double.parseDouble(p[i].trim());
+		}
+
+		_http=HttpServer.create(new InetSocketAddress(Integer.parseInt(props.getProperty(PORT_PROPERTY))),0);
+		_http.createContext("/metrics",this);
+		_http.start();
+		System.err.println("Serving metrics at http://localhost:"+getPort()+"/metrics");
+	}
+
+	public int getPort()
+	{
+		return _http.getAddress().getPort();
+	}
+
+	/**
+	 * Serve the progress of the given client threads from now on, e.g. at the start of a phase.
+	 */
+	public synchronized void setClients(Vector<ClientThread> clients)
+	{
+		_clients=clients;
+		_starttime=System.currentTimeMillis();
+		_lastscrape=_starttime;
+		_lastops=0;
+	}
+
+	public void stop()
+	{
+		_http.stop(0);
+	}
+
+	public void handle(HttpExchange exchange) throws IOException
+	{
+		byte[] body=scrape().getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type",CONTENT_TYPE);
+		exchange.sendResponseHeaders(200,body.length);
+		OutputStream out=exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	/**
+	 * @return the current metrics, in the OpenMetrics text format
+	 */
+	synchronized String scrape()
+	{
+		StringBuilder s=new StringBuilder();
+
+		long ops=0;
+		for (ClientThread ct : new ArrayList<ClientThread>(_clients))
+		{
+			ops+=ct.getOpsDone();
+		}
+		long now=System.currentTimeMillis();
+		double current=(now>_lastscrape) ? 1000.0*(ops-_lastops)/(now-_lastscrape) : 0.0;
+		double average=(now>_starttime) ? 1000.0*ops/(now-_starttime) : 0.0;
+		_lastscrape=now;
+		_lastops=ops;
+
+		s.append("# TYPE ycsb_operations counter\n");
+		s.append("# HELP ycsb_operations Operations done by the client threads of the current phase.\n");
+		s.append("ycsb_operations_total ").append(ops).append("\n");
+		s.append("# TYPE ycsb_throughput_ops_per_second gauge\n");
+		s.append("# HELP ycsb_throughput_ops_per_second Throughput since the last scrape (current) and since the phase started (average).\n");
+		s.append("ycsb_throughput_ops_per_second{window=\"current\"} ").append(current).append("\n");
+		s.append("ycsb_throughput_ops_per_second{window=\"average\"} ").append(average).append("\n");
+		s.append("# TYPE ycsb_run_seconds gauge\n");
+		s.append("# UNIT ycsb_run_seconds seconds\n");
+		s.append("ycsb_run_seconds ").append((now-_starttime)/1000.0).append("\n");
+
+		Vector<OneMeasurement> measurements=Measurements.getMeasurements().getAll();
+
+		s.append("# TYPE ycsb_latency_microseconds summary\n");
+		s.append("# UNIT ycsb_latency_microseconds microseconds\n");
+		s.append("# HELP ycsb_latency_microseconds Latency of each operation since the phase started.\n");
+		for (OneMeasurement m : measurements)
+		{
+			String op="operation=\""+escape(m.getName())+"\"";
+			for (double p : _percentiles)
+			{
+				double latency=m.getPercentile(p);
+				if (latency>=0)
+				{
+					s.append("ycsb_latency_microseconds{").append(op).append(",quantile=\"").append(quantile(p)).append("\"} ");
+					s.append((long)latency).append("\n");
+				}
+			}
+			s.append("ycsb_latency_microseconds_count{").append(op).append("} ").append(m.getOperations()).append("\n");
+			s.append("ycsb_latency_microseconds_sum{").append(op).append("} ").append(m.getTotalLatency()).append("\n");
+		}
+
+		s.append("# TYPE ycsb_return_codes counter\n");
+		s.append("# HELP ycsb_return_codes Return codes of each operation since the phase started.\n");
+		for (OneMeasurement m : measurements)
+		{
+			for (Map.Entry<Integer,Long> e : m.getReturnCodes().entrySet())
+			{
+				s.append("ycsb_return_codes_total{operation=\"").append(escape(m.getName())).append("\",code=\"").append(e.getKey()).append("\"} ");
+				s.append(e.getValue()).append("\n");
+			}
+		}
+
+		s.append("# EOF\n");
+		return s.toString();
+	}
+
+	/**
+	 * @return the quantile of a percentile, e.g. "0.999" for 99.9
+	 */
+	static String quantile(double percentile)
+	{
+		return new BigDecimal(Double.toString(percentile)).movePointLeft(2).stripTrailingZeros().toPlainString();
+	}
+
+	static String escape(String value)
+	{
+		return value.replace("\\","\\\\").replace("\"","\\\"").replace("\n","\\n");
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Paces the operations of one client thread to a target throughput, which may change over time (see
+ * TargetProfile). Each operation is given an intended start
+ * time from a schedule, and the pacer parks the thread until then, using System.nanoTime() so that intervals
+ * well below a millisecond are kept.
+ *
+ * By default every client thread follows a schedule of its own at its share of the target throughput, starting
+ * at a random offset so the threads don't all hit the DB at the same time. With "pacing.shared" all client
+ * threads take their turns from one schedule at the full target throughput instead, like tokens from a shared
+ * bucket, which gives a smooth arrival stream even when a single thread is asked for more operations than it
+ * can sustain on its own.
+ *
+ * The schedule is fixed up front and does not depend on when operations complete. If the DB falls behind,
+ * the operations whose intended start time has passed are issued without waiting.
+ */
+public class Pacer
+{
+	/**
+	 * Whether all client threads share one schedule ("true") or each follow their own ("false", the default).
+	 */
+	public static final String SHARED_PROPERTY="pacing.shared";
+
+	public static final String SHARED_PROPERTY_DEFAULT="false";
+
+	/**
+	 * A schedule of intended start times. Times are kept as offsets from the origin in picoseconds, so that
+	 * rounding does not make the schedule drift from the target throughput. The origin is the time the first
+	 * slot is claimed, so time spent initializing the DB does not count as being behind schedule, and it is
+	 * also the start of the target profile.
+	 */
+	static class Schedule
+	{
+		static final long UNSET=Long.MIN_VALUE;
+
+		/**
+		 * While the target is low, the time to the next slot is worked out in steps of this many picoseconds,
+		 * so that a change of the target in between is not missed.
+		 */
+		static final long STEPPS=10000000000L;
+
+		/**
+		 * The lowest target a schedule runs at, in operations per second. Lower targets pause the load.
+		 */
+		static final double MIN_TARGET=0.001;
+
+		final TargetProfile _profile;
+		final double _share;
+		final AtomicLong _origin=new AtomicLong(UNSET);
+		final AtomicLong _next;
+
+		/**
+		 * @param profile the target throughput of the client over time
+		 * @param share the fraction of the target this schedule runs at
+		 * @param stagger start at a random offset within the first interval
+		 */
+		Schedule(TargetProfile profile, double share, boolean stagger)
+		{
+			_profile=profile;
+			_share=share;
+			_next=new AtomicLong(stagger ? (long)(Utils.random().nextDouble()*nextSlot(0)) : 0);
+		}
+
+		/**
+		 * @return the slot after the given one, found by integrating the target over time until it adds up to
+		 *         one operation
+		 */
+		long nextSlot(long slot)
+		{
+			double ops=1.0;
+			long t=slot;
+			while (true)
+			{
+				double target=Math.max(_profile.targetAt(t/1e12)*_share,MIN_TARGET);
+				double ps=ops/target*1e12;
+				if (ps<=STEPPS)
+				{
+					return t+Math.round(ps);
+				}
+				ops-=target*STEPPS/1e12;
+				t+=STEPPS;
+			}
+		}
+
+		long origin()
+		{
+			long origin=_origin.get();
+			if (origin==UNSET)
+			{
+				_origin.compareAndSet(UNSET,System.nanoTime());
+				origin=_origin.get();
+			}
+			return origin;
+		}
+
+		/**
+		 * Claim the next slot of the schedule.
+		 *
+		 * @return the intended start time of the slot, as a System.nanoTime() value
+		 */
+		long claim()
+		{
+			long origin=origin();
+			long slot;
+			do
+			{
+				slot=_next.get();
+			}
+			while (!_next.compareAndSet(slot,nextSlot(slot)));
+			return origin+slot/1000;
+		}
+	}
+
+	/**
+	 * The longest the pacer parks at once before checking whether the workload was asked to stop.
+	 */
+	static final long MAX_PARK_NS=100000000L;
+
+	Schedule _schedule;
+	volatile boolean _stopped;
+
+	//statistics, only touched by the thread owning this pacer
+	long _operations;
+	long _late;
+	long _waited;
+	long _totalerror;
+	long _maxerror;
+
+	/**
+	 * Create a pacer following a schedule of its own.
+	 *
+	 * @param profile the target throughput of the client over time
+	 * @param share the fraction of the target this pacer runs at
+	 */
+	public Pacer(TargetProfile profile, double share)
+	{
+		this(new Schedule(profile,share,true));
+	}
+
+	/**
+	 * Create a pacer taking its turns from a schedule shared with other pacers.
+	 */
+	Pacer(Schedule schedule)
+	{
+		_schedule=schedule;
+	}
+
+	/**
+	 * Stop waiting for the next operation, e.g. because the thread using this pacer is asked to stop.
+	 */
+	public void stop()
+	{
+		_stopped=true;
+	}
+
+	/**
+	 * Wait until the intended start time of the next operation, or until the workload is asked to stop.
+	 * Returns immediately once the pacer is stopped.
+	 *
+	 * @return the intended start time of the operation, as a System.nanoTime() value
+	 */
+	public long pace(Workload workload)
+	{
+		long deadline=_schedule.claim();
+		long now=System.nanoTime();
+
+		_operations++;
+		if (now>=deadline)
+		{
+			_late++;
+			return deadline;
+		}
+
+		do
+		{
+			if (_stopped || workload.isStopRequested())
+			{
+				return deadline;
+			}
+			LockSupport.parkNanos(Math.min(deadline-now,MAX_PARK_NS));
+			now=System.nanoTime();
+		}
+		while (now<deadline);
+
+		long error=now-deadline;
+		_waited++;
+		_totalerror+=error;
+		if (error>_maxerror)
+		{
+			_maxerror=error;
+		}
+		return deadline;
+	}
+
+	/**
+	 * Export how closely the given pacers kept to their schedules. The error is how late a thread woke up after
+	 * waiting for an intended start time; operations that were already behind schedule are counted as late instead.
+	 */
+	public static void exportMeasurements(Collection<Pacer> pacers, MeasurementsExporter exporter) throws IOException
+	{
+		long operations=0;
+		long late=0;
+		long waited=0;
+		long totalerror=0;
+		long maxerror=0;
+		for (Pacer p : pacers)
+		{
+			operations+=p._operations;
+			late+=p._late;
+			waited+=p._waited;
+			totalerror+=p._totalerror;
+			maxerror=Math.max(maxerror,p._maxerror);
+		}
+
+		exporter.write("PACING", "Operations", operations);
+		exporter.write("PACING", "LateOperations", late);
+		exporter.write("PACING", "AverageError(us)", waited==0 ? 0.0 : ((double)totalerror)/waited/1000.0);
+		exporter.write("PACING", "MaxError(us)", maxerror/1000.0);
+	}
+}
@@ -0,0 +1,323 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The target throughput of a run as a function of the time since the run started. A profile is given by the
+ * "targetprofile" property as a type and its parameters:
+ *
+ * <ul>
+ * <li><b>constant:rate</b> - a fixed target, the same as "target".
+ * <li><b>ramp:from,to,duration</b> - from "from" ops/sec, linearly to "to" ops/sec over "duration" seconds, then stay at "to".
+ * <li><b>step:time=rate,time=rate,...</b> - "rate" ops/sec from "time" seconds on, e.g. "step:0=1000,60=5000,90=1000" for a spike
+ * in the second minute. Before the first time, the first rate applies.
+ * <li><b>sine:mean,amplitude,period</b> - swing between mean-amplitude and mean+amplitude ops/sec every "period" seconds.
+ * <li><b>csv:file</b> - replay a curve from a file with one "seconds,ops/sec" pair per line, interpolating linearly between
+ * the points and staying at the last rate after the last one. Blank lines and lines starting with "#" are ignored.
+ * </ul>
+ *
+ * Rates are for the whole client; every client thread gets its share unless the threads share one schedule
+ * (see Pacer). Rates of zero or less mean pausing the load.
+ */
+public abstract class TargetProfile
+{
+	/**
+	 * The target throughput profile. If not given, the client runs at a constant "target".
+	 */
+	public static final String TARGET_PROFILE_PROPERTY="targetprofile";
+
+	/**
+	 * The target throughput at a given time.
+	 *
+	 * @param seconds the time since the run started
+	 * @return the target in operations per second
+	 */
+	public abstract double targetAt(double seconds);
+
+	/**
+	 * Create a profile from its specification.
+	 *
+	 * @throws IllegalArgumentException if the specification can't be parsed
+	 */
+	public static TargetProfile parse(String spec)
+	{
+		int colon=spec.indexOf(':');
+		if (colon<0)
+		{
+			throw new IllegalArgumentException("Target profile \""+spec+"\" should be of the form type:parameters");
+		}
+		String type=spec.substring(0,colon).trim();
+		String params=spec.substring(colon+1).trim();
+
+		try
+		{
+			if (type.equals("constant"))
+			{
+				return new Constant(Double.parseDouble(params));
+			}
+			else if (type.equals("ramp"))
+			{
+				double[] p=parseNumbers(params,3);
+				return new Ramp(p[0],p[1],p[2]);
+			}
+			else if (type.equals("step"))
+			{
+				String[] steps=params.split(",");
+				double[] times=new double[steps.length];
+				double[] rates=new double[steps.length];
+				for (int i=0; i<steps.length; i++)
+				{
+					String[] step=steps[i].split("=");
+					if (step.length!=2)
+					{
+						throw new IllegalArgumentException("Step \""+steps[i]+"\" should be of the form time=rate");
+					}
+					times[i]=Double.parseDouble(step[0].trim());
+					rates[i]=Double.parseDouble(step[1].trim());
+				}
+				return new Step(times,rates);
+			}
+			else if (type.equals("sine"))
+			{
+				double[] p=parseNumbers(params,3);
+				return new Sine(p[0],p[1],p[2]);
+			}
+			else if (type.equals("csv"))
+			{
+				return Curve.load(params);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Bad number in target profile \""+spec+"\": "+e.getMessage());
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Could not read target profile \""+spec+"\": "+e.getMessage());
+		}
+		throw new IllegalArgumentException("Unknown target profile type \""+type+"\"");
+	}
+
+	static double[] parseNumbers(String params, int count)
+	{
+		String[] s=params.split(",");
+		if (s.length!=count)
+		{
+			throw new IllegalArgumentException("Expected "+count+" comma separated numbers, got \""+params+"\"");
+		}
+		double[] d=new double[count];
+		for (int i=0; i<count; i++)
+		{
+			d[i]=Double.parseDouble(s[i].trim());
+		}
+		return d;
+	}
+
+	/**
+	 * @return the index of the last of the increasing times that is at or before the given time, or -1 if there is none
+	 */
+	static int lastAtOrBefore(double[] times, double seconds)
+	{
+		int i=Arrays.binarySearch(times,seconds);
+		if (i<0)
+		{
+			return -i-2;
+		}
+		//with duplicate times, use the last one
+		while ( (i+1<times.length) && (times[i+1]==seconds) )
+		{
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * A fraction of another profile, e.g. the share of one of several clients.
+	 */
+	static class Scaled extends TargetProfile
+	{
+		final TargetProfile _profile;
+		final double _factor;
+
+		Scaled(TargetProfile profile, double factor)
+		{
+			_profile=profile;
+			_factor=factor;
+		}
+
+		public double targetAt(double seconds)
+		{
+			return _profile.targetAt(seconds)*_factor;
+		}
+	}
+
+	static class Constant extends TargetProfile
+	{
+		final double _rate;
+
+		Constant(double rate)
+		{
+			_rate=rate;
+		}
+
+		public double targetAt(double seconds)
+		{
+			return _rate;
+		}
+	}
+
+	static class Ramp extends TargetProfile
+	{
+		final double _from;
+		final double _to;
+		final double _duration;
+
+		Ramp(double from, double to, double duration)
+		{
+			_from=from;
+			_to=to;
+			_duration=duration;
+		}
+
+		public double targetAt(double seconds)
+		{
+			if (seconds>=_duration)
+			{
+				return _to;
+			}
+			return _from+(_to-_from)*seconds/_duration;
+		}
+	}
+
+	static class Step extends TargetProfile
+	{
+		final double[] _times;
+		final double[] _rates;
+
+		Step(double[] times, double[] rates)
+		{
+			for (int i=1; i<times.length; i++)
+			{
+				if (times[i]<times[i-1])
+				{
+					throw new IllegalArgumentException("Step times must be increasing");
+				}
+			}
+			_times=times;
+			_rates=rates;
+		}
+
+		public double targetAt(double seconds)
+		{
+			return _rates[Math.max(lastAtOrBefore(_times,seconds),0)];
+		}
+	}
+
+	static class Sine extends TargetProfile
+	{
+		final double _mean;
+		final double _amplitude;
+		final double _period;
+
+		Sine(double mean, double amplitude, double period)
+		{
+			_mean=mean;
+			_amplitude=amplitude;
+			_period=period;
+		}
+
+		public double targetAt(double seconds)
+		{
+			return _mean+_amplitude*Math.sin(2*Math.PI*seconds/_period);
+		}
+	}
+
+	static class Curve extends TargetProfile
+	{
+		final double[] _times;
+		final double[] _rates;
+
+		Curve(double[] times, double[] rates)
+		{
+			if (times.length==0)
+			{
+				throw new IllegalArgumentException("Target curve has no points");
+			}
+			for (int i=1; i<times.length; i++)
+			{
+				if (times[i]<times[i-1])
+				{
+					throw new IllegalArgumentException("Target curve times must be increasing");
+				}
+			}
+			_times=times;
+			_rates=rates;
+		}
+
+		static Curve load(String filename) throws IOException
+		{
+			ArrayList<double[]> points=new ArrayList<double[]>();
+			BufferedReader reader=new BufferedReader(new FileReader(filename));
+			try
+			{
+				String line;
+				while ((line=reader.readLine())!=null)
+				{
+					line=line.trim();
+					if ( (line.length()==0) || line.startsWith("#") )
+					{
+						continue;
+					}
+					points.add(parseNumbers(line,2));
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+
+			double[] times=new double[points.size()];
+			double[] rates=new double[points.size()];
+			for (int i=0; i<times.length; i++)
+			{
+				times[i]=points.get(i)[0];
+				rates[i]=points.get(i)[1];
+			}
+			return new Curve(times,rates);
+		}
+
+		public double targetAt(double seconds)
+		{
+			int i=lastAtOrBefore(_times,seconds);
+			if (i<0)
+			{
+				return _rates[0];
+			}
+			if (i==_times.length-1)
+			{
+				return _rates[i];
+			}
+			double f=(seconds-_times[i])/(_times[i+1]-_times[i]);
+			return _rates[i]+f*(_rates[i+1]-_rates[i]);
+		}
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.ThreadFactory;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurement;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Searches for the highest target throughput at which a latency SLA is still met, e.g. "the 99th percentile of
+ * READ latency stays below 5 ms". Each probe runs the workload at a fixed target for a short window against the
+ * same DB instances and data set. The target is doubled until the SLA is missed, then the range between the best
+ * passing and the lowest failing target is bisected.
+ *
+ * A probe passes if the SLA percentile is met and the client actually reached the target (within the search
+ * precision); a DB that can't keep up with the target doesn't sustain it, whatever its latency looks like.
+ *
+ * The measurements of each probe are recorded in a namespace of their own, numbered in the order the probes ran
+ * ("PROBE1-READ" and so on; bisected targets can be arbitrarily close to each other), so the export holds the
+ * latency distribution at every probed throughput.
+ */
+public class ThroughputSearch
+{
+	/**
+	 * Run a search instead of a fixed workload ("true"), as with the -search option.
+	 */
+	public static final String SEARCH_PROPERTY="search";
+
+	public static final String SEARCH_PROPERTY_DEFAULT="false";
+
+	/**
+	 * The operation the SLA applies to, as named in the measurements (e.g. READ, UPDATE, INTENDED-READ).
+	 */
+	public static final String OPERATION_PROPERTY="search.operation";
+
+	public static final String OPERATION_PROPERTY_DEFAULT="READ";
+
+	/**
+	 * The percentile of the SLA.
+	 */
+	public static final String PERCENTILE_PROPERTY="search.percentile";
+
+	public static final String PERCENTILE_PROPERTY_DEFAULT="99";
+
+	/**
+	 * The highest acceptable latency at that percentile, in milliseconds.
+	 */
+	public static final String MAX_LATENCY_PROPERTY="search.maxlatencyms";
+
+	public static final String MAX_LATENCY_PROPERTY_DEFAULT="5";
+
+	/**
+	 * How long each probe runs, in seconds.
+	 */
+	public static final String WINDOW_PROPERTY="search.window";
+
+	public static final String WINDOW_PROPERTY_DEFAULT="30";
+
+	/**
+	 * The target of the first probe, in operations per second.
+	 */
+	public static final String START_PROPERTY="search.start";
+
+	public static final String START_PROPERTY_DEFAULT="1000";
+
+	/**
+	 * The search stops when the failing target is within this fraction of the passing one.
+	 */
+	public static final String PRECISION_PROPERTY="search.precision";
+
+	public static final String PRECISION_PROPERTY_DEFAULT="0.05";
+
+	/**
+	 * The maximum number of probes.
+	 */
+	public static final String MAX_PROBES_PROPERTY="search.maxprobes";
+
+	public static final String MAX_PROBES_PROPERTY_DEFAULT="20";
+
+	/**
+	 * The outcome of running at one target throughput.
+	 */
+	static class Probe
+	{
+		String _namespace;
+		double _target;
+		double _throughput;
+		double _latency;
+		boolean _passed;
+	}
+
+	Properties _props;
+	Workload _workload;
+	Vector<DB> _dbs;
+	boolean _dotransactions;
+	ThreadFactory _threadfactory;
+
+	String _operation;
+	double _percentile;
+	double _maxlatency;
+	long _window;
+	double _start;
+	double _precision;
+	int _maxprobes;
+
+	Vector<Probe> _probes=new Vector<Probe>();
+	Probe _best;
+	long _opsdone;
+
+	/**
+	 * @param dbs the DBs to run on, one per client thread. They are initialized and cleaned up by the search.
+	 */
+	public ThroughputSearch(Properties props, Workload workload, Vector<DB> dbs, boolean dotransactions, ThreadFactory threadfactory)
+	{
+		_props=props;
+		_workload=workload;
+		_dbs=dbs;
+		_dotransactions=dotransactions;
+		_threadfactory=threadfactory;
+
+		_operation=props.getProperty(OPERATION_PROPERTY,OPERATION_PROPERTY_DEFAULT);
+		_percentile=Double.parseDouble(props.getProperty(PERCENTILE_PROPERTY,PERCENTILE_PROPERTY_DEFAULT));
+		_maxlatency=Double.parseDouble(props.getProperty(MAX_LATENCY_PROPERTY,MAX_LATENCY_PROPERTY_DEFAULT))*1000.0;
+		_window=(long)(Double.parseDouble(props.getProperty(WINDOW_PROPERTY,WINDOW_PROPERTY_DEFAULT))*1000.0);
+		_start=Double.parseDouble(props.getProperty(START_PROPERTY,START_PROPERTY_DEFAULT));
+		_precision=Double.parseDouble(props.getProperty(PRECISION_PROPERTY,PRECISION_PROPERTY_DEFAULT));
+		_maxprobes=Integer.parseInt(props.getProperty(MAX_PROBES_PROPERTY,MAX_PROBES_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * Run the search.
+	 */
+	public void run() throws DBException
+	{
+		for (DB db : _dbs)
+		{
+			db.init();
+		}
+
+		try
+		{
+			//grow the target until the SLA is missed
+			double low=0;
+			double high=-1;
+			double target=_start;
+			while ( (high<0) && (_probes.size()<_maxprobes) && !_workload.isStopRequested() )
+			{
+				if (probe(target)._passed)
+				{
+					low=target;
+					target*=2;
+				}
+				else
+				{
+					high=target;
+				}
+			}
+
+			//then bisect between the best passing and the lowest failing target
+			while ( (high>0) && (high-low>_precision*high) && (_probes.size()<_maxprobes) && !_workload.isStopRequested() )
+			{
+				target=(low+high)/2;
+				if (probe(target)._passed)
+				{
+					low=target;
+				}
+				else
+				{
+					high=target;
+				}
+			}
+		}
+		finally
+		{
+			Measurements.getMeasurements().setNamespace("");
+			for (DB db : _dbs)
+			{
+				db.cleanup();
+			}
+		}
+	}
+
+	/**
+	 * @param probe the number of the probe, from 1
+	 */
+	static String namespace(int probe)
+	{
+		return "PROBE"+probe;
+	}
+
+	/**
+	 * Run the workload at the given target for one window.
+	 */
+	Probe probe(double target)
+	{
+		Measurements measurements=Measurements.getMeasurements();
+		String namespace=namespace(_probes.size()+1);
+		measurements.setNamespace(namespace+"-");
+
+		TargetProfile profile=new TargetProfile.Constant(target);
+		Pacer.Schedule sharedschedule=null;
+		if (Boolean.parseBoolean(_props.getProperty(Pacer.SHARED_PROPERTY,Pacer.SHARED_PROPERTY_DEFAULT)))
+		{
+			sharedschedule=new Pacer.Schedule(profile,1.0,false);
+		}
+
+		int threadcount=_dbs.size();
+		Vector<ClientThread> clients=new Vector<ClientThread>();
+		Vector<Thread> threads=new Vector<Thread>();
+		for (int threadid=0; threadid<threadcount; threadid++)
+		{
+			Pacer pacer=(sharedschedule!=null) ? new Pacer(sharedschedule) : new Pacer(profile,1.0/threadcount);
+			ClientThread ct=new ClientThread(_dbs.get(threadid),_dotransactions,_workload,threadid,threadcount,_props,0,pacer);
+			ct.setManageDB(false,false);
+			clients.add(ct);
+			threads.add(_threadfactory.newThread(ct));
+		}
+
+		long st=System.currentTimeMillis();
+		for (Thread t : threads)
+		{
+			t.start();
+		}
+
+		try
+		{
+			Thread.sleep(_window);
+		}
+		catch (InterruptedException e)
+		{
+			// do nothing.
+		}
+
+		for (ClientThread ct : clients)
+		{
+			ct.requestStop();
+		}
+
+		long opsdone=0;
+		for (int i=0; i<threads.size(); i++)
+		{
+			try
+			{
+				threads.get(i).join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+			opsdone+=clients.get(i).getOpsDone();
+		}
+		long en=System.currentTimeMillis();
+		_opsdone+=opsdone;
+
+		Probe p=new Probe();
+		p._namespace=namespace;
+		p._target=target;
+		p._throughput=1000.0*opsdone/(en-st);
+		OneMeasurement m=measurements.getMeasurement(namespace+"-"+_operation);
+		p._latency=(m==null) ? -1 : m.getPercentile(_percentile);
+		p._passed=(m!=null) && (p._latency>=0) && (p._latency<=_maxlatency) && (p._throughput>=(1.0-_precision)*target);
+		_probes.add(p);
+		if ( p._passed && ((_best==null) || (target>_best._target)) )
+		{
+			_best=p;
+		}
+
+		DecimalFormat d=new DecimalFormat("#.##");
+		System.err.println("Target "+d.format(target)+" ops/sec: "+d.format(p._throughput)+" ops/sec, "
+				+_operation+" "+d.format(_percentile)+"th percentile "+d.format(p._latency/1000.0)+" ms - "+(p._passed ? "passed" : "failed"));
+		return p;
+	}
+
+	/**
+	 * The number of operations done over all probes.
+	 */
+	public long getOpsDone()
+	{
+		return _opsdone;
+	}
+
+	/**
+	 * Export the sustainable throughput and the throughput and SLA latency of every probe, in the order they
+	 * were run. The full measurements of each probe are in its namespace.
+	 */
+	public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		String sla=_operation+"-"+new DecimalFormat("#.##").format(_percentile)+"thPercentileLatency(us)";
+		exporter.write("SEARCH", "SustainableThroughput(ops/sec)", (_best==null) ? 0.0 : _best._throughput);
+		exporter.write("SEARCH", "SustainableTarget(ops/sec)", (_best==null) ? 0.0 : _best._target);
+		exporter.write("SEARCH", "Probes", _probes.size());
+		for (Probe p : _probes)
+		{
+			String name=p._namespace;
+			exporter.write(name, "Target(ops/sec)", p._target);
+			exporter.write(name, "Throughput(ops/sec)", p._throughput);
+			exporter.write(name, sla, p._latency);
+			exporter.write(name, "Passed", p._passed ? 1 : 0);
+		}
+	}
+}
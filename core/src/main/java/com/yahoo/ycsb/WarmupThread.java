@@ -0,0 +1,284 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.text.DecimalFormat;
+import java.util.Properties;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * Decides when the warmup of a run is over. Until then, everything is measured in the "WARMUP-" namespace
+ * (WARMUP-READ and so on), so JIT compilation, connection setup and cold caches don't skew the results, and the
+ * overall throughput is computed over the measured part of the run only.
+ *
+ * The warmup lasts at least "warmup.time" seconds and "warmup.ops" operations, whichever are given. With
+ * "warmup.auto", it also lasts until the run is in a steady state: the throughput and the average latency of
+ * the last "warmup.auto.windows" intervals of "warmup.auto.interval" seconds each vary by less than
+ * "warmup.auto.tolerance" (as a coefficient of variation), or until "warmup.auto.maxtime" seconds have passed.
+ */
+public class WarmupThread extends Thread
+{
+	/**
+	 * The namespace of the measurements taken during the warmup.
+	 */
+	public static final String NAMESPACE="WARMUP-";
+
+	/**
+	 * The minimum length of the warmup, in seconds.
+	 */
+	public static final String TIME_PROPERTY="warmup.time";
+
+	/**
+	 * The minimum number of operations done during the warmup, over all client threads.
+	 */
+	public static final String OPS_PROPERTY="warmup.ops";
+
+	/**
+	 * Whether the warmup lasts until the run is in a steady state.
+	 */
+	public static final String AUTO_PROPERTY="warmup.auto";
+
+	public static final String AUTO_PROPERTY_DEFAULT="false";
+
+	/**
+	 * The length of the intervals the steady state is judged on, in seconds.
+	 */
+	public static final String AUTO_INTERVAL_PROPERTY="warmup.auto.interval";
+
+	public static final String AUTO_INTERVAL_PROPERTY_DEFAULT="1";
+
+	/**
+	 * The number of consecutive intervals that must be steady.
+	 */
+	public static final String AUTO_WINDOWS_PROPERTY="warmup.auto.windows";
+
+	public static final String AUTO_WINDOWS_PROPERTY_DEFAULT="5";
+
+	/**
+	 * The highest coefficient of variation (standard deviation over mean) of the interval throughput and average
+	 * latency that still counts as steady.
+	 */
+	public static final String AUTO_TOLERANCE_PROPERTY="warmup.auto.tolerance";
+
+	public static final String AUTO_TOLERANCE_PROPERTY_DEFAULT="0.1";
+
+	/**
+	 * The longest the warmup waits for a steady state, in seconds.
+	 */
+	public static final String AUTO_MAX_TIME_PROPERTY="warmup.auto.maxtime";
+
+	public static final String AUTO_MAX_TIME_PROPERTY_DEFAULT="300";
+
+	Vector<ClientThread> _clients;
+	Measurements _measurements;
+
+	long _time;
+	long _ops;
+	boolean _auto;
+	long _interval;
+	int _windows;
+	double _tolerance;
+	long _maxtime;
+
+	long _starttime;
+	long _endtime;
+	long _opsdone;
+	boolean _done;
+
+	/**
+	 * @return true if the properties ask for a warmup
+	 */
+	public static boolean isEnabled(Properties props)
+	{
+		return props.containsKey(TIME_PROPERTY) || props.containsKey(OPS_PROPERTY)
+				|| Boolean.parseBoolean(props.getProperty(AUTO_PROPERTY,AUTO_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * Create the warmup for the given client threads, and start measuring in the warmup namespace.
+	 */
+	public WarmupThread(Vector<ClientThread> clients, Properties props)
+	{
+		_clients=clients;
+		_measurements=Measurements.getMeasurements();
+
+		_time=(long)(Double.parseDouble(props.getProperty(TIME_PROPERTY,"0"))*1000.0);
+		_ops=Long.parseLong(props.getProperty(OPS_PROPERTY,"0"));
+		_auto=Boolean.parseBoolean(props.getProperty(AUTO_PROPERTY,AUTO_PROPERTY_DEFAULT));
+		_interval=(long)(Double.parseDouble(props.getProperty(AUTO_INTERVAL_PROPERTY,AUTO_INTERVAL_PROPERTY_DEFAULT))*1000.0);
+		_windows=Integer.parseInt(props.getProperty(AUTO_WINDOWS_PROPERTY,AUTO_WINDOWS_PROPERTY_DEFAULT));
+		_tolerance=Double.parseDouble(props.getProperty(AUTO_TOLERANCE_PROPERTY,AUTO_TOLERANCE_PROPERTY_DEFAULT));
+		_maxtime=(long)(Double.parseDouble(props.getProperty(AUTO_MAX_TIME_PROPERTY,AUTO_MAX_TIME_PROPERTY_DEFAULT))*1000.0);
+
+		_measurements.setNamespace(NAMESPACE);
+	}
+
+	long opsDone()
+	{
+		long ops=0;
+		for (ClientThread ct : _clients)
+		{
+			ops+=ct.getOpsDone();
+		}
+		return ops;
+	}
+
+	/**
+	 * Wait until the fixed time and operation count are reached.
+	 */
+	void waitForMinimum() throws InterruptedException
+	{
+		long remaining=_starttime+_time-System.currentTimeMillis();
+		if (remaining>0)
+		{
+			sleep(remaining);
+		}
+		while (opsDone()<_ops)
+		{
+			sleep(10);
+		}
+	}
+
+	/**
+	 * @return true if the values vary by less than the tolerance, as a coefficient of variation, or by no more
+	 *         than the resolution they are measured at
+	 */
+	static boolean isSteady(double[] values, double tolerance, double resolution)
+	{
+		double mean=0;
+		for (double v : values)
+		{
+			mean+=v;
+		}
+		mean/=values.length;
+		double variance=0;
+		for (double v : values)
+		{
+			variance+=(v-mean)*(v-mean);
+		}
+		variance/=values.length;
+		double stddev=Math.sqrt(variance);
+		return (stddev<tolerance*mean) || (stddev<=resolution);
+	}
+
+	/**
+	 * Wait until the interval throughput and latency have been steady for long enough.
+	 */
+	void waitForSteadyState() throws InterruptedException
+	{
+		double[] throughputs=new double[_windows];
+		double[] latencies=new double[_windows];
+		int windows=0;
+
+		//the throughput counts the workload's operations, as the status thread does, the latency the DB's
+		long lastops=opsDone();
+		long[] last=_measurements.getTotals(NAMESPACE);
+		long lasttime=System.currentTimeMillis();
+		while (System.currentTimeMillis()-_starttime<_maxtime)
+		{
+			sleep(_interval);
+
+			long opsdone=opsDone();
+			long[] totals=_measurements.getTotals(NAMESPACE);
+			long now=System.currentTimeMillis();
+			throughputs[windows%_windows]=1000.0*(opsdone-lastops)/Math.max(now-lasttime,1);
+			long ops=totals[0]-last[0];
+			latencies[windows%_windows]=(ops==0) ? 0 : ((double)(totals[1]-last[1]))/ops;
+			windows++;
+			lastops=opsdone;
+			last=totals;
+			lasttime=now;
+
+			//latencies are measured in microseconds, throughputs in operations per interval
+			if ( (windows>=_windows) && isSteady(throughputs,_tolerance,1000.0/_interval) && isSteady(latencies,_tolerance,1.0) )
+			{
+				return;
+			}
+		}
+		System.err.println("Warmup did not reach a steady state within "+(_maxtime/1000)+" sec");
+	}
+
+	public void run()
+	{
+		_starttime=System.currentTimeMillis();
+		try
+		{
+			waitForMinimum();
+			if (_auto)
+			{
+				waitForSteadyState();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			//the run ended during the warmup
+			return;
+		}
+		end();
+	}
+
+	/**
+	 * End the warmup and start measuring the results.
+	 */
+	synchronized void end()
+	{
+		if (_done)
+		{
+			return;
+		}
+		_measurements.setNamespace("");
+		_endtime=System.currentTimeMillis();
+		_opsdone=opsDone();
+		_done=true;
+
+		DecimalFormat d=new DecimalFormat("#.##");
+		System.err.println("Warmup done after "+d.format((_endtime-_starttime)/1000.0)+" sec and "+_opsdone+" operations");
+	}
+
+	/**
+	 * @return true if the warmup has ended
+	 */
+	public synchronized boolean isDone()
+	{
+		return _done;
+	}
+
+	/**
+	 * @return when the warmup ended, as a System.currentTimeMillis() value
+	 */
+	public synchronized long getEndTime()
+	{
+		return _endtime;
+	}
+
+	/**
+	 * @return the number of operations done during the warmup
+	 */
+	public synchronized long getOpsDone()
+	{
+		return _opsdone;
+	}
+
+	/**
+	 * @return the length of the warmup in milliseconds
+	 */
+	public synchronized long getWarmupTime()
+	{
+		return _endtime-_starttime;
+	}
+}
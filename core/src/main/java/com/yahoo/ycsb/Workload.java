@@ -50,6 +50,19 @@ public abstract class Workload
       {
       }
 
+      /**
+       * Initialize the scenario for one phase of a multi-phase run (see Client.PHASES_PROPERTY), taking over
+       * state from the workload of the previous phase where the two are compatible, e.g. the number of records
+       * inserted so far. The previous workload has been cleaned up, but its state is still there. By default,
+       * this just calls init(p).
+       * 
+       * @param previous the workload of the previous phase, or null if this is the first one
+       */
+      public void init(Properties p, Workload previous) throws WorkloadException
+      {
+	 init(p);
+      }
+
       /**
        * Initialize any state for a particular client thread. Since the scenario object
        * will be shared among all threads, this is the place to create any state that is specific
@@ -17,22 +17,36 @@
 
 package com.yahoo.ycsb.generator;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Generates a sequence of integers 0, 1, ...
  */
 public class CounterGenerator extends IntegerGenerator
 {
-	final AtomicInteger counter;
+	final AtomicLong counter;
+	final long start;
+	final long stride;
 
 	/**
 	 * Create a counter that starts at countstart
 	 */
-	public CounterGenerator(int countstart)
+	public CounterGenerator(long countstart)
 	{
-		counter=new AtomicInteger(countstart);
-		setLastInt(counter.get()-1);
+		this(countstart,1);
+	}
+
+	/**
+	 * Create a counter that generates countstart, countstart+stride, countstart+2*stride... so that counters
+	 * that start at different offsets of the same sequence never generate the same value. Until the first value
+	 * is generated, the last one is countstart-1.
+	 */
+	public CounterGenerator(long countstart, long stride)
+	{
+		counter=new AtomicLong();
+		start=countstart;
+		this.stride=stride;
+		setLastLong(start-1);
 	}
 	
 	/**
@@ -41,14 +55,25 @@ public class CounterGenerator extends IntegerGenerator
 	 */
 	public int nextInt() 
 	{
-		int ret = counter.getAndIncrement();
-		setLastInt(ret);
+		return (int)nextLong();
+	}
+	@Override
+	public long nextLong()
+	{
+		long ret = start+counter.getAndIncrement()*stride;
+		setLastLong(ret);
 		return ret;
 	}
 	@Override
 	public int lastInt()
 	{
-	                return counter.get() - 1;
+		return (int)lastLong();
+	}
+	@Override
+	public long lastLong()
+	{
+		long generated = counter.get();
+		return (generated == 0) ? start - 1 : start + (generated - 1) * stride;
 	}
 	@Override
 	public double mean() {
@@ -80,9 +80,12 @@ public class ExponentialGenerator extends IntegerGenerator
 	 * @param itemcount The number of items in the distribution.
 	 * @return The next item in the sequence.
 	 */
+	@Override
 	public long nextLong()
 	{
-		return (long) (-Math.log(Utils.random().nextDouble()) / _gamma);
+		long ret=(long) (-Math.log(Utils.random().nextDouble()) / _gamma);
+		setLastLong(ret);
+		return ret;
 	}
 
 	@Override
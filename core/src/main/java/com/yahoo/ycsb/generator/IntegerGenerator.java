@@ -20,12 +20,15 @@ package com.yahoo.ycsb.generator;
 /**
  * A generator that is capable of generating ints as well as strings
  * 
+ * Values are 64 bit: generators over large ranges (e.g. key spaces of more than 2^31 records) override nextLong(),
+ * and nextInt() returns the value cut to an int. Generators of small values may implement nextInt() only.
+ * 
  * @author cooperb
  *
  */
 public abstract class IntegerGenerator extends Generator 
 {
-	int lastint;
+	long lastlong;
 	
 	/**
 	 * Set the last value generated. IntegerGenerator subclasses must use this call
@@ -33,7 +36,15 @@ public abstract class IntegerGenerator extends Generator
 	 */
 	protected void setLastInt(int last)
 	{
-		lastint=last;
+		lastlong=last;
+	}
+	
+	/**
+	 * Set the last value generated, for generators of long values.
+	 */
+	protected void setLastLong(long last)
+	{
+		lastlong=last;
 	}
 	
 	/**
@@ -41,12 +52,21 @@ public abstract class IntegerGenerator extends Generator
 	 */
 	public abstract int nextInt();
 	
+	/**
+	 * Return the next value as a long. Generators of values beyond the int range must override this, and set the last
+	 * value with setLastLong(). By default, this is the next int.
+	 */
+	public long nextLong()
+	{
+		return nextInt();
+	}
+	
 	/**
 	 * Generate the next string in the distribution.
 	 */
 	public String nextString()
 	{
-		return ""+nextInt();
+		return ""+nextLong();
 	}
 	
 	/**
@@ -57,7 +77,7 @@ public abstract class IntegerGenerator extends Generator
 	@Override
 	public String lastString()
 	{
-		return ""+lastInt();
+		return ""+lastLong();
 	}
 	
 	/**
@@ -66,7 +86,17 @@ public abstract class IntegerGenerator extends Generator
 	 */
 	public int lastInt()
 	{
-		return lastint;
+		return (int)lastlong;
+	}
+	
+	/**
+	 * Return the previous value generated by the distribution as a long. By default, this is the last int, unless
+	 * the last value was set with setLastLong() and lastInt() returns it cut to an int.
+	 */
+	public long lastLong()
+	{
+		int last=lastInt();
+		return (last==(int)lastlong) ? lastlong : last;
 	}
 	/**
 	 * Return the expected value (mean) of the values this generator will return.
@@ -26,9 +26,18 @@ public class SkewedLatestGenerator extends IntegerGenerator
 	ZipfianGenerator _zipfian;
 
 	public SkewedLatestGenerator(CounterGenerator basis)
+	{
+		this(basis,ZipfianGenerator.ZIPFIAN_CONSTANT);
+	}
+
+	/**
+	 * @param basis The generator of the items, the latest of which are the most popular.
+	 * @param zipfianconstant The zipfian constant to skew by.
+	 */
+	public SkewedLatestGenerator(CounterGenerator basis, double zipfianconstant)
 	{
 		_basis=basis;
-		_zipfian=new ZipfianGenerator(_basis.lastInt());
+		_zipfian=new ZipfianGenerator(_basis.lastLong(),zipfianconstant);
 		nextInt();
 	}
 
@@ -37,10 +46,15 @@ public class SkewedLatestGenerator extends IntegerGenerator
 	 */
 	public int nextInt()
 	{
-		int max=_basis.lastInt();
-		int nextint=max-_zipfian.nextInt(max);
-		setLastInt(nextint);
-		return nextint;
+		return (int)nextLong();
+	}
+
+	public long nextLong()
+	{
+		long max=_basis.lastLong();
+		long next=max-_zipfian.nextLong(max);
+		setLastLong(next);
+		return next;
 	}
 
 	public static void main(String[] args)
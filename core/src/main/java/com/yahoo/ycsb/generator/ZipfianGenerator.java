@@ -31,11 +31,9 @@ import com.yahoo.ycsb.Utils;
  * popular, min+1 the next most popular, etc.) If you don't want this clustering, and instead want the popular items scattered throughout the 
  * item space, then use ScrambledZipfianGenerator instead.
  * 
- * Be aware: initializing this generator may take a long time if there are lots of items to choose from (e.g. over a minute
- * for 100 million objects). This is because certain mathematical values need to be computed to properly generate a zipfian skew, and one of those
- * values (zeta) is a sum sequence from 1 to n, where n is the itemcount. Note that if you increase the number of items in the set, we can compute
- * a new zeta incrementally, so it should be fast unless you have added millions of items. However, if you decrease the number of items, we recompute
- * zeta from scratch, so this can take a long time. 
+ * Generating a zipfian skew needs a constant, zeta, which is a sum sequence from 1 to n, where n is the itemcount. Only its first terms
+ * are summed one by one; the rest of the sum is computed in closed form with the Euler-Maclaurin formula, to within the rounding error of a
+ * double, so that initializing this generator takes about as long for billions of items as for thousands, whatever the zipfian constant.
  *
  * The algorithm used here is from "Quickly Generating Billion-Record Synthetic Databases", Jim Gray et al, SIGMOD 1994.
  */
@@ -78,6 +76,11 @@ public class ZipfianGenerator extends IntegerGenerator
 	 */
 	boolean allowitemcountdecrease=false;
 
+	/**
+	 * The number of terms of zeta summed one by one, before the rest of the sum is approximated.
+	 */
+	static final long EXACT_TERMS=1000;
+
 	/******************************* Constructors **************************************/
 
 	/**
@@ -206,17 +209,63 @@ public class ZipfianGenerator extends IntegerGenerator
 	static double zetastatic(long st, long n, double theta, double initialsum)
 	{
 		double sum=initialsum;
-		for (long i=st; i<n; i++)
+		long exact=Math.min(n,Math.max(st,EXACT_TERMS));
+		for (long i=st; i<exact; i++)
 		{
 
 			sum+=1/(Math.pow(i+1,theta));
 		}
+		if (exact<n)
+		{
+			sum+=eulerMaclaurin(exact+1,n,theta);
+		}
 		
 		//System.out.println("countforzeta="+countforzeta);
 		
 		return sum;
 	}
 
+	/**
+	 * Approximate the sum of 1/i^theta for i from a to b with the Euler-Maclaurin formula: the integral of 1/x^theta
+	 * from a to b, plus half of the first and last terms, plus the corrections of the first three Bernoulli numbers.
+	 * From a=1000 on, the remainder (of the order of theta^7/a^(theta+7)) is far below the rounding error of a double.
+	 * 
+	 * @param a The first item, at least 1.
+	 * @param b The last item.
+	 * @param theta The zipfian constant.
+	 */
+	static double eulerMaclaurin(long a, long b, double theta)
+	{
+		double la=Math.log(a);
+		double lb=Math.log(b);
+
+		//the integral, (b^(1-theta)-a^(1-theta))/(1-theta), without cancellation when theta is close to 1
+		double integral;
+		if (theta==1)
+		{
+			integral=lb-la;
+		}
+		else
+		{
+			integral=Math.exp((1-theta)*la)*Math.expm1((1-theta)*(lb-la))/(1-theta);
+		}
+
+		double fa=Math.exp(-theta*la);
+		double fb=Math.exp(-theta*lb);
+
+		//the odd derivatives of 1/x^theta are -theta(theta+1)...(theta+2k-2)/x^(theta+2k-1)
+		double ia=1.0/a;
+		double ib=1.0/b;
+		double d1=-theta;
+		double d3=d1*(theta+1)*(theta+2);
+		double d5=d3*(theta+3)*(theta+4);
+		double corrections=(1.0/12)*d1*(fb*ib-fa*ia)
+				-(1.0/720)*d3*(fb*ib*ib*ib-fa*ia*ia*ia)
+				+(1.0/30240)*d5*(fb*ib*ib*ib*ib*ib-fa*ia*ia*ia*ia*ia);
+
+		return integral+(fa+fb)/2+corrections;
+	}
+
 	/****************************************************************************************/
 	
 	/** 
@@ -257,13 +306,7 @@ public class ZipfianGenerator extends IntegerGenerator
 				else if ( (itemcount<countforzeta) && (allowitemcountdecrease) )
 				{
 					//have to start over with zetan
-					//note : for large itemsets, this is very slow. so don't do it!
-
-					//TODO: can also have a negative incremental computation, e.g. if you decrease the number of items, then just subtract
-					//the zeta sequence terms for the items that went away. This would be faster than recomputing from scratch when the number of items
-					//decreases
-					
-					System.err.println("WARNING: Recomputing Zipfian distribtion. This is slow and should be avoided. (itemcount="+itemcount+" countforzeta="+countforzeta+")");
+					System.err.println("WARNING: Recomputing Zipfian distribtion. (itemcount="+itemcount+" countforzeta="+countforzeta+")");
 					
 					zetan=zeta(itemcount,theta);
 					eta=(1-Math.pow(2.0/items,1-theta))/(1-zeta2theta/zetan);
@@ -285,7 +328,7 @@ public class ZipfianGenerator extends IntegerGenerator
 		}
 
 		long ret=base+(long)((itemcount) * Math.pow(eta*u - eta + 1, alpha));
-		setLastInt((int)ret);
+		setLastLong(ret);
 		return ret;
 	}
 
@@ -305,6 +348,7 @@ public class ZipfianGenerator extends IntegerGenerator
 	 * by the 2nd, etc. (Or, if min != 0, the min-th item is the most popular, the min+1th item the next most popular, etc.) If you want the
 	 * popular items scattered throughout the item space, use ScrambledZipfianGenerator instead.
 	 */
+	@Override
 	public long nextLong()
 	{
 		return nextLong(items);
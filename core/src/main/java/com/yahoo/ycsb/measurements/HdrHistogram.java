@@ -0,0 +1,329 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.util.Arrays;
+
+/**
+ * A high dynamic range histogram of non-negative values, laid out like Gil Tene's HdrHistogram: values are
+ * counted in buckets whose width grows with the value, so that every value up to the highest trackable one is
+ * kept with a fixed number of significant decimal digits. With 3 digits, a latency of 200 us is told apart
+ * from 201 us, and one of 10 s is kept to within 10 ms, in a few hundred KB at most.
+ *
+ * The minimum, maximum and sum of the values are kept exactly. Values above the highest trackable value are
+ * counted as that value. Not thread safe.
+ */
+public class HdrHistogram
+{
+	final long _highest;
+	final int _digits;
+
+	final int _subbucketcount;
+	final int _subbuckethalfcount;
+	final int _subbuckethalfcountmagnitude;
+	final long _subbucketmask;
+	final int _leadingzerocountbase;
+	final int _bucketcount;
+
+	long[] _counts;
+	long _totalcount;
+	long _sum;
+	long _min=Long.MAX_VALUE;
+	long _max=Long.MIN_VALUE;
+
+	/**
+	 * @param highest the highest value to keep track of, at least 2
+	 * @param digits the number of significant decimal digits to keep values with, from 1 to 5
+	 */
+	public HdrHistogram(long highest, int digits)
+	{
+		if ( (digits<1) || (digits>5) )
+		{
+			throw new IllegalArgumentException("The number of significant digits must be between 1 and 5, not "+digits);
+		}
+		if (highest<2)
+		{
+			throw new IllegalArgumentException("The highest trackable value must be at least 2, not "+highest);
+		}
+		_highest=highest;
+		_digits=digits;
+
+		//the values below this are all counted exactly, so the buckets have to be at least this wide
+		long singleunitresolution=2*(long)Math.pow(10,digits);
+		int subbucketcountmagnitude=(int)Math.ceil(Math.log(singleunitresolution)/Math.log(2));
+		_subbuckethalfcountmagnitude=subbucketcountmagnitude-1;
+		_subbucketcount=1<<subbucketcountmagnitude;
+		_subbuckethalfcount=_subbucketcount/2;
+		_subbucketmask=_subbucketcount-1;
+		_leadingzerocountbase=64-_subbuckethalfcountmagnitude-1;
+
+		//each bucket covers twice the range of the one before it
+		long smallestuntrackable=_subbucketcount;
+		int buckets=1;
+		while (smallestuntrackable<=highest)
+		{
+			if (smallestuntrackable>Long.MAX_VALUE/2)
+			{
+				buckets++;
+				break;
+			}
+			smallestuntrackable<<=1;
+			buckets++;
+		}
+		_bucketcount=buckets;
+		_counts=new long[(_bucketcount+1)*_subbuckethalfcount];
+	}
+
+	/**
+	 * Create an empty histogram with the same layout as the given one.
+	 */
+	public HdrHistogram(HdrHistogram other)
+	{
+		this(other._highest,other._digits);
+	}
+
+	int countsIndex(long value)
+	{
+		int bucketindex=_leadingzerocountbase-Long.numberOfLeadingZeros(value|_subbucketmask);
+		int subbucketindex=(int)(value>>>bucketindex);
+		return ((bucketindex+1)<<_subbuckethalfcountmagnitude)+(subbucketindex-_subbuckethalfcount);
+	}
+
+	/**
+	 * @return the lowest value counted at the given index
+	 */
+	long valueFromIndex(int index)
+	{
+		int bucketindex=(index>>_subbuckethalfcountmagnitude)-1;
+		int subbucketindex=(index&(_subbuckethalfcount-1))+_subbuckethalfcount;
+		if (bucketindex<0)
+		{
+			subbucketindex-=_subbuckethalfcount;
+			bucketindex=0;
+		}
+		return ((long)subbucketindex)<<bucketindex;
+	}
+
+	/**
+	 * @return the highest value that is counted at the same index as the given one
+	 */
+	long highestEquivalentValue(long value)
+	{
+		int bucketindex=_leadingzerocountbase-Long.numberOfLeadingZeros(value|_subbucketmask);
+		int subbucketindex=(int)(value>>>bucketindex);
+		long lowest=((long)subbucketindex)<<bucketindex;
+		int shift=(subbucketindex>=_subbucketcount) ? bucketindex+1 : bucketindex;
+		return lowest+(1L<<shift)-1;
+	}
+
+	/**
+	 * @return the index a value is counted at; negative values are counted as 0, and values above the highest
+	 *         trackable value as that value
+	 */
+	int indexOf(long value)
+	{
+		return countsIndex(Math.min(Math.max(value,0),_highest));
+	}
+
+	/**
+	 * Count a value. Negative values are counted as 0.
+	 */
+	public void recordValue(long value)
+	{
+		if (value<0)
+		{
+			value=0;
+		}
+		if (value<_min)
+		{
+			_min=value;
+		}
+		if (value>_max)
+		{
+			_max=value;
+		}
+		_sum+=value;
+		_totalcount++;
+		_counts[countsIndex(Math.min(value,_highest))]++;
+	}
+
+	/**
+	 * Count values counted elsewhere at the given index. Their sum, minimum and maximum are added with addTotals().
+	 */
+	void addCount(int index, long count)
+	{
+		_counts[index]+=count;
+		_totalcount+=count;
+	}
+
+	/**
+	 * Add the sum, minimum and maximum of values counted elsewhere with addCount().
+	 */
+	void addTotals(long sum, long min, long max)
+	{
+		_sum+=sum;
+		_min=Math.min(_min,Math.max(min,0));
+		_max=Math.max(_max,Math.max(max,0));
+	}
+
+	/**
+	 * Add the counts of another histogram with the same highest trackable value and number of digits.
+	 *
+	 * @throws IllegalArgumentException if the other histogram has a different layout
+	 */
+	public void add(HdrHistogram other)
+	{
+		if ( (other._highest!=_highest) || (other._digits!=_digits) )
+		{
+			throw new IllegalArgumentException("Can only add histograms with the same highest trackable value and digits");
+		}
+		for (int i=0; i<_counts.length; i++)
+		{
+			_counts[i]+=other._counts[i];
+		}
+		_totalcount+=other._totalcount;
+		_sum+=other._sum;
+		_min=Math.min(_min,other._min);
+		_max=Math.max(_max,other._max);
+	}
+
+	/**
+	 * Drop all values counted so far.
+	 */
+	public void reset()
+	{
+		Arrays.fill(_counts,0);
+		_totalcount=0;
+		_sum=0;
+		_min=Long.MAX_VALUE;
+		_max=Long.MIN_VALUE;
+	}
+
+	/**
+	 * @return the value at or below which the given percentage of the values fall, to within the precision of
+	 *         the histogram, but never outside the range of the values counted; 0 if nothing was counted
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if (_totalcount==0)
+		{
+			return 0;
+		}
+		long countatpercentile=countAtPercentile(percentile,_totalcount);
+		long count=0;
+		for (int i=0; i<_counts.length; i++)
+		{
+			count+=_counts[i];
+			if (count>=countatpercentile)
+			{
+				long value=highestEquivalentValue(valueFromIndex(i));
+				return Math.max(Math.min(value,_max),_min);
+			}
+		}
+		return _max;
+	}
+
+	/**
+	 * @return the highest value each index stands for and the count at it, over all indexes
+	 */
+	public long[][] getDistribution()
+	{
+		long[][] distribution=new long[2][_counts.length];
+		for (int i=0; i<_counts.length; i++)
+		{
+			distribution[0][i]=highestEquivalentValue(valueFromIndex(i));
+			distribution[1][i]=_counts[i];
+		}
+		return distribution;
+	}
+
+	/**
+	 * @return the distribution in coarser units, e.g. in microseconds (1000) of values counted in nanoseconds:
+	 *         each value rounded down to the unit, with the counts of the indexes that round to the same value
+	 *         added up. The number of values depends only on the layout of the histogram.
+	 */
+	public long[][] getDistribution(long unit)
+	{
+		long[] values=new long[_counts.length];
+		long[] counts=new long[_counts.length];
+		int n=0;
+		for (int i=0; i<_counts.length; i++)
+		{
+			long value=highestEquivalentValue(valueFromIndex(i))/unit;
+			if ( (n==0) || (values[n-1]!=value) )
+			{
+				values[n]=value;
+				n++;
+			}
+			counts[n-1]+=_counts[i];
+		}
+		return new long[][] {Arrays.copyOf(values,n),Arrays.copyOf(counts,n)};
+	}
+
+	/**
+	 * @return the number of values at or below the given percentile of the total, at least 1. The tolerance
+	 *         keeps e.g. 99.9% of 1000 from rounding up to 1000.
+	 */
+	static long countAtPercentile(double percentile, long total)
+	{
+		double count=Math.min(percentile,100.0)/100.0*total;
+		return Math.max((long)Math.ceil(count*(1.0-1e-12)),1);
+	}
+
+	public long getTotalCount()
+	{
+		return _totalcount;
+	}
+
+	/**
+	 * @return the sum of all values counted
+	 */
+	public long getSum()
+	{
+		return _sum;
+	}
+
+	/**
+	 * @return the lowest value counted, or -1 if nothing was counted
+	 */
+	public long getMin()
+	{
+		return (_totalcount==0) ? -1 : _min;
+	}
+
+	/**
+	 * @return the highest value counted, or -1 if nothing was counted
+	 */
+	public long getMax()
+	{
+		return (_totalcount==0) ? -1 : _max;
+	}
+
+	public double getMean()
+	{
+		return (_totalcount==0) ? 0.0 : ((double)_sum)/_totalcount;
+	}
+
+	public long getHighestTrackableValue()
+	{
+		return _highest;
+	}
+
+	public int getSignificantDigits()
+	{
+		return _digits;
+	}
+}
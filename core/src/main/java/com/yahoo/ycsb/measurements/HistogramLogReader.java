@@ -0,0 +1,323 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+/**
+ * Reads the log written by HistogramLogWriter, and extracts the latency percentiles of each operation over any
+ * part of the run, either over the whole range or interval by interval.
+ */
+public class HistogramLogReader
+{
+	/**
+	 * The latencies measured in one interval.
+	 */
+	public static class Interval
+	{
+		public long _start;
+		public long _end;
+
+		/**
+		 * The count of each latency in us (the highest one its bucket stands for), by operation.
+		 */
+		public LinkedHashMap<String,TreeMap<Long,Long>> _counts=new LinkedHashMap<String,TreeMap<Long,Long>>();
+	}
+
+	DataInputStream _in;
+	Inflater _inflater=new Inflater();
+
+	/**
+	 * @throws IOException if the stream isn't a histogram log
+	 */
+	public HistogramLogReader(InputStream in) throws IOException
+	{
+		_in=new DataInputStream(new BufferedInputStream(in));
+		byte[] magic=new byte[HistogramLogWriter.MAGIC.length];
+		_in.readFully(magic);
+		for (int i=0; i<magic.length; i++)
+		{
+			if (magic[i]!=HistogramLogWriter.MAGIC[i])
+			{
+				throw new IOException("Not a histogram log");
+			}
+		}
+		int version=_in.readInt();
+		if (version!=HistogramLogWriter.VERSION)
+		{
+			throw new IOException("Unknown histogram log version "+version);
+		}
+	}
+
+	/**
+	 * @return the next interval, or null at the end of the log (or at an interval cut short)
+	 */
+	public Interval next() throws IOException
+	{
+		byte[] raw;
+		try
+		{
+			int compressedlength=_in.readInt();
+			int rawlength=_in.readInt();
+			byte[] compressed=new byte[compressedlength];
+			_in.readFully(compressed);
+
+			raw=new byte[rawlength];
+			_inflater.reset();
+			_inflater.setInput(compressed);
+			int n=0;
+			while ( (n<rawlength) && !_inflater.finished() )
+			{
+				n+=_inflater.inflate(raw,n,rawlength-n);
+			}
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Corrupt histogram log: "+e.getMessage());
+		}
+
+		DataInputStream block=new DataInputStream(new ByteArrayInputStream(raw));
+		Interval interval=new Interval();
+		interval._start=block.readLong();
+		interval._end=block.readLong();
+		int metrics=block.readInt();
+		for (int m=0; m<metrics; m++)
+		{
+			String name=block.readUTF();
+			TreeMap<Long,Long> counts=new TreeMap<Long,Long>();
+			long buckets=readVarint(block);
+			long value=0;
+			for (long b=0; b<buckets; b++)
+			{
+				value+=readVarint(block);
+				counts.put(value,readVarint(block));
+			}
+			interval._counts.put(name,counts);
+		}
+		return interval;
+	}
+
+	static long readVarint(DataInputStream in) throws IOException
+	{
+		long value=0;
+		int shift=0;
+		int b;
+		do
+		{
+			b=in.readUnsignedByte();
+			value|=((long)(b&0x7F))<<shift;
+			shift+=7;
+		}
+		while ((b&0x80)!=0);
+		return value;
+	}
+
+	/**
+	 * Add the counts of one distribution to another.
+	 */
+	public static void add(TreeMap<Long,Long> to, TreeMap<Long,Long> from)
+	{
+		for (Map.Entry<Long,Long> e : from.entrySet())
+		{
+			Long count=to.get(e.getKey());
+			to.put(e.getKey(),(count==null) ? e.getValue() : count+e.getValue());
+		}
+	}
+
+	public static long getOperations(TreeMap<Long,Long> counts)
+	{
+		long operations=0;
+		for (long count : counts.values())
+		{
+			operations+=count;
+		}
+		return operations;
+	}
+
+	/**
+	 * @return the latency at or below which the given percentage of the counts fall, or 0 if there are none
+	 */
+	public static long getPercentile(TreeMap<Long,Long> counts, double percentile)
+	{
+		long operations=getOperations(counts);
+		if (operations==0)
+		{
+			return 0;
+		}
+		long countatpercentile=HdrHistogram.countAtPercentile(percentile,operations);
+		long count=0;
+		for (Map.Entry<Long,Long> e : counts.entrySet())
+		{
+			count+=e.getValue();
+			if (count>=countatpercentile)
+			{
+				return e.getKey();
+			}
+		}
+		return counts.lastKey();
+	}
+
+	public static void usageMessage()
+	{
+		System.out.println("Usage: java com.yahoo.ycsb.measurements.HistogramLogReader [options] logfile");
+		System.out.println("Options:");
+		System.out.println("  -start s: Only use the intervals from s seconds into the log on (default: 0)");
+		System.out.println("  -end s: Only use the intervals up to s seconds into the log (default: the end)");
+		System.out.println("  -percentiles list: The percentiles to extract (default: "+OneMeasurementHdrHistogram.PERCENTILES_DEFAULT+")");
+		System.out.println("  -intervals: Print the percentiles of each interval as CSV, rather than over the whole range");
+		System.out.println();
+		System.out.println("An interval is used if its middle is within the range.");
+	}
+
+	public static void main(String[] args)
+	{
+		double start=0;
+		double end=Double.MAX_VALUE;
+		double[] percentiles=OneMeasurementHdrHistogram.parsePercentiles(OneMeasurementHdrHistogram.PERCENTILES_DEFAULT);
+		boolean intervals=false;
+
+		int argindex=0;
+		try
+		{
+			while ( (argindex<args.length-1) && args[argindex].startsWith("-") )
+			{
+				if (args[argindex].compareTo("-start")==0)
+				{
+					start=Double.parseDouble(args[++argindex]);
+				}
+				else if (args[argindex].compareTo("-end")==0)
+				{
+					end=Double.parseDouble(args[++argindex]);
+				}
+				else if (args[argindex].compareTo("-percentiles")==0)
+				{
+					percentiles=OneMeasurementHdrHistogram.parsePercentiles(args[++argindex]);
+				}
+				else if (args[argindex].compareTo("-intervals")==0)
+				{
+					intervals=true;
+				}
+				else
+				{
+					System.out.println("Unknown option "+args[argindex]);
+					usageMessage();
+					System.exit(0);
+				}
+				argindex++;
+			}
+		}
+		catch (RuntimeException e)
+		{
+			usageMessage();
+			System.exit(0);
+		}
+		if (argindex!=args.length-1)
+		{
+			usageMessage();
+			System.exit(0);
+		}
+
+		try
+		{
+			HistogramLogReader reader=new HistogramLogReader(new FileInputStream(args[argindex]));
+			DecimalFormat d=new DecimalFormat("#.###");
+			if (intervals)
+			{
+				StringBuilder header=new StringBuilder("Time(s),Operation,Operations");
+				for (double p : percentiles)
+				{
+					header.append(",").append(OneMeasurementHdrHistogram.percentileName(p));
+				}
+				System.out.println(header);
+			}
+
+			LinkedHashMap<String,TreeMap<Long,Long>> total=new LinkedHashMap<String,TreeMap<Long,Long>>();
+			long first=-1;
+			Interval interval;
+			while ((interval=reader.next())!=null)
+			{
+				if (first<0)
+				{
+					first=interval._start;
+				}
+				double middle=((interval._start+interval._end)/2.0-first)/1000.0;
+				if ( (middle<start) || (middle>end) )
+				{
+					continue;
+				}
+				for (Map.Entry<String,TreeMap<Long,Long>> e : interval._counts.entrySet())
+				{
+					if (intervals)
+					{
+						StringBuilder line=new StringBuilder();
+						line.append(d.format((interval._end-first)/1000.0)).append(",").append(e.getKey());
+						line.append(",").append(getOperations(e.getValue()));
+						for (double p : percentiles)
+						{
+							line.append(",").append(getPercentile(e.getValue(),p));
+						}
+						System.out.println(line);
+						continue;
+					}
+					TreeMap<Long,Long> counts=total.get(e.getKey());
+					if (counts==null)
+					{
+						counts=new TreeMap<Long,Long>();
+						total.put(e.getKey(),counts);
+					}
+					add(counts,e.getValue());
+				}
+			}
+
+			if (!intervals)
+			{
+				TextMeasurementsExporter exporter=new TextMeasurementsExporter(System.out);
+				for (Map.Entry<String,TreeMap<Long,Long>> e : total.entrySet())
+				{
+					exporter.write(e.getKey(),"Operations",getOperations(e.getValue()));
+					for (double p : percentiles)
+					{
+						exporter.write(e.getKey(),OneMeasurementHdrHistogram.percentileName(p),getPercentile(e.getValue(),p));
+					}
+				}
+				exporter.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not read the histogram log: "+e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the latency distribution of every operation, interval by interval, to an append-only log, so that the
+ * percentiles of any part of a run can be extracted afterwards with HistogramLogReader. Unlike the status
+ * summary, a stall that only lasts for a few seconds shows up in the tail latencies of its intervals.
+ *
+ * The log starts with the magic "YCSBHLOG" and a version number, followed by one block per interval: the
+ * compressed and uncompressed length of the block, then the block compressed with deflate. Each block holds
+ * the start and end time of the interval (epoch ms) and, for each operation measured in it, its name and the
+ * non-zero buckets of its distribution as varint-coded pairs of {latency increase in us, count}. The blocks
+ * are compressed one by one, so a log cut short by a crash can be read up to its last complete interval.
+ *
+ * Every measurement type keeps a distribution to log; a time series logs its latencies at the resolution of an
+ * hdrhistogram.
+ */
+public class HistogramLogWriter extends Thread
+{
+	/**
+	 * The file to write the log to. There is no log unless this is set.
+	 */
+	public static final String FILE_PROPERTY="histogramlog.file";
+
+	/**
+	 * The length of the intervals, in milliseconds.
+	 */
+	public static final String INTERVAL_PROPERTY="histogramlog.interval";
+
+	public static final String INTERVAL_PROPERTY_DEFAULT="1000";
+
+	static final byte[] MAGIC={'Y','C','S','B','H','L','O','G'};
+
+	static final int VERSION=1;
+
+	Measurements _measurements;
+	OutputStream _out;
+	long _interval;
+	volatile boolean _done;
+
+	/**
+	 * The distribution of each operation at the end of the last interval.
+	 */
+	HashMap<String,long[]> _last=new HashMap<String,long[]>();
+	long _lasttime;
+
+	/**
+	 * The generation of the measurements _last was taken from.
+	 */
+	int _generation;
+
+	Deflater _deflater=new Deflater();
+	byte[] _buffer=new byte[65536];
+
+	/**
+	 * @return true if the properties ask for a log
+	 */
+	public static boolean isEnabled(Properties props)
+	{
+		return props.getProperty(FILE_PROPERTY)!=null;
+	}
+
+	/**
+	 * Open the log. Nothing is logged until the thread is started.
+	 *
+	 * @param append add to the log of an earlier phase of this run rather than starting a new one
+	 */
+	public HistogramLogWriter(Properties props, boolean append) throws IOException
+	{
+		this(props,append,Measurements.getMeasurements());
+	}
+
+	HistogramLogWriter(Properties props, boolean append, Measurements measurements) throws IOException
+	{
+		setDaemon(true);
+		_measurements=measurements;
+		_generation=measurements.generation;
+		_interval=Long.parseLong(props.getProperty(INTERVAL_PROPERTY,INTERVAL_PROPERTY_DEFAULT));
+
+		File file=new File(props.getProperty(FILE_PROPERTY));
+		append=append && (file.length()>0);
+		_out=new FileOutputStream(file,append);
+		if (!append)
+		{
+			DataOutputStream header=new DataOutputStream(_out);
+			header.write(MAGIC);
+			header.writeInt(VERSION);
+			header.flush();
+		}
+		_lasttime=System.currentTimeMillis();
+	}
+
+	/**
+	 * Log an interval every so often, until finish() is called.
+	 */
+	public void run()
+	{
+		long next=_lasttime+_interval;
+		while (!_done)
+		{
+			try
+			{
+				long wait=next-System.currentTimeMillis();
+				if (wait>0)
+				{
+					sleep(wait);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				continue;
+			}
+			next+=_interval;
+			if (!logInterval())
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Log the last, partial interval and close the log. Call this once the operations are done.
+	 */
+	public void finish()
+	{
+		_done=true;
+		interrupt();
+		try
+		{
+			join();
+		}
+		catch (InterruptedException e)
+		{
+		}
+		if (logInterval())
+		{
+			try
+			{
+				_out.close();
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not close the histogram log: "+e.getMessage());
+			}
+			_out=null;
+			//a writer per phase, so free the native memory of its compressor now rather than on finalization
+			_deflater.end();
+		}
+	}
+
+	/**
+	 * Write the operations measured since the last interval as a block.
+	 *
+	 * @return false if the log could not be written, in which case it is closed
+	 */
+	synchronized boolean logInterval()
+	{
+		if (_out==null)
+		{
+			return false;
+		}
+		try
+		{
+			long now=System.currentTimeMillis();
+			//the measurements were reset since, e.g. at the start of a phase, so everything in them is new
+			int generation=_measurements.generation;
+			if (generation!=_generation)
+			{
+				_last.clear();
+				_generation=generation;
+			}
+			ByteArrayOutputStream raw=new ByteArrayOutputStream();
+			DataOutputStream block=new DataOutputStream(raw);
+			block.writeLong(_lasttime);
+			block.writeLong(now);
+			_lasttime=now;
+
+			ByteArrayOutputStream metrics=new ByteArrayOutputStream();
+			DataOutputStream metricsout=new DataOutputStream(metrics);
+			int count=0;
+			for (OneMeasurement m : _measurements.data.values())
+			{
+				if (writeInterval(m,metricsout))
+				{
+					count++;
+				}
+			}
+			block.writeInt(count);
+			metricsout.flush();
+			metrics.writeTo(block);
+			block.flush();
+			writeBlock(raw.toByteArray());
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write the histogram log, stopping it: "+e.getMessage());
+			try
+			{
+				_out.close();
+			}
+			catch (IOException e2)
+			{
+			}
+			_out=null;
+			_deflater.end();
+			return false;
+		}
+	}
+
+	/**
+	 * Write the buckets of the given metric that were counted in since the last interval.
+	 *
+	 * @return false if nothing was written, as nothing was measured
+	 */
+	boolean writeInterval(OneMeasurement m, DataOutputStream out) throws IOException
+	{
+		long[][] distribution=m.getDistribution();
+		if (distribution==null)
+		{
+			return false;
+		}
+		long[] last=_last.get(m.getName());
+		long[] counts=distribution[1];
+		//the metric was recorded differently since
+		if ( (last!=null) && (last.length!=counts.length) )
+		{
+			last=null;
+		}
+		_last.put(m.getName(),counts.clone());
+
+		int nonzero=0;
+		for (int i=0; i<counts.length; i++)
+		{
+			if (counts[i]-((last==null) ? 0 : last[i])>0)
+			{
+				nonzero++;
+			}
+		}
+		if (nonzero==0)
+		{
+			return false;
+		}
+
+		out.writeUTF(m.getName());
+		writeVarint(out,nonzero);
+		long lastvalue=0;
+		for (int i=0; i<counts.length; i++)
+		{
+			long count=counts[i]-((last==null) ? 0 : last[i]);
+			if (count>0)
+			{
+				writeVarint(out,distribution[0][i]-lastvalue);
+				writeVarint(out,count);
+				lastvalue=distribution[0][i];
+			}
+		}
+		return true;
+	}
+
+	void writeBlock(byte[] raw) throws IOException
+	{
+		_deflater.reset();
+		_deflater.setInput(raw);
+		_deflater.finish();
+		ByteArrayOutputStream compressed=new ByteArrayOutputStream();
+		while (!_deflater.finished())
+		{
+			int n=_deflater.deflate(_buffer);
+			compressed.write(_buffer,0,n);
+		}
+
+		DataOutputStream out=new DataOutputStream(_out);
+		out.writeInt(compressed.size());
+		out.writeInt(raw.length);
+		compressed.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Write a non-negative number in 7-bit groups, lowest first, with the high bit set on all but the last one.
+	 */
+	static void writeVarint(DataOutputStream out, long value) throws IOException
+	{
+		while ((value&~0x7FL)!=0)
+		{
+			out.writeByte((int)((value&0x7F)|0x80));
+			value>>>=7;
+		}
+		out.writeByte((int)value);
+	}
+}
@@ -0,0 +1,360 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Finds the keys that got the most operations, and those that took the most total latency, in memory that
+ * doesn't grow with the number of keys or threads: the client threads count the operations and latency of their
+ * keys in a fixed number of Count-Min sketches, one per stripe as in StripedMeasurement, each of which keeps the
+ * keys with the highest counts so far in two top-k heaps. A thread counts into the sketch of its stripe under
+ * the lock of that sketch, which it only contends for with the other threads of the stripe.
+ *
+ * At the end of the run, the sketches are added up, and the keys in any heap are ranked by their counts in the
+ * sum. Counts are estimates that can only be too high: with a sketch "hotkeys.width" wide, by at most
+ * e/width of all operations (or latency), except with a probability of e^-depth.
+ */
+public class HotKeys
+{
+	/**
+	 * The number of keys to export, in each list. There is no hot key detection unless this is set.
+	 */
+	public static final String TOP_K_PROPERTY="hotkeys.topk";
+
+	/**
+	 * The number of counters in each row of the sketch, rounded up to a power of 2.
+	 */
+	public static final String WIDTH_PROPERTY="hotkeys.width";
+
+	public static final String WIDTH_PROPERTY_DEFAULT="4096";
+
+	/**
+	 * The number of rows of the sketch, each with a hash function of its own.
+	 */
+	public static final String DEPTH_PROPERTY="hotkeys.depth";
+
+	public static final String DEPTH_PROPERTY_DEFAULT="4";
+
+	/**
+	 * The keys with the highest values so far, in a min-heap of at most k keys, so that the lowest one is the one
+	 * to give way to a key that overtakes it.
+	 */
+	static class TopK
+	{
+		String[] _keys;
+		long[] _values;
+		int _size;
+		HashMap<String,Integer> _positions=new HashMap<String,Integer>();
+
+		TopK(int k)
+		{
+			_keys=new String[k];
+			_values=new long[k];
+		}
+
+		/**
+		 * Offer a key with its current value. Values only ever grow.
+		 */
+		void offer(String key, long value)
+		{
+			Integer position=_positions.get(key);
+			if (position!=null)
+			{
+				_values[position]=value;
+				siftDown(position);
+			}
+			else if (_size<_keys.length)
+			{
+				set(_size,key,value);
+				_size++;
+				siftUp(_size-1);
+			}
+			else if (value>_values[0])
+			{
+				_positions.remove(_keys[0]);
+				set(0,key,value);
+				siftDown(0);
+			}
+		}
+
+		void set(int i, String key, long value)
+		{
+			_keys[i]=key;
+			_values[i]=value;
+			_positions.put(key,i);
+		}
+
+		void swap(int i, int j)
+		{
+			String key=_keys[i];
+			long value=_values[i];
+			set(i,_keys[j],_values[j]);
+			set(j,key,value);
+		}
+
+		void siftUp(int i)
+		{
+			while ( (i>0) && (_values[i]<_values[(i-1)/2]) )
+			{
+				swap(i,(i-1)/2);
+				i=(i-1)/2;
+			}
+		}
+
+		void siftDown(int i)
+		{
+			while (true)
+			{
+				int smallest=i;
+				for (int child=2*i+1; (child<=2*i+2) && (child<_size); child++)
+				{
+					if (_values[child]<_values[smallest])
+					{
+						smallest=child;
+					}
+				}
+				if (smallest==i)
+				{
+					return;
+				}
+				swap(i,smallest);
+				i=smallest;
+			}
+		}
+	}
+
+	/**
+	 * The counts of the keys of the client threads of one stripe. Not thread safe.
+	 */
+	static class Sketch
+	{
+		final int _depth;
+		final int _mask;
+		final long[] _operations;
+		final long[] _latencies;
+		final TopK _byoperations;
+		final TopK _bylatency;
+
+		Sketch(int width, int depth, int k)
+		{
+			int capacity=1;
+			while (capacity<width)
+			{
+				capacity<<=1;
+			}
+			_depth=depth;
+			_mask=capacity-1;
+			_operations=new long[depth*capacity];
+			_latencies=new long[depth*capacity];
+			_byoperations=new TopK(k);
+			_bylatency=new TopK(k);
+		}
+
+		/**
+		 * @return the counter of the key in the given row
+		 */
+		int index(int hash1, int hash2, int row)
+		{
+			return row*(_mask+1)+((hash1+row*hash2)&_mask);
+		}
+
+		static int hash2(int hash)
+		{
+			//a second, independent hash from the first one, odd so that the rows differ
+			hash*=0x9E3779B9;
+			return (hash^(hash>>>16))|1;
+		}
+
+		/**
+		 * Count one operation on a key.
+		 *
+		 * @param latency its latency in nanoseconds
+		 */
+		void add(String key, long latency)
+		{
+			int h1=key.hashCode();
+			int h2=hash2(h1);
+			long operations=Long.MAX_VALUE;
+			long total=Long.MAX_VALUE;
+			for (int row=0; row<_depth; row++)
+			{
+				int i=index(h1,h2,row);
+				operations=Math.min(operations,++_operations[i]);
+				total=Math.min(total,_latencies[i]+=latency);
+			}
+			_byoperations.offer(key,operations);
+			_bylatency.offer(key,total);
+		}
+
+		/**
+		 * @return the estimated operations and total latency of a key
+		 */
+		long[] estimate(String key)
+		{
+			int h1=key.hashCode();
+			int h2=hash2(h1);
+			long[] estimate={Long.MAX_VALUE,Long.MAX_VALUE};
+			for (int row=0; row<_depth; row++)
+			{
+				int i=index(h1,h2,row);
+				estimate[0]=Math.min(estimate[0],_operations[i]);
+				estimate[1]=Math.min(estimate[1],_latencies[i]);
+			}
+			return estimate;
+		}
+
+		void add(Sketch other)
+		{
+			for (int i=0; i<_operations.length; i++)
+			{
+				_operations[i]+=other._operations[i];
+				_latencies[i]+=other._latencies[i];
+			}
+		}
+	}
+
+	/**
+	 * One of the hottest keys.
+	 */
+	public static class HotKey
+	{
+		public String _key;
+		public long _operations;
+
+		/**
+		 * In nanoseconds.
+		 */
+		public long _latency;
+	}
+
+	int _k;
+	int _width;
+	int _depth;
+
+	//one per stripe, created on first use
+	AtomicReferenceArray<Sketch> _sketches;
+
+	/**
+	 * @return true if the properties ask for hot key detection
+	 */
+	public static boolean isEnabled(Properties props)
+	{
+		return props.getProperty(TOP_K_PROPERTY)!=null;
+	}
+
+	public HotKeys(Properties props)
+	{
+		_k=Integer.parseInt(props.getProperty(TOP_K_PROPERTY));
+		_width=Integer.parseInt(props.getProperty(WIDTH_PROPERTY,WIDTH_PROPERTY_DEFAULT));
+		_depth=Integer.parseInt(props.getProperty(DEPTH_PROPERTY,DEPTH_PROPERTY_DEFAULT));
+		_sketches=new AtomicReferenceArray<Sketch>(StripedMeasurement.stripes());
+	}
+
+	/**
+	 * Count one operation on a key, in the sketch of the current thread's stripe.
+	 *
+	 * @param latency its latency in nanoseconds
+	 */
+	public void add(String key, long latency)
+	{
+		int i=(int)Thread.currentThread().getId()&(_sketches.length()-1);
+		Sketch sketch=_sketches.get(i);
+		if (sketch==null)
+		{
+			_sketches.compareAndSet(i,null,new Sketch(_width,_depth,_k));
+			sketch=_sketches.get(i);
+		}
+		synchronized (sketch)
+		{
+			sketch.add(key,latency);
+		}
+	}
+
+	/**
+	 * @param bylatency rank the keys by their total latency rather than by their operations
+	 * @return the (at most) k hottest keys, hottest first, with their estimated operations and total latency in
+	 *         nanoseconds. Only call this once the client threads are done.
+	 */
+	public ArrayList<HotKey> getTop(final boolean bylatency)
+	{
+		Sketch sum=new Sketch(_width,_depth,0);
+		LinkedHashSet<String> candidates=new LinkedHashSet<String>();
+		for (int s=0; s<_sketches.length(); s++)
+		{
+			Sketch sketch=_sketches.get(s);
+			if (sketch==null)
+			{
+				continue;
+			}
+			synchronized (sketch)
+			{
+				sum.add(sketch);
+				TopK top=bylatency ? sketch._bylatency : sketch._byoperations;
+				for (int i=0; i<top._size; i++)
+				{
+					candidates.add(top._keys[i]);
+				}
+			}
+		}
+
+		ArrayList<HotKey> ranked=new ArrayList<HotKey>();
+		for (String key : candidates)
+		{
+			long[] estimate=sum.estimate(key);
+			HotKey hotkey=new HotKey();
+			hotkey._key=key;
+			hotkey._operations=estimate[0];
+			hotkey._latency=estimate[1];
+			ranked.add(hotkey);
+		}
+		Collections.sort(ranked,new Comparator<HotKey>()
+		{
+			public int compare(HotKey a, HotKey b)
+			{
+				long x=bylatency ? a._latency : a._operations;
+				long y=bylatency ? b._latency : b._operations;
+				return (x<y) ? 1 : ((x==y) ? 0 : -1);
+			}
+		});
+		return new ArrayList<HotKey>(ranked.subList(0,Math.min(_k,ranked.size())));
+	}
+
+	/**
+	 * Export the keys with the most operations as HOTKEYS-OPERATIONS, and those with the most total latency (in
+	 * microseconds) as HOTKEYS-LATENCY(us), hottest first.
+	 */
+	public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		for (HotKey hotkey : getTop(false))
+		{
+			exporter.write("HOTKEYS-OPERATIONS","Key="+hotkey._key,hotkey._operations);
+		}
+		for (HotKey hotkey : getTop(true))
+		{
+			exporter.write("HOTKEYS-LATENCY(us)","Key="+hotkey._key,hotkey._latency/1000);
+		}
+	}
+}
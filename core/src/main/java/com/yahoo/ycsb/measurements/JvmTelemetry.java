@@ -0,0 +1,359 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Tells the stalls of the client JVM apart from those of the store. A hiccup detector thread sleeps for
+ * "jvmtelemetry.resolution" ms over and over: whenever it wakes up later than it should have, the client was
+ * stalled (by a GC pause, a safepoint, the OS...) for that long. Stalls shorter than the resolution only show in
+ * the percentiles of the hiccups. Every interval, the GC time and collections reported by the collectors, the
+ * stall time, the longest hiccup and the bytes allocated by the client's threads are sampled. The allocations are
+ * only those of the platform threads: virtual client threads (see Client.EXECUTOR_PROPERTY) are not reported by the
+ * ThreadMXBean, so what they allocate is missing from "JVM-ALLOCATION(MB/sec)" and "AllocatedBytes".
+ *
+ * The time each operation spent in stalls of at least the resolution is counted against its metric, and
+ * exported next to its latencies as "ClientPauseTime(us)" and "PausedOperations", so that client hiccups can be
+ * subtracted from them. The samples are exported as series, e.g. "JVM-GC-TIME(ms)", by the time their interval
+ * started at, in ms since the start of the run, like the throughput series and the time series; with the same
+ * interval as those, the spikes line up.
+ */
+public class JvmTelemetry extends Thread
+{
+	/**
+	 * The length of the intervals to sample in, in milliseconds. There is no telemetry unless this is set.
+	 */
+	public static final String INTERVAL_PROPERTY="jvmtelemetry.interval";
+
+	/**
+	 * How long the hiccup detector sleeps for, in milliseconds: shorter stalls are not counted against the
+	 * operations.
+	 */
+	public static final String RESOLUTION_PROPERTY="jvmtelemetry.resolution";
+
+	public static final String RESOLUTION_PROPERTY_DEFAULT="1";
+
+	//the last stalls, for the operations to find those they overlapped
+	static final int STALLS=1024;
+
+	static final String[] SERIES={"JVM-GC-TIME(ms)","JVM-GC-COUNT","JVM-HICCUP-TIME(ms)","JVM-MAX-HICCUP(ms)","JVM-ALLOCATION(MB/sec)"};
+
+	long _interval;
+	long _resolution;
+	long _start;
+	volatile boolean _done;
+	HiccupDetector _detector=new HiccupDetector();
+
+	//the start and end (ns) of each stall, in a ring written by the hiccup detector only
+	long[] _stallstarts=new long[STALLS];
+	long[] _stallends=new long[STALLS];
+	volatile int _stalls;
+
+	//in nanoseconds, of all the oversleeps of the hiccup detector, and the time of the stalls
+	HdrHistogram _hiccups=new HdrHistogram(3600000000000L,2);
+	long _hiccuptime;
+	long _maxhiccup;
+
+	//the samples of each interval, as in SERIES but in nanoseconds and bytes, followed by its length in ns
+	ArrayList<long[]> _samples=new ArrayList<long[]>();
+	long _lastsample;
+	long _lastgctime;
+	long _lastgccount;
+	long _lasthiccuptime;
+	HashMap<Long,Long> _lastallocated=new HashMap<Long,Long>();
+	long _allocated;
+
+	//the stall time and the stalled operations of each metric
+	ConcurrentHashMap<String,AtomicLong[]> _pauses=new ConcurrentHashMap<String,AtomicLong[]>();
+
+	/**
+	 * Sleeps and counts how much longer than asked it slept for.
+	 */
+	class HiccupDetector extends Thread
+	{
+		HiccupDetector()
+		{
+			setDaemon(true);
+		}
+
+		public void run()
+		{
+			long expected=_resolution*1000000L;
+			while (!_done)
+			{
+				long before=System.nanoTime();
+				try
+				{
+					sleep(_resolution);
+				}
+				catch (InterruptedException e)
+				{
+					continue;
+				}
+				long after=System.nanoTime();
+				hiccup(before+expected,after);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the properties ask for JVM telemetry
+	 */
+	public static boolean isEnabled(Properties props)
+	{
+		return props.getProperty(INTERVAL_PROPERTY)!=null;
+	}
+
+	public JvmTelemetry(Properties props)
+	{
+		setDaemon(true);
+		_interval=Long.parseLong(props.getProperty(INTERVAL_PROPERTY));
+		_resolution=Math.max(Long.parseLong(props.getProperty(RESOLUTION_PROPERTY,RESOLUTION_PROPERTY_DEFAULT)),1);
+	}
+
+	/**
+	 * Count a stall of the client, from when the hiccup detector should have woken up to when it did.
+	 */
+	synchronized void hiccup(long start, long end)
+	{
+		long length=Math.max(end-start,0);
+		_hiccups.recordValue(Math.min(length,_hiccups.getHighestTrackableValue()));
+		_maxhiccup=Math.max(_maxhiccup,length);
+		//shorter oversleeps are mostly the timer's slack
+		if (length>=_resolution*1000000L)
+		{
+			_hiccuptime+=length;
+			int i=_stalls;
+			_stallstarts[i%STALLS]=start;
+			_stallends[i%STALLS]=end;
+			_stalls=i+1;
+		}
+	}
+
+	/**
+	 * Count the time an operation of the given metric spent in client stalls.
+	 *
+	 * @param starttime when it started, in ns
+	 * @param endtime when it ended, in ns
+	 */
+	public void countPause(String metric, long starttime, long endtime)
+	{
+		long paused=getPausedTime(starttime,endtime);
+		if (paused==0)
+		{
+			return;
+		}
+		AtomicLong[] pauses=_pauses.get(metric);
+		if (pauses==null)
+		{
+			AtomicLong[] created={new AtomicLong(),new AtomicLong()};
+			pauses=_pauses.putIfAbsent(metric,created);
+			if (pauses==null)
+			{
+				pauses=created;
+			}
+		}
+		pauses[0].addAndGet(paused);
+		pauses[1].incrementAndGet();
+	}
+
+	/**
+	 * @return the time (ns) between the given start and end in which the client was stalled, as far as the stalls
+	 *         that are over by now go
+	 */
+	long getPausedTime(long starttime, long endtime)
+	{
+		int n=_stalls;
+		long paused=0;
+		//the newest first, up to the first one that ended before the start; the oldest half may be rewritten
+		for (int i=n-1; i>=Math.max(n-STALLS/2,0); i--)
+		{
+			long end=_stallends[i%STALLS];
+			if (end<=starttime)
+			{
+				break;
+			}
+			paused+=Math.max(Math.min(end,endtime)-Math.max(_stallstarts[i%STALLS],starttime),0);
+		}
+		return paused;
+	}
+
+	public void start()
+	{
+		_start=System.currentTimeMillis();
+		sample();
+		_samples.clear();
+		_detector.start();
+		super.start();
+	}
+
+	/**
+	 * Sample every interval, until finish() is called.
+	 */
+	public void run()
+	{
+		long next=_start+_interval;
+		while (!_done)
+		{
+			try
+			{
+				long wait=next-System.currentTimeMillis();
+				if (wait>0)
+				{
+					sleep(wait);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				continue;
+			}
+			next+=_interval;
+			sample();
+		}
+	}
+
+	/**
+	 * Sample the last, partial interval and stop. Call this once the operations are done.
+	 */
+	public void finish()
+	{
+		_done=true;
+		interrupt();
+		_detector.interrupt();
+		try
+		{
+			join();
+			_detector.join();
+		}
+		catch (InterruptedException e)
+		{
+		}
+		sample();
+	}
+
+	/**
+	 * Add the GC time and collections, stall time and allocations since the last sample as an interval.
+	 */
+	synchronized void sample()
+	{
+		long gctime=0;
+		long gccount=0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gctime+=Math.max(gc.getCollectionTime(),0);
+			gccount+=Math.max(gc.getCollectionCount(),0);
+		}
+
+		//only some JVMs count the bytes each thread allocated, and only for platform threads; those of threads that
+		//ended since are lost
+		long allocated=0;
+		ThreadMXBean threads=ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+		{
+			long[] ids=threads.getAllThreadIds();
+			long[] bytes=((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(ids);
+			HashMap<Long,Long> last=_lastallocated;
+			_lastallocated=new HashMap<Long,Long>();
+			for (int i=0; i<ids.length; i++)
+			{
+				if (bytes[i]<0)
+				{
+					continue;
+				}
+				Long before=last.get(ids[i]);
+				allocated+=bytes[i]-((before==null) ? 0 : before);
+				_lastallocated.put(ids[i],bytes[i]);
+			}
+		}
+		_allocated+=allocated;
+
+		long now=System.nanoTime();
+		long[] sample={(gctime-_lastgctime)*1000000L,gccount-_lastgccount,_hiccuptime-_lasthiccuptime,_maxhiccup,allocated,now-_lastsample};
+		_samples.add(sample);
+		_lastsample=now;
+		_lastgctime=gctime;
+		_lastgccount=gccount;
+		_lasthiccuptime=_hiccuptime;
+		_maxhiccup=0;
+	}
+
+	/**
+	 * Export the stall time of the operations of one metric, in microseconds, and how many of them were stalled.
+	 */
+	public void exportPauses(String metric, MeasurementsExporter exporter) throws IOException
+	{
+		AtomicLong[] pauses=_pauses.get(metric);
+		exporter.write(metric,"ClientPauseTime(us)",(pauses==null) ? 0 : pauses[0].get()/1000);
+		exporter.write(metric,"PausedOperations",(pauses==null) ? 0 : pauses[1].get());
+	}
+
+	/**
+	 * Export the totals of the run as JVM, then the series of the intervals. Only call this once the telemetry is
+	 * finished. The allocations leave out those of virtual client threads.
+	 */
+	public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		long gctime=0;
+		long gccount=0;
+		for (long[] sample : _samples)
+		{
+			gctime+=sample[0];
+			gccount+=sample[1];
+		}
+		exporter.write("JVM","GCTime(ms)",gctime/1000000);
+		exporter.write("JVM","GCCount",gccount);
+		exporter.write("JVM","HiccupTime(ms)",_hiccuptime/1000000);
+		exporter.write("JVM","MaxHiccup(us)",_hiccups.getMax()/1000);
+		for (double p : new double[] {50,99,99.9})
+		{
+			exporter.write("JVM",OneMeasurementHdrHistogram.percentileName(p).replace("Latency","Hiccup"),_hiccups.getValueAtPercentile(p)/1000);
+		}
+		exporter.write("JVM","AllocatedBytes",_allocated);
+
+		for (int s=0; s<SERIES.length; s++)
+		{
+			for (int i=0; i<_samples.size(); i++)
+			{
+				long value=_samples.get(i)[s];
+				String t=Long.toString(i*_interval);
+				if (s==1)
+				{
+					exporter.write(SERIES[s],t,value);
+				}
+				else if (s==4)
+				{
+					//over the actual length of the interval, which is shorter for the last one
+					exporter.write(SERIES[s],t,value/1048576.0*1000000000/Math.max(_samples.get(i)[5],1));
+				}
+				else
+				{
+					exporter.write(SERIES[s],t,value/1000000.0);
+				}
+			}
+		}
+	}
+}
@@ -18,8 +18,11 @@
 package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
@@ -31,10 +34,50 @@ import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
  */
 public class Measurements
 {
+	/**
+	 * How the latencies of each operation are kept: "histogram" (1 ms buckets, the default), "hdrhistogram"
+	 * (microsecond resolution and any percentiles, see OneMeasurementHdrHistogram) or "timeseries".
+	 */
 	private static final String MEASUREMENT_TYPE = "measurementtype";
 
 	private static final String MEASUREMENT_TYPE_DEFAULT = "histogram";
 
+	/**
+	 * Which latency to measure: "op" measures the service time of each operation from when it was actually
+	 * issued, "intended" measures the response time from when the operation was supposed to be issued
+	 * according to the target throughput (avoiding coordinated omission), and "both" measures both. The
+	 * intended response times are reported under the operation name prefixed with "INTENDED-".
+	 */
+	public static final String MEASUREMENT_INTERVAL = "measurement.interval";
+
+	private static final String MEASUREMENT_INTERVAL_DEFAULT = "op";
+
+	/**
+	 * How the client threads record their measurements: "striped" (the default) counts each metric into a
+	 * fixed number of stripes of atomic counters without locking, and merges them when they are read (see
+	 * StripedMeasurement), "synchronized" records all measurements under one lock, as earlier versions did. Time
+	 * series are always recorded under the one lock.
+	 */
+	public static final String RECORDER = "measurement.recorder";
+
+	/**
+	 * Appended to the name of an operation to measure its failures apart from its successes, e.g. "READ-FAILED".
+	 */
+	public static final String FAILED = "-FAILED";
+
+	/**
+	 * The length of the intervals to count the completed operations of each metric in, in milliseconds, to export
+	 * their throughput over time (as e.g. "READ-THROUGHPUT"). There is no such series unless this is set.
+	 */
+	public static final String THROUGHPUT_GRANULARITY = "throughputseries.granularity";
+
+	/**
+	 * Appended to the name of a metric to name the series of its throughput.
+	 */
+	public static final String THROUGHPUT = "-THROUGHPUT";
+
+	private static final String RECORDER_DEFAULT = "striped";
+
 	static Measurements singleton=null;
 	
 	static Properties measurementproperties=null;
@@ -56,36 +99,212 @@ public class Measurements
 		return singleton;
 	}
 
-	HashMap<String,OneMeasurement> data;
-	boolean histogram=true;
+	ConcurrentHashMap<String,OneMeasurement> data;
+
+	//the operations completed in each interval, by metric, and the System.nanoTime() of the first one
+	ConcurrentHashMap<String,ThroughputSeries> throughput;
+	long throughputgranularity;
+	AtomicLong throughputstart=new AtomicLong();
+	String measurementtype;
+	boolean striped;
+
+	/**
+	 * 0: measure the operation latency only, 1: measure the intended latency only, 2: measure both.
+	 */
+	int measurementinterval;
 
 	private Properties _props;
-	
+
+	/**
+	 * How many times the measurements were reset, so that whatever keeps state derived from them can tell.
+	 */
+	volatile int generation;
+
+	/**
+	 * The prefix of the names of all metrics recorded, to keep the measurements of different parts of a run
+	 * apart, and the names it makes, so that recording an operation doesn't build its name every time.
+	 */
+	static class Namespace
+	{
+		final String _prefix;
+		final ConcurrentHashMap<String,String> _names=new ConcurrentHashMap<String,String>();
+		final ConcurrentHashMap<String,String> _intendednames=new ConcurrentHashMap<String,String>();
+
+		Namespace(String prefix)
+		{
+			_prefix=prefix;
+		}
+
+		/**
+		 * @return the full name of the given operation, e.g. "PROBE1-READ"
+		 */
+		String name(String operation)
+		{
+			String name=_names.get(operation);
+			if (name==null)
+			{
+				name=_prefix+operation;
+				_names.put(operation,name);
+			}
+			return name;
+		}
+
+		/**
+		 * @return the full name of the intended latency of the given operation, e.g. "PROBE1-INTENDED-READ"
+		 */
+		String intendedName(String operation)
+		{
+			String name=_intendednames.get(operation);
+			if (name==null)
+			{
+				name=_prefix+"INTENDED-"+operation;
+				_intendednames.put(operation,name);
+			}
+			return name;
+		}
+	}
+
+	volatile Namespace namespace=new Namespace("");
+
+	/**
+	 * Where each operation is captured to, if anywhere.
+	 */
+	volatile RawCapture rawcapture;
+
+	/**
+	 * Where the keys of the operations are counted, if anywhere.
+	 */
+	volatile HotKeys hotkeys;
+
+	/**
+	 * Where the client stalls the operations are caught in are counted, if anywhere.
+	 */
+	volatile JvmTelemetry jvmtelemetry;
+
+	/**
+	 * The time each client thread intended to start its current operation at, and whether a DB call took it yet.
+	 */
+	static class StartTimeHolder
+	{
+		long time;
+		boolean taken;
+
+		long startTime()
+		{
+			if (time==0)
+			{
+				return System.nanoTime();
+			}
+			return time;
+		}
+
+		long take()
+		{
+			if (taken)
+			{
+				return System.nanoTime();
+			}
+			taken=true;
+			return startTime();
+		}
+	}
+
+	ThreadLocal<StartTimeHolder> tlintendedstarttime=new ThreadLocal<StartTimeHolder>()
+	{
+		protected StartTimeHolder initialValue()
+		{
+			return new StartTimeHolder();
+		}
+	};
+
       /**
        * Create a new object with the specified properties.
        */
 	public Measurements(Properties props)
 	{
-		data=new HashMap<String,OneMeasurement>();
-		
+		configure(props);
+	}
+
+      /**
+       * Drop all measurements taken so far and start over with the specified properties, e.g. for the next phase of
+       * a multi-phase run. No operations should be measured while this runs.
+       */
+	public synchronized void reset(Properties props)
+	{
+		configure(props);
+		generation++;
+	}
+
+	void configure(Properties props)
+	{
+		data=new ConcurrentHashMap<String,OneMeasurement>();
+		namespace=new Namespace("");
+
 		_props=props;
-		
-		if (_props.getProperty(MEASUREMENT_TYPE, MEASUREMENT_TYPE_DEFAULT).compareTo("histogram")==0)
+
+		throughput=new ConcurrentHashMap<String,ThroughputSeries>();
+		throughputgranularity=Long.parseLong(_props.getProperty(THROUGHPUT_GRANULARITY, "0"));
+		throughputstart=new AtomicLong();
+
+		measurementtype=_props.getProperty(MEASUREMENT_TYPE, MEASUREMENT_TYPE_DEFAULT);
+
+		String recorder=_props.getProperty(RECORDER, RECORDER_DEFAULT);
+		if (recorder.compareTo("striped")==0)
 		{
-			histogram=true;
+			striped=(measurementtype.compareTo("histogram")==0) || (measurementtype.compareTo("hdrhistogram")==0);
 		}
 		else
 		{
-			histogram=false;
+			if (recorder.compareTo("synchronized")!=0)
+			{
+				System.err.println("Unknown "+RECORDER+" \""+recorder+"\", recording under one lock");
+			}
+			striped=false;
+		}
+
+		String interval=_props.getProperty(MEASUREMENT_INTERVAL, MEASUREMENT_INTERVAL_DEFAULT);
+		if (interval.compareTo("op")==0)
+		{
+			measurementinterval=0;
+		}
+		else if (interval.compareTo("intended")==0)
+		{
+			measurementinterval=1;
+		}
+		else if (interval.compareTo("both")==0)
+		{
+			measurementinterval=2;
+		}
+		else
+		{
+			System.err.println("Unknown "+MEASUREMENT_INTERVAL+" \""+interval+"\", measuring operation latency only");
+			measurementinterval=0;
 		}
 	}
 	
 	OneMeasurement constructOneMeasurement(String name)
 	{
-		if (histogram)
+		if (striped)
+		{
+			return new StripedMeasurement(name,this);
+		}
+		return constructRecorder(name);
+	}
+
+	/**
+	 * Create a measurement of the configured type, to merge the stripes of a StripedMeasurement into or for all
+	 * threads under the one lock.
+	 */
+	OneMeasurement constructRecorder(String name)
+	{
+		if (measurementtype.compareTo("histogram")==0)
 		{
 			return new OneMeasurementHistogram(name,_props);
 		}
+		else if (measurementtype.compareTo("hdrhistogram")==0)
+		{
+			return new OneMeasurementHdrHistogram(name,_props);
+		}
 		else
 		{
 			return new OneMeasurementTimeSeries(name,_props);
@@ -95,21 +314,223 @@ public class Measurements
       /**
        * Report a single value of a single metric. E.g. for read latency, operation="READ" and latency is the measured value.
        */
-	public synchronized void measure(String operation, int latency)
+	public void measure(String operation, int latency)
+	{
+		measureNanos(operation,latency*1000L);
+	}
+
+      /**
+       * Report a single latency of a single metric in nanoseconds, e.g. of an operation on an embedded store that
+       * takes less than a microsecond. The hdrhistogram measurement keeps it at that resolution, the others round it
+       * down to whole microseconds.
+       */
+	public void measureNanos(String operation, long latency)
+	{
+		if (measurementinterval==1)
+		{
+			return;
+		}
+		record(namespace.name(operation),latency);
+	}
+
+      /**
+       * Report a single value of a single metric, measured from the intended start time of the operation rather
+       * than from when it was actually issued. Recorded as "INTENDED-"+operation.
+       */
+	public void measureIntended(String operation, int latency)
+	{
+		measureIntendedNanos(operation,latency*1000L);
+	}
+
+      /**
+       * Report a latency measured from the intended start time of the operation, in nanoseconds.
+       */
+	public void measureIntendedNanos(String operation, long latency)
+	{
+		if (measurementinterval==0)
+		{
+			return;
+		}
+		record(namespace.intendedName(operation),latency);
+	}
+
+      /**
+       * Set the time the current thread intended to start its next operation at, as a System.nanoTime() value.
+       * Client threads call this before each throttled operation.
+       */
+	public void setIntendedStartTimeNs(long time)
+	{
+		if (measurementinterval==0)
+		{
+			return;
+		}
+		StartTimeHolder holder=tlintendedstarttime.get();
+		holder.time=time;
+		holder.taken=false;
+	}
+
+      /**
+       * Return the time the current thread intended to start its current operation at. If no intended start time
+       * was set (e.g. the client is not throttled), this is the current time.
+       */
+	public long getIntendedStartTimeNs()
+	{
+		if (measurementinterval==0)
+		{
+			return 0L;
+		}
+		return tlintendedstarttime.get().startTime();
+	}
+
+      /**
+       * Return the intended start time for a DB call of the current operation. Only the first DB call of a workload
+       * operation (e.g. the read of a read-modify-write) waited for its schedule; the later ones were issued as soon
+       * as the earlier ones were done, so they are measured from when they were issued, and the INTENDED- latency
+       * of e.g. an update doesn't depend on what came before it. The workload operation as a whole is measured from
+       * getIntendedStartTimeNs().
+       */
+	public long takeIntendedStartTimeNs()
 	{
-		if (!data.containsKey(operation))
+		if (measurementinterval==0)
+		{
+			return 0L;
+		}
+		return tlintendedstarttime.get().take();
+	}
+
+      /**
+       * Set the prefix for the names of the metrics recorded from now on, e.g. "PROBE1-" to record the
+       * operations of the first probe of a throughput search as "PROBE1-READ" and so on. The empty string (the
+       * default) records the metrics under their plain names.
+       */
+	public void setNamespace(String prefix)
+	{
+		namespace=new Namespace(prefix);
+	}
+
+	public String getNamespace()
+	{
+		return namespace._prefix;
+	}
+
+      /**
+       * Capture every operation done from now on to the given capture, or stop capturing them (null).
+       */
+	public void setRawCapture(RawCapture capture)
+	{
+		rawcapture=capture;
+	}
+
+	public RawCapture getRawCapture()
+	{
+		return rawcapture;
+	}
+
+      /**
+       * Count the keys of the operations done from now on in the given hot key sketches, or stop counting them (null).
+       */
+	public void setHotKeys(HotKeys keys)
+	{
+		hotkeys=keys;
+	}
+
+	public HotKeys getHotKeys()
+	{
+		return hotkeys;
+	}
+
+      /**
+       * Count the client stalls of the operations done from now on in the given telemetry, and export them with
+       * the measurements, or stop counting them (null).
+       */
+	public void setJvmTelemetry(JvmTelemetry telemetry)
+	{
+		jvmtelemetry=telemetry;
+	}
+
+	public JvmTelemetry getJvmTelemetry()
+	{
+		return jvmtelemetry;
+	}
+
+      /**
+       * Return the metric with the given (full) name, or null if nothing was recorded for it.
+       */
+	public synchronized OneMeasurement getMeasurement(String name)
+	{
+		return data.get(name);
+	}
+
+      /**
+       * Return all the metrics recorded so far.
+       */
+	public Vector<OneMeasurement> getAll()
+	{
+		return new Vector<OneMeasurement>(data.values());
+	}
+
+      /**
+       * Return the number of successful DB operations and their total latency in microseconds, summed over the
+       * plain metrics of each operation (READ, UPDATE...) with the given prefix (e.g. a namespace). Their
+       * INTENDED- and -FAILED metrics, and those of workload operations made of several DB operations (e.g.
+       * READ-MODIFY-WRITE), would count the same operations again.
+       */
+	public synchronized long[] getTotals(String prefix)
+	{
+		long[] totals=new long[2];
+		for (String operation : RawCapture.OPERATIONS)
+		{
+			OneMeasurement m=data.get(prefix+operation);
+			if (m!=null)
+			{
+				totals[0]+=m.getOperations();
+				totals[1]+=m.getTotalLatency();
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * Return the metric with the given full name, creating it if this is its first measurement.
+	 */
+	OneMeasurement getOrCreate(String operation)
+	{
+		OneMeasurement m=data.get(operation);
+		if (m==null)
+		{
+			OneMeasurement created=constructOneMeasurement(operation);
+			m=data.putIfAbsent(operation,created);
+			if (m==null)
+			{
+				m=created;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Record a latency of the metric with the given full name.
+	 */
+	void record(String name, long latency)
+	{
+		if (striped)
+		{
+			recordOne(name,latency);
+		}
+		else
 		{
 			synchronized(this)
 			{
-				if (!data.containsKey(operation))
-				{
-					data.put(operation,constructOneMeasurement(operation));
-				}
+				recordOne(name,latency);
 			}
 		}
+	}
+
+	void recordOne(String name, long latency)
+	{
 		try
 		{
-			data.get(operation).measure(latency);
+			getOrCreate(name).measureNanos(latency);
 		}
 		catch (java.lang.ArrayIndexOutOfBoundsException e)
 		{
@@ -120,21 +541,70 @@ public class Measurements
 	}
 
       /**
-       * Report a return code for a single DB operaiton.
+       * Return the name to measure an operation with the given return code under: the operation itself if it
+       * succeeded (0), or e.g. "READ-FAILED" if it failed. Failures are often much faster (or slower) than
+       * successes, so they are kept out of the latencies of the successful operations.
        */
-	public void reportReturnCode(String operation, int code)
+	public static String outcome(String operation, int code)
+	{
+		return (code==0) ? operation : operation+FAILED;
+	}
+
+      /**
+       * Return the number of successful and failed operations so far, as counted by their return codes, over all
+       * the metrics whose names start with the given prefix (e.g. a namespace).
+       */
+	public long[] getOutcomes(String prefix)
 	{
-		if (!data.containsKey(operation))
+		long[] outcomes=new long[2];
+		for (OneMeasurement m : data.values())
 		{
-			synchronized(this)
+			if (m.getName().startsWith(prefix))
 			{
-				if (!data.containsKey(operation))
+				for (Map.Entry<Integer,Long> e : m.getReturnCodes().entrySet())
 				{
-					data.put(operation,constructOneMeasurement(operation));
+					outcomes[(e.getKey()==0) ? 0 : 1]+=e.getValue();
 				}
 			}
 		}
-		data.get(operation).reportReturnCode(code);
+		return outcomes;
+	}
+
+      /**
+       * Report a return code for a single DB operaiton.
+       */
+	public void reportReturnCode(String operation, int code)
+	{
+		String name=namespace.name(operation);
+		getOrCreate(name).reportReturnCode(code);
+		if (throughputgranularity>0)
+		{
+			countThroughput(name);
+		}
+	}
+
+	/**
+	 * Count one completed operation of the given metric in the interval of the run it completed in.
+	 */
+	void countThroughput(String name)
+	{
+		long now=System.nanoTime();
+		AtomicLong start=throughputstart;
+		if (start.get()==0)
+		{
+			start.compareAndSet(0,now);
+		}
+		ThroughputSeries series=throughput.get(name);
+		if (series==null)
+		{
+			ThroughputSeries created=new ThroughputSeries(name,throughputgranularity);
+			series=throughput.putIfAbsent(name,created);
+			if (series==null)
+			{
+				series=created;
+			}
+		}
+		series.count(Math.max(now-start.get(),0)/(throughputgranularity*1000000));
 	}
 	
   /**
@@ -145,9 +615,19 @@ public class Measurements
    */
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
+    JvmTelemetry telemetry = jvmtelemetry;
     for (OneMeasurement measurement : data.values())
     {
       measurement.exportMeasurements(exporter);
+      if (telemetry != null)
+      {
+        telemetry.exportPauses(measurement.getName(), exporter);
+      }
+      ThroughputSeries series = throughput.get(measurement.getName());
+      if (series != null)
+      {
+        series.exportMeasurements(exporter);
+      }
     }
   }
 	
@@ -0,0 +1,770 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.yahoo.ycsb.measurements.exporter.JSONMeasurementsExporter;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+/**
+ * Merges the measurements exported by several clients that ran side by side (e.g. the workers of a Coordinator,
+ * or client processes started by hand) into the measurements of one client, as read from the output of the
+ * TextMeasurementsExporter or the JSONMeasurementsExporter. Run it with the exports as arguments to merge them
+ * offline.
+ *
+ * Histograms are merged bucket by bucket, so the merged percentiles are exactly those of the combined
+ * latencies, at the resolution of the histogram. Clients that export their whole hdrhistogram (see
+ * OneMeasurementHdrHistogram.EXPORT_DISTRIBUTION) are merged the same way, into the percentiles of the combined
+ * distribution, exported in the unit that suits them. Operation, return code and hot key counts, client pause
+ * times and throughput series are summed, average latencies are weighted by the operation counts, minimums and maximums are taken
+ * over all clients. The overall run time is the longest one, and the overall throughputs are the total numbers
+ * of operations over it. Anything else (e.g. the intervals of a time series) is averaged.
+ *
+ * Each source is added to running totals as it is read, so the memory needed doesn't grow with the number of
+ * sources.
+ */
+public class MergedMeasurements
+{
+	static final String OVERALL="OVERALL";
+	static final String OPERATIONS="Operations";
+	static final String RUNTIME="RunTime(ms)";
+	static final String THROUGHPUT="Throughput(ops/sec)";
+	static final String DISTRIBUTION="Distribution(";
+
+	/**
+	 * The running totals of one measurement over the sources that had it.
+	 */
+	static class Value
+	{
+		double _sum;
+		int _n;
+
+		//the lowest non-negative value, and the highest value
+		double _min=-1;
+		double _max=-1;
+
+		//weighted by the operations of the metric in each source
+		double _weightedsum;
+		double _weight;
+
+		//the value times the overall run time of each source, e.g. the operations behind a throughput
+		double _overtime;
+
+		boolean _integral=true;
+
+		//for a distribution, the count at each value
+		TreeMap<Long,Long> _distribution;
+	}
+
+	/**
+	 * The totals of each measurement, by metric, in the order they first appeared.
+	 */
+	LinkedHashMap<String,LinkedHashMap<String,Value>> _values=new LinkedHashMap<String,LinkedHashMap<String,Value>>();
+
+	int _sources;
+	boolean _exportdistribution=true;
+
+	/**
+	 * Add the measurements of one client, in the format of the TextMeasurementsExporter. Lines that aren't
+	 * measurements are ignored.
+	 */
+	public void addSource(Reader in) throws IOException
+	{
+		add(readSource(in));
+	}
+
+	/**
+	 * Add the measurements of one client, in the format of the JSONMeasurementsExporter.
+	 */
+	public void addJSONSource(Reader in) throws IOException
+	{
+		add(readJSONSource(in));
+	}
+
+	/**
+	 * @return the raw values of an export in the format of the TextMeasurementsExporter, by metric and
+	 *         measurement
+	 */
+	static LinkedHashMap<String,LinkedHashMap<String,String>> readSource(Reader in) throws IOException
+	{
+		LinkedHashMap<String,LinkedHashMap<String,String>> source=new LinkedHashMap<String,LinkedHashMap<String,String>>();
+		BufferedReader reader=new BufferedReader(in);
+		String line;
+		while ((line=reader.readLine())!=null)
+		{
+			//[metric], measurement, value
+			int close=line.indexOf("], ");
+			int comma=line.lastIndexOf(", ");
+			if ( (!line.startsWith("[")) || (close<0) || (comma<=close) )
+			{
+				continue;
+			}
+			put(source,line.substring(1,close),line.substring(close+3,comma),line.substring(comma+2).trim());
+		}
+		return source;
+	}
+
+	/**
+	 * @return the raw values of an export in the format of the JSONMeasurementsExporter, by metric and
+	 *         measurement; distributions are in the form of the text exporter
+	 */
+	static LinkedHashMap<String,LinkedHashMap<String,String>> readJSONSource(Reader in) throws IOException
+	{
+		LinkedHashMap<String,LinkedHashMap<String,String>> source=new LinkedHashMap<String,LinkedHashMap<String,String>>();
+		JsonParser parser=new JsonFactory().createJsonParser(in);
+		JsonToken token;
+		while ((token=parser.nextToken())!=null)
+		{
+			if (token!=JsonToken.START_OBJECT)
+			{
+				continue;
+			}
+			String metric=null;
+			String measurement=null;
+			String value="";
+			ArrayList<String> values=new ArrayList<String>();
+			ArrayList<String> counts=new ArrayList<String>();
+			while (parser.nextToken()==JsonToken.FIELD_NAME)
+			{
+				String field=parser.getCurrentName();
+				token=parser.nextToken();
+				if (token==JsonToken.START_ARRAY)
+				{
+					ArrayList<String> array=field.equals("values") ? values : counts;
+					while (parser.nextToken()!=JsonToken.END_ARRAY)
+					{
+						array.add(parser.getText());
+					}
+				}
+				else if (field.equals("metric"))
+				{
+					metric=parser.getText();
+				}
+				else if (field.equals("measurement"))
+				{
+					measurement=parser.getText();
+				}
+				else if (field.equals("value"))
+				{
+					value=parser.getText();
+				}
+				else
+				{
+					parser.skipChildren();
+				}
+			}
+			if ( (metric==null) || (measurement==null) )
+			{
+				continue;
+			}
+			if (measurement.startsWith(DISTRIBUTION))
+			{
+				//in the form of the text exporter
+				StringBuilder sb=new StringBuilder();
+				for (int i=0; i<Math.min(values.size(),counts.size()); i++)
+				{
+					sb.append((i==0) ? "" : " ").append(values.get(i)).append(':').append(counts.get(i));
+				}
+				value=sb.toString();
+			}
+			put(source,metric,measurement,value);
+		}
+		parser.close();
+		return source;
+	}
+
+	static void put(LinkedHashMap<String,LinkedHashMap<String,String>> source, String metric, String measurement, String value)
+	{
+		LinkedHashMap<String,String> values=source.get(metric);
+		if (values==null)
+		{
+			values=new LinkedHashMap<String,String>();
+			source.put(metric,values);
+		}
+		values.put(measurement,value);
+	}
+
+	/**
+	 * Add the raw values of one source, by metric and measurement, to the running totals.
+	 */
+	void add(LinkedHashMap<String,LinkedHashMap<String,String>> source)
+	{
+		LinkedHashMap<String,String> overall=source.get(OVERALL);
+		double runtime=( (overall!=null) && overall.containsKey(RUNTIME) ) ? parse(overall.get(RUNTIME)) : Double.NaN;
+
+		for (Map.Entry<String,LinkedHashMap<String,String>> m : source.entrySet())
+		{
+			LinkedHashMap<String,Value> totals=_values.get(m.getKey());
+			if (totals==null)
+			{
+				totals=new LinkedHashMap<String,Value>();
+				_values.put(m.getKey(),totals);
+			}
+			String ops=m.getValue().get(OPERATIONS);
+			double weight=(ops==null) ? 0 : parse(ops);
+
+			for (Map.Entry<String,String> e : m.getValue().entrySet())
+			{
+				Value total=totals.get(e.getKey());
+				if (total==null)
+				{
+					total=new Value();
+					totals.put(e.getKey(),total);
+				}
+				String raw=e.getValue();
+				if (e.getKey().startsWith(DISTRIBUTION))
+				{
+					addDistribution(total,raw);
+					continue;
+				}
+
+				double v=parse(raw);
+				if ( (raw.indexOf('.')>=0) || (raw.indexOf('E')>=0) || Double.isNaN(v) )
+				{
+					total._integral=false;
+				}
+				if (!Double.isNaN(v))
+				{
+					total._sum+=v;
+					total._n++;
+				}
+				if ( (v>=0) && ( (total._min<0) || (v<total._min) ) )
+				{
+					total._min=v;
+				}
+				total._max=Math.max(total._max,v);
+				if (weight>0)
+				{
+					total._weightedsum+=v*weight;
+					total._weight+=weight;
+				}
+				if (!Double.isNaN(runtime))
+				{
+					total._overtime+=v*runtime/1000.0;
+				}
+			}
+		}
+		_sources++;
+	}
+
+	/**
+	 * Add a distribution in the form "value:count value:count ..." to a total.
+	 */
+	static void addDistribution(Value total, String raw)
+	{
+		if (total._distribution==null)
+		{
+			total._distribution=new TreeMap<Long,Long>();
+		}
+		for (String pair : raw.split(" "))
+		{
+			int colon=pair.indexOf(':');
+			if (colon<0)
+			{
+				continue;
+			}
+			long value=Long.parseLong(pair.substring(0,colon));
+			long count=Long.parseLong(pair.substring(colon+1));
+			Long before=total._distribution.get(value);
+			total._distribution.put(value,(before==null) ? count : before+count);
+		}
+	}
+
+	/**
+	 * @return the number of sources added so far
+	 */
+	public int getSources()
+	{
+		return _sources;
+	}
+
+	/**
+	 * Whether to export the merged distributions themselves, e.g. to merge the merged measurements again later.
+	 * They are by default.
+	 */
+	public void setExportDistribution(boolean exportdistribution)
+	{
+		_exportdistribution=exportdistribution;
+	}
+
+	/**
+	 * Export the merged measurements.
+	 */
+	public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		for (String metric : _values.keySet())
+		{
+			exportMetric(metric,exporter);
+		}
+	}
+
+	static boolean isBucket(String measurement)
+	{
+		String number=measurement.startsWith(">") ? measurement.substring(1) : measurement;
+		if (number.length()==0)
+		{
+			return false;
+		}
+		for (int i=0; i<number.length(); i++)
+		{
+			if (!Character.isDigit(number.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the percentile a measurement such as "95thPercentileLatency(ms)" is of, or -1 if it isn't one
+	 */
+	static double percentileOf(String measurement)
+	{
+		int th=measurement.indexOf("thPercentile");
+		if (th<=0)
+		{
+			return -1;
+		}
+		try
+		{
+			return Double.parseDouble(measurement.substring(0,th));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the nanoseconds in the unit a measurement such as "AverageLatency(us)" is in, or 0 if it isn't in
+	 *         one of OneMeasurementHdrHistogram.UNITS
+	 */
+	static long unitOf(String measurement)
+	{
+		for (int i=0; i<OneMeasurementHdrHistogram.UNITS.length; i++)
+		{
+			if (measurement.endsWith("("+OneMeasurementHdrHistogram.UNITS[i]+")"))
+			{
+				return OneMeasurementHdrHistogram.UNIT_NANOS[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return true if a measurement is one of the latencies an hdrhistogram exports, which are computed again
+	 *         from its distribution
+	 */
+	static boolean isLatency(String measurement)
+	{
+		return (unitOf(measurement)>0) && ( measurement.startsWith("AverageLatency(") || measurement.startsWith("MinLatency(")
+				|| measurement.startsWith("MaxLatency(") || (percentileOf(measurement)>=0) );
+	}
+
+	static double parse(String value)
+	{
+		try
+		{
+			return Double.parseDouble(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return Double.NaN;
+		}
+	}
+
+	void exportMetric(String metric, MeasurementsExporter exporter) throws IOException
+	{
+		LinkedHashMap<String,Value> values=_values.get(metric);
+
+		//a histogram has an overflow bucket, a time series has only intervals
+		int overflow=-1;
+		Vector<String> buckets=new Vector<String>();
+		String distribution=null;
+		for (String name : values.keySet())
+		{
+			if (isBucket(name))
+			{
+				if (name.startsWith(">"))
+				{
+					overflow=buckets.size();
+				}
+				buckets.add(name);
+			}
+			else if (name.startsWith(DISTRIBUTION))
+			{
+				distribution=name;
+			}
+		}
+		boolean histogram=(overflow>=0);
+
+		long[] counts=null;
+		if (histogram)
+		{
+			counts=new long[buckets.size()];
+			for (int i=0; i<counts.length; i++)
+			{
+				counts[i]=(long)values.get(buckets.get(i))._sum;
+			}
+		}
+		double operations=values.containsKey(OPERATIONS) ? values.get(OPERATIONS)._sum : 0;
+		boolean latencies=false;
+
+		for (Map.Entry<String,Value> e : values.entrySet())
+		{
+			String name=e.getKey();
+			Value total=e.getValue();
+			double value;
+			if (name.startsWith(DISTRIBUTION))
+			{
+				if (_exportdistribution)
+				{
+					exportDistribution(metric,name,total._distribution,exporter);
+				}
+				continue;
+			}
+			else if ( (distribution!=null) && isLatency(name) )
+			{
+				//all the latencies at once, where the first of them was
+				if (!latencies)
+				{
+					exportLatencies(metric,values,distribution,exporter);
+					latencies=true;
+				}
+				continue;
+			}
+			else if (metric.endsWith(Measurements.THROUGHPUT))
+			{
+				//the workers start together, so their intervals line up
+				value=total._sum;
+			}
+			else if (isBucket(name))
+			{
+				value=histogram ? total._sum : mean(total);
+			}
+			else if (metric.equals(OVERALL) && name.equals(RUNTIME))
+			{
+				value=total._max;
+			}
+			else if (metric.equals(OVERALL) && name.endsWith(THROUGHPUT))
+			{
+				//each client's throughput times its run time is the number of operations it did
+				double runtime=values.containsKey(RUNTIME) ? values.get(RUNTIME)._max : 0;
+				value=(runtime>0) ? 1000.0*Math.round(total._overtime)/runtime : 0.0;
+			}
+			else if (name.endsWith(OPERATIONS) || name.startsWith("Return=") || name.startsWith("Key=") || name.startsWith("ClientPause"))
+			{
+				value=total._sum;
+			}
+			else if (name.startsWith("Average"))
+			{
+				value=(total._weight>0) ? total._weightedsum/total._weight : mean(total);
+			}
+			else if (name.startsWith("Min"))
+			{
+				//ignoring the -1 a client reports when it measured nothing
+				value=total._min;
+			}
+			else if (name.startsWith("Max"))
+			{
+				value=total._max;
+			}
+			else if ( (percentileOf(name)>=0) && histogram )
+			{
+				//the first bucket that holds the percentile; if it is in the overflow bucket, there is none
+				int bucket=percentileBucket(counts,overflow,operations,percentileOf(name));
+				if (bucket<0)
+				{
+					continue;
+				}
+				exporter.write(metric,name,Integer.parseInt(buckets.get(bucket)));
+				continue;
+			}
+			else if (percentileOf(name)>=0)
+			{
+				//without a histogram, the worst client gives an upper bound
+				value=total._max;
+			}
+			else
+			{
+				value=mean(total);
+			}
+
+			if (total._integral)
+			{
+				exporter.write(metric,name,(long)value);
+			}
+			else
+			{
+				exporter.write(metric,name,value);
+			}
+		}
+	}
+
+	/**
+	 * Export the latencies of a metric from its merged distribution, as OneMeasurementHdrHistogram does: the
+	 * average, minimum and maximum, then the percentiles the sources exported, in the unit they exported them in
+	 * (or the one that suits the median, if they differ).
+	 */
+	void exportLatencies(String metric, LinkedHashMap<String,Value> values, String distribution, MeasurementsExporter exporter) throws IOException
+	{
+		TreeMap<Long,Long> merged=values.get(distribution)._distribution;
+		long scale=unitOf(distribution);
+		long total=0;
+		for (long count : merged.values())
+		{
+			total+=count;
+		}
+
+		//in nanoseconds
+		long min=-1;
+		long max=-1;
+		double weightedsum=0;
+		double weight=0;
+		ArrayList<Double> percentiles=new ArrayList<Double>();
+		long unit=-1;
+		for (Map.Entry<String,Value> e : values.entrySet())
+		{
+			String name=e.getKey();
+			Value v=e.getValue();
+			long nanos=unitOf(name);
+			if (!isLatency(name))
+			{
+				continue;
+			}
+			unit=(unit<0) || (unit==nanos) ? nanos : 0;
+			if (name.startsWith("MinLatency(") && (v._min>=0))
+			{
+				min=(min<0) ? Math.round(v._min*nanos) : Math.min(min,Math.round(v._min*nanos));
+			}
+			else if (name.startsWith("MaxLatency(") && (v._max>=0))
+			{
+				max=Math.max(max,Math.round(v._max*nanos));
+			}
+			else if (name.startsWith("AverageLatency("))
+			{
+				weightedsum+=v._weightedsum*nanos;
+				weight+=v._weight;
+			}
+			else if ( (percentileOf(name)>=0) && !percentiles.contains(percentileOf(name)) )
+			{
+				percentiles.add(percentileOf(name));
+			}
+		}
+		if (unit<=0)
+		{
+			unit=OneMeasurementHdrHistogram.UNIT_NANOS[OneMeasurementHdrHistogram.autoUnit(valueAtPercentile(merged,total,50,min,max,scale))];
+		}
+		String u=OneMeasurementHdrHistogram.UNITS[Arrays.binarySearch(OneMeasurementHdrHistogram.UNIT_NANOS,unit)];
+
+		exporter.write(metric,"AverageLatency("+u+")",(weight>0) ? weightedsum/weight/unit : 0.0);
+		exporter.write(metric,"MinLatency("+u+")",(min<0) ? -1 : min/(double)unit);
+		exporter.write(metric,"MaxLatency("+u+")",(max<0) ? -1 : max/(double)unit);
+		for (double p : percentiles)
+		{
+			exporter.write(metric,OneMeasurementHdrHistogram.percentileName(p,u),valueAtPercentile(merged,total,p,min,max,scale)/(double)unit);
+		}
+	}
+
+	static void exportDistribution(String metric, String name, TreeMap<Long,Long> distribution, MeasurementsExporter exporter) throws IOException
+	{
+		long[] values=new long[distribution.size()];
+		long[] counts=new long[distribution.size()];
+		int i=0;
+		for (Map.Entry<Long,Long> e : distribution.entrySet())
+		{
+			values[i]=e.getKey();
+			counts[i]=e.getValue();
+			i++;
+		}
+		exporter.write(metric,name,values,counts);
+	}
+
+	/**
+	 * @return the value (in ns) at a percentile of a distribution in the given unit, as HdrHistogram computes it,
+	 *         kept between the minimum and maximum if they are known
+	 */
+	static long valueAtPercentile(TreeMap<Long,Long> distribution, long total, double percentile, long min, long max, long scale)
+	{
+		if (total==0)
+		{
+			return 0;
+		}
+		long countatpercentile=HdrHistogram.countAtPercentile(percentile,total);
+		long count=0;
+		long value=0;
+		for (Map.Entry<Long,Long> e : distribution.entrySet())
+		{
+			count+=e.getValue();
+			value=e.getKey()*scale;
+			if (count>=countatpercentile)
+			{
+				break;
+			}
+		}
+		if (max>=0)
+		{
+			value=Math.min(value,max);
+		}
+		return Math.max(value,min);
+	}
+
+	/**
+	 * @return the index of the first bucket in which the given percentile of the operations is reached, not
+	 *         counting the overflow bucket, or -1 if there is none
+	 */
+	static int percentileBucket(long[] counts, int overflow, double operations, double percentile)
+	{
+		long opcounter=0;
+		for (int i=0; i<counts.length; i++)
+		{
+			if (i==overflow)
+			{
+				continue;
+			}
+			opcounter+=counts[i];
+			if (((double)opcounter)/operations>=percentile/100.0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static double mean(Value total)
+	{
+		return (total._n==0) ? Double.NaN : total._sum/total._n;
+	}
+
+	/**
+	 * @return the raw values of an export file, in either format, by metric and measurement
+	 */
+	static LinkedHashMap<String,LinkedHashMap<String,String>> readFile(File file) throws IOException
+	{
+		BufferedReader in=new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+		try
+		{
+			//the JSON exporter writes objects, the text one lines starting with [
+			in.mark(1024);
+			int c;
+			do
+			{
+				c=in.read();
+			}
+			while ( (c>=0) && Character.isWhitespace(c) );
+			in.reset();
+			return (c=='{') ? readJSONSource(in) : readSource(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	static void usageMessage()
+	{
+		System.out.println("Usage: java com.yahoo.ycsb.measurements.MergedMeasurements [options] export...");
+		System.out.println("Merges the measurements exported by several clients into one report. Each export");
+		System.out.println("is a file written by the text or JSON exporter, or a directory of them.");
+		System.out.println("Options:");
+		System.out.println("  -json: write the report in JSON rather than as text");
+		System.out.println("  -o file: write the report to the given file rather than to stdout");
+		System.out.println("  -nodistribution: leave the merged distributions out of the report");
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		boolean json=false;
+		String output=null;
+		MergedMeasurements merged=new MergedMeasurements();
+		ArrayList<File> files=new ArrayList<File>();
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-json"))
+			{
+				json=true;
+			}
+			else if (args[i].equals("-o") && (i+1<args.length))
+			{
+				output=args[++i];
+			}
+			else if (args[i].equals("-nodistribution"))
+			{
+				merged.setExportDistribution(false);
+			}
+			else if (args[i].startsWith("-"))
+			{
+				usageMessage();
+				System.exit(1);
+			}
+			else
+			{
+				File file=new File(args[i]);
+				File[] children=file.listFiles();
+				if (children!=null)
+				{
+					Arrays.sort(children);
+					files.addAll(Arrays.asList(children));
+				}
+				else
+				{
+					files.add(file);
+				}
+			}
+		}
+		if (files.isEmpty())
+		{
+			usageMessage();
+			System.exit(1);
+		}
+
+		for (File file : files)
+		{
+			merged.add(readFile(file));
+		}
+		System.err.println("Merged "+merged.getSources()+" exports");
+
+		OutputStream out=(output==null) ? System.out : new FileOutputStream(output);
+		MeasurementsExporter exporter=json ? new JSONMeasurementsExporter(out) : new TextMeasurementsExporter(out);
+		try
+		{
+			merged.exportMeasurements(exporter);
+		}
+		finally
+		{
+			exporter.close();
+		}
+	}
+}
@@ -18,6 +18,8 @@
 package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
@@ -45,6 +47,96 @@ public abstract class OneMeasurement {
 
 	public abstract String getSummary();
 
+	/**
+	 * Measure a latency given in nanoseconds. Measurements that are kept in microseconds round it down.
+	 */
+	public void measureNanos(long latency)
+	{
+		measure((int)(latency/1000));
+	}
+
+	/**
+	 * Return the number of counters the latencies of this measurement can be counted in elsewhere, one per
+	 * bucket of its distribution, so that StripedMeasurement can count them in atomic counters of its own and add
+	 * them to this measurement later. Measurements that can't be counted that way return 0.
+	 */
+	int counters()
+	{
+		return 0;
+	}
+
+	/**
+	 * Return the counter a latency in nanoseconds is counted in, from 0 to counters()-1. This only depends on the
+	 * configuration of the measurement, so any thread can call it at any time.
+	 */
+	int counterOf(long latency)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName()+" can't be counted elsewhere");
+	}
+
+	/**
+	 * Add latencies counted elsewhere in the given counter. The caller holds the lock of this measurement.
+	 */
+	void addCount(int counter, long count)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName()+" can't be counted elsewhere");
+	}
+
+	/**
+	 * Add the sum, minimum and maximum (in nanoseconds) of latencies counted elsewhere. The caller holds the lock
+	 * of this measurement.
+	 */
+	void addTotals(long sum, long min, long max)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName()+" can't be counted elsewhere");
+	}
+
+	/**
+	 * Return the latency at or below which the given percentage of the measurements fall, in microseconds.
+	 * Measurements that don't keep a distribution return -1.
+	 *
+	 * @param percentile the percentage, e.g. 99 for the 99th percentile
+	 */
+	public double getPercentile(double percentile)
+	{
+		return -1;
+	}
+
+	/**
+	 * Return the latency distribution measured so far, bucket by bucket in increasing order of latency: the
+	 * highest latency each bucket stands for in microseconds, and the number of measurements in it. The buckets
+	 * are the same from one call to the next, though the latency of the last one may grow. Measurements that
+	 * don't keep a distribution return null.
+	 */
+	public long[][] getDistribution()
+	{
+		return null;
+	}
+
+	/**
+	 * Return the number of times each return code was reported so far, by code.
+	 */
+	public Map<Integer,Long> getReturnCodes()
+	{
+		return new TreeMap<Integer,Long>();
+	}
+
+	/**
+	 * Return the number of measurements so far, or 0 if this measurement doesn't keep count.
+	 */
+	public long getOperations()
+	{
+		return 0;
+	}
+
+	/**
+	 * Return the sum of all latencies measured so far in microseconds, or 0 if this measurement doesn't keep it.
+	 */
+	public long getTotalLatency()
+	{
+		return 0;
+	}
+
   /**
    * Export the current measurements to a suitable format.
    * 
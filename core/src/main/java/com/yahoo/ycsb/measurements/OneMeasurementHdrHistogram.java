@@ -0,0 +1,273 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Take measurements and maintain a high dynamic range histogram of a given metric, such as READ LATENCY, with
+ * nanosecond resolution at the low end (see HdrHistogram). Exports the exact minimum and maximum latency and any
+ * list of percentiles, e.g. "99.9thPercentileLatency(us)", in a unit that suits the latencies measured: by
+ * default nanoseconds if the median is below 10 us, milliseconds if it is 10 s or more, and microseconds
+ * otherwise.
+ */
+public class OneMeasurementHdrHistogram extends OneMeasurement
+{
+	/**
+	 * The number of significant decimal digits latencies are kept with, from 1 to 5.
+	 */
+	public static final String SIGNIFICANT_DIGITS="hdrhistogram.significantdigits";
+
+	public static final String SIGNIFICANT_DIGITS_DEFAULT="3";
+
+	/**
+	 * The percentiles to export, separated by commas.
+	 */
+	public static final String PERCENTILES="hdrhistogram.percentiles";
+
+	public static final String PERCENTILES_DEFAULT="50,90,95,99,99.9,99.99";
+
+	/**
+	 * The highest latency kept track of, in microseconds. Higher latencies are counted as this one, but still
+	 * show as the maximum. The default is one hour.
+	 */
+	public static final String HIGHEST_LATENCY="hdrhistogram.highestlatency";
+
+	public static final String HIGHEST_LATENCY_DEFAULT="3600000000";
+
+	/**
+	 * The unit to export latencies in: ns, us, ms or auto (chosen by the median latency of each metric).
+	 */
+	public static final String LATENCY_UNIT="hdrhistogram.latencyunit";
+
+	public static final String LATENCY_UNIT_DEFAULT="auto";
+
+	/**
+	 * Whether to export the whole histogram too, as "Distribution(ns)", so that the measurements of several
+	 * clients can be merged into exact percentiles (see MergedMeasurements).
+	 */
+	public static final String EXPORT_DISTRIBUTION="hdrhistogram.exportdistribution";
+
+	public static final String EXPORT_DISTRIBUTION_DEFAULT="false";
+
+	static final String DISTRIBUTION="Distribution(ns)";
+
+	static final String[] UNITS={"ns","us","ms"};
+
+	static final long[] UNIT_NANOS={1,1000,1000000};
+
+	//in nanoseconds
+	HdrHistogram histogram;
+	double[] percentiles;
+	String unit;
+	boolean exportdistribution;
+
+	//keep a windowed version of these stats for printing status
+	long windowoperations;
+	long windowtotallatency;
+
+	ReturnCodes returncodes;
+
+	public OneMeasurementHdrHistogram(String name, Properties props)
+	{
+		super(name);
+		histogram=new HdrHistogram(Long.parseLong(props.getProperty(HIGHEST_LATENCY,HIGHEST_LATENCY_DEFAULT))*1000,
+				Integer.parseInt(props.getProperty(SIGNIFICANT_DIGITS,SIGNIFICANT_DIGITS_DEFAULT)));
+		percentiles=parsePercentiles(props.getProperty(PERCENTILES,PERCENTILES_DEFAULT));
+		unit=props.getProperty(LATENCY_UNIT,LATENCY_UNIT_DEFAULT);
+		exportdistribution=Boolean.parseBoolean(props.getProperty(EXPORT_DISTRIBUTION,EXPORT_DISTRIBUTION_DEFAULT));
+		returncodes=new ReturnCodes();
+	}
+
+	static double[] parsePercentiles(String list)
+	{
+		String[] s=list.split(",");
+		double[] p=new double[s.length];
+		for (int i=0; i<s.length; i++)
+		{
+			p[i]=Double.parseDouble(s[i].trim());
+		}
+		return p;
+	}
+
+	/**
+	 * @return the name a percentile is exported under, e.g. "99.9thPercentileLatency(us)"
+	 */
+	static String percentileName(double percentile)
+	{
+		return percentileName(percentile,"us");
+	}
+
+	static String percentileName(double percentile, String unit)
+	{
+		return new DecimalFormat("#.####").format(percentile)+"thPercentileLatency("+unit+")";
+	}
+
+	/**
+	 * @return the index in UNITS of the unit to export latencies with the given median (in ns) in
+	 */
+	int exportUnit(long median)
+	{
+		for (int i=0; i<UNITS.length; i++)
+		{
+			if (UNITS[i].equals(unit))
+			{
+				return i;
+			}
+		}
+		return autoUnit(median);
+	}
+
+	/**
+	 * @return the index in UNITS of the unit that suits latencies with the given median (in ns)
+	 */
+	static int autoUnit(long median)
+	{
+		if (median<10000L)
+		{
+			return 0;
+		}
+		return (median<10000000000L) ? 1 : 2;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.yahoo.ycsb.OneMeasurement#reportReturnCode(int)
+	 */
+	public void reportReturnCode(int code)
+	{
+		returncodes.report(code);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.yahoo.ycsb.OneMeasurement#measure(int)
+	 */
+	public void measure(int latency)
+	{
+		measureNanos(latency*1000L);
+	}
+
+	@Override
+	public synchronized void measureNanos(long latency)
+	{
+		histogram.recordValue(latency);
+		windowoperations++;
+		windowtotallatency+=latency;
+	}
+
+	/**
+	 * One counter per index of the histogram.
+	 */
+	@Override
+	int counters()
+	{
+		return histogram._counts.length;
+	}
+
+	@Override
+	int counterOf(long latency)
+	{
+		return histogram.indexOf(latency);
+	}
+
+	@Override
+	void addCount(int counter, long count)
+	{
+		histogram.addCount(counter,count);
+	}
+
+	@Override
+	void addTotals(long sum, long min, long max)
+	{
+		histogram.addTotals(sum,min,max);
+	}
+
+	@Override
+	public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		int u=exportUnit(histogram.getValueAtPercentile(50));
+		long nanos=UNIT_NANOS[u];
+		exporter.write(getName(), "Operations", histogram.getTotalCount());
+		exporter.write(getName(), "AverageLatency("+UNITS[u]+")", histogram.getMean()/nanos);
+		exporter.write(getName(), "MinLatency("+UNITS[u]+")", (histogram.getTotalCount()==0) ? -1 : histogram.getMin()/(double)nanos);
+		exporter.write(getName(), "MaxLatency("+UNITS[u]+")", (histogram.getTotalCount()==0) ? -1 : histogram.getMax()/(double)nanos);
+
+		for (double p : percentiles)
+		{
+			exporter.write(getName(), percentileName(p,UNITS[u]), histogram.getValueAtPercentile(p)/(double)nanos);
+		}
+
+		returncodes.export(getName(), exporter);
+
+		if (exportdistribution)
+		{
+			long[][] distribution=histogram.getDistribution();
+			exporter.write(getName(), DISTRIBUTION, distribution[0], distribution[1]);
+		}
+	}
+
+	@Override
+	public Map<Integer,Long> getReturnCodes()
+	{
+		return returncodes.getCounts();
+	}
+
+	@Override
+	public synchronized long getOperations()
+	{
+		return histogram.getTotalCount();
+	}
+
+	@Override
+	public synchronized long getTotalLatency()
+	{
+		return histogram.getSum()/1000;
+	}
+
+	@Override
+	public synchronized double getPercentile(double percentile)
+	{
+		return histogram.getValueAtPercentile(percentile)/1000.0;
+	}
+
+	/**
+	 * The distribution is in microseconds like that of the other measurements, so the latencies below 1 us
+	 * all fall in the first bucket.
+	 */
+	@Override
+	public synchronized long[][] getDistribution()
+	{
+		return histogram.getDistribution(1000);
+	}
+
+	@Override
+	public synchronized String getSummary()
+	{
+		if (windowoperations==0)
+		{
+			return "";
+		}
+		DecimalFormat d = new DecimalFormat("#.##");
+		double report=((double)windowtotallatency)/((double)windowoperations)/1000.0;
+		windowtotallatency=0;
+		windowoperations=0;
+		return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
+	}
+}
@@ -19,7 +19,7 @@ package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
@@ -37,24 +37,24 @@ public class OneMeasurementHistogram extends OneMeasurement
 	public static final String BUCKETS_DEFAULT="1000";
 
 	int _buckets;
-	int[] histogram;
-	int histogramoverflow;
-	int operations;
+	long[] histogram;
+	long histogramoverflow;
+	long operations;
 	long totallatency;
 	
 	//keep a windowed version of these stats for printing status
-	int windowoperations;
+	long windowoperations;
 	long windowtotallatency;
 	
 	int min;
 	int max;
-	HashMap<Integer,int[]> returncodes;
+	ReturnCodes returncodes;
 
 	public OneMeasurementHistogram(String name, Properties props)
 	{
 		super(name);
 		_buckets=Integer.parseInt(props.getProperty(BUCKETS, BUCKETS_DEFAULT));
-		histogram=new int[_buckets];
+		histogram=new long[_buckets];
 		histogramoverflow=0;
 		operations=0;
 		totallatency=0;
@@ -62,22 +62,15 @@ public class OneMeasurementHistogram extends OneMeasurement
 		windowtotallatency=0;
 		min=-1;
 		max=-1;
-		returncodes=new HashMap<Integer,int[]>();
+		returncodes=new ReturnCodes();
 	}
 
 	/* (non-Javadoc)
 	 * @see com.yahoo.ycsb.OneMeasurement#reportReturnCode(int)
 	 */
-	public synchronized void reportReturnCode(int code)
+	public void reportReturnCode(int code)
 	{
-		Integer Icode=code;
-		if (!returncodes.containsKey(Icode))
-		{
-			int[] val=new int[1];
-			val[0]=0;
-			returncodes.put(Icode,val);
-		}
-		returncodes.get(Icode)[0]++;
+		returncodes.report(code);
 	}
 
 
@@ -110,6 +103,50 @@ public class OneMeasurementHistogram extends OneMeasurement
 		}
 	}
 
+	/**
+	 * One counter per bucket, and the last one for the overflow.
+	 */
+	@Override
+	int counters()
+	{
+		return _buckets+1;
+	}
+
+	@Override
+	int counterOf(long latency)
+	{
+		long bucket=Math.max(latency,0)/1000000;
+		return (bucket>=_buckets) ? _buckets : (int)bucket;
+	}
+
+	@Override
+	void addCount(int counter, long count)
+	{
+		if (counter==_buckets)
+		{
+			histogramoverflow+=count;
+		}
+		else
+		{
+			histogram[counter]+=count;
+		}
+		operations+=count;
+	}
+
+	@Override
+	void addTotals(long sum, long min, long max)
+	{
+		totallatency+=sum/1000;
+		if ( (this.min<0) || (min/1000<this.min) )
+		{
+			this.min=(int)(min/1000);
+		}
+		if (max/1000>this.max)
+		{
+			this.max=(int)(max/1000);
+		}
+	}
+
 
   @Override
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException
@@ -119,7 +156,7 @@ public class OneMeasurementHistogram extends OneMeasurement
     exporter.write(getName(), "MinLatency(us)", min);
     exporter.write(getName(), "MaxLatency(us)", max);
     
-    int opcounter=0;
+    long opcounter=0;
     boolean done95th=false;
     for (int i=0; i<_buckets; i++)
     {
@@ -136,11 +173,7 @@ public class OneMeasurementHistogram extends OneMeasurement
       }
     }
 
-    for (Integer I : returncodes.keySet())
-    {
-      int[] val=returncodes.get(I);
-      exporter.write(getName(), "Return="+I, val[0]);
-    }     
+    returncodes.export(getName(), exporter);
 
     for (int i=0; i<_buckets; i++)
     {
@@ -149,6 +182,64 @@ public class OneMeasurementHistogram extends OneMeasurement
     exporter.write(getName(), ">"+_buckets, histogramoverflow);
   }
 
+	@Override
+	public Map<Integer,Long> getReturnCodes()
+	{
+		return returncodes.getCounts();
+	}
+
+	@Override
+	public synchronized long getOperations()
+	{
+		return operations;
+	}
+
+	@Override
+	public synchronized long getTotalLatency()
+	{
+		return totallatency;
+	}
+
+	/**
+	 * The buckets stand for their upper bound, except for the overflow bucket, which stands for the maximum.
+	 */
+	@Override
+	public synchronized long[][] getDistribution()
+	{
+		long[][] distribution=new long[2][_buckets+1];
+		for (int i=0; i<_buckets; i++)
+		{
+			distribution[0][i]=(i+1)*1000L-1;
+			distribution[1][i]=histogram[i];
+		}
+		distribution[0][_buckets]=Math.max(max,_buckets*1000L);
+		distribution[1][_buckets]=histogramoverflow;
+		return distribution;
+	}
+
+	/**
+	 * The percentile is the upper bound of the bucket it falls into, i.e. it is rounded up to the next millisecond.
+	 * If it falls into the overflow bucket, it is the maximum latency measured.
+	 */
+	@Override
+	public synchronized double getPercentile(double percentile)
+	{
+		if (operations==0)
+		{
+			return 0;
+		}
+		long opcounter=0;
+		for (int i=0; i<_buckets; i++)
+		{
+			opcounter+=histogram[i];
+			if (((double)opcounter)/((double)operations)*100.0>=percentile)
+			{
+				return Math.min((i+1)*1000,max);
+			}
+		}
+		return max;
+	}
+
 	@Override
 	public String getSummary() {
 		if (windowoperations==0)
@@ -17,108 +17,220 @@
 
 package com.yahoo.ycsb.measurements;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Vector;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
-class SeriesUnit
-{
-	/**
-	 * @param time
-	 * @param average
-	 */
-	public SeriesUnit(long time, double average) {
-		this.time = time;
-		this.average = average;
-	}
-	public long time;
-	public double average; 
-}
-
 /**
- * A time series measurement of a metric, such as READ LATENCY.
+ * A time series measurement of a metric, such as READ LATENCY. Each unit of the series holds the number of
+ * operations, their average latency and a few percentiles of it, e.g. "1000-99thPercentileLatency(us)".
+ *
+ * The units are kept in a ring preallocated for "timeseries.maxunits" of them, so that memory use stays the
+ * same however long the run is. When the ring is full, the oldest unit is moved to a spill file on disk (or
+ * dropped, with "timeseries.spill=false") to make room.
  */
-public class OneMeasurementTimeSeries extends OneMeasurement 
+public class OneMeasurementTimeSeries extends OneMeasurement
 {
 	/**
 	 * Granularity for time series; measurements will be averaged in chunks of this granularity. Units are milliseconds.
 	 */
 	public static final String GRANULARITY="timeseries.granularity";
-	
+
 	public static final String GRANULARITY_DEFAULT="1000";
-	
+
+	/**
+	 * The percentiles kept for each unit, separated by commas.
+	 */
+	public static final String PERCENTILES="timeseries.percentiles";
+
+	public static final String PERCENTILES_DEFAULT="50,99,99.9";
+
+	/**
+	 * The number of units kept in memory.
+	 */
+	public static final String MAX_UNITS="timeseries.maxunits";
+
+	public static final String MAX_UNITS_DEFAULT="10000";
+
+	/**
+	 * Whether the units that don't fit in memory any more are kept in a temporary file until they are exported
+	 * ("true") or dropped ("false").
+	 */
+	public static final String SPILL="timeseries.spill";
+
+	public static final String SPILL_DEFAULT="true";
+
 	int _granularity;
-	Vector<SeriesUnit> _measurements;
-	
+	double[] _percentiles;
+
+	//the ring of units, oldest first from _first
+	long[] _times;
+	long[] _counts;
+	double[] _averages;
+	long[][] _unitpercentiles;
+	int _first=0;
+	int _units=0;
+
+	boolean _spill;
+	File _spillfile;
+	DataOutputStream _spillout;
+	long _spilledunits=0;
+	long _droppedunits=0;
+
+	//the latencies of the current unit and of the whole run
+	HdrHistogram _unithistogram;
+	HdrHistogram _histogram;
+
 	long start=-1;
 	long currentunit=-1;
-	int count=0;
-	int sum=0;
-	int operations=0;
+	long count=0;
+	long sum=0;
+	long operations=0;
 	long totallatency=0;
-	
+
 	//keep a windowed version of these stats for printing status
-	int windowoperations=0;
+	long windowoperations=0;
 	long windowtotallatency=0;
-	
+
 	int min=-1;
 	int max=-1;
 
-	private HashMap<Integer, int[]> returncodes;
-	
+	private ReturnCodes returncodes;
+
 	public OneMeasurementTimeSeries(String name, Properties props)
 	{
 		super(name);
 		_granularity=Integer.parseInt(props.getProperty(GRANULARITY,GRANULARITY_DEFAULT));
-		_measurements=new Vector<SeriesUnit>();
-		returncodes=new HashMap<Integer,int[]>();
+		_percentiles=OneMeasurementHdrHistogram.parsePercentiles(props.getProperty(PERCENTILES,PERCENTILES_DEFAULT));
+		_spill=Boolean.parseBoolean(props.getProperty(SPILL,SPILL_DEFAULT));
+
+		int maxunits=Math.max(Integer.parseInt(props.getProperty(MAX_UNITS,MAX_UNITS_DEFAULT)),1);
+		_times=new long[maxunits];
+		_counts=new long[maxunits];
+		_averages=new double[maxunits];
+		_unitpercentiles=new long[maxunits][_percentiles.length];
+
+		_unithistogram=new HdrHistogram(Long.parseLong(props.getProperty(OneMeasurementHdrHistogram.HIGHEST_LATENCY,OneMeasurementHdrHistogram.HIGHEST_LATENCY_DEFAULT)),
+				Integer.parseInt(props.getProperty(OneMeasurementHdrHistogram.SIGNIFICANT_DIGITS,OneMeasurementHdrHistogram.SIGNIFICANT_DIGITS_DEFAULT)));
+		_histogram=new HdrHistogram(_unithistogram);
+		returncodes=new ReturnCodes();
 	}
-	
+
 	void checkEndOfUnit(boolean forceend)
 	{
 		long now=System.currentTimeMillis();
-		
+
 		if (start<0)
 		{
 			currentunit=0;
 			start=now;
 		}
-		
+
 		long unit=((now-start)/_granularity)*_granularity;
-		
+
 		if ( (unit>currentunit) || (forceend) )
 		{
-			double avg=((double)sum)/((double)count);
-			_measurements.add(new SeriesUnit(currentunit,avg));
-			
+			if (count>0)
+			{
+				addUnit();
+			}
+
 			currentunit=unit;
-			
+
 			count=0;
 			sum=0;
+			_unithistogram.reset();
+		}
+	}
+
+	/**
+	 * Add the current unit to the ring, making room for it if the ring is full.
+	 */
+	void addUnit()
+	{
+		if (_units==_times.length)
+		{
+			if (_spill)
+			{
+				spill(_first);
+			}
+			else
+			{
+				_droppedunits++;
+			}
+			_first=(_first+1)%_times.length;
+			_units--;
+		}
+		int i=(_first+_units)%_times.length;
+		_times[i]=currentunit;
+		_counts[i]=count;
+		_averages[i]=((double)sum)/((double)count);
+		for (int p=0; p<_percentiles.length; p++)
+		{
+			_unitpercentiles[i][p]=_unithistogram.getValueAtPercentile(_percentiles[p]);
+		}
+		_units++;
+	}
+
+	/**
+	 * Write the unit at the given index of the ring to the spill file. If that fails, the unit is dropped.
+	 */
+	void spill(int i)
+	{
+		try
+		{
+			if (_spillout==null)
+			{
+				_spillfile=File.createTempFile("ycsb-timeseries-",".spill");
+				_spillfile.deleteOnExit();
+				_spillout=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_spillfile)));
+			}
+			_spillout.writeLong(_times[i]);
+			_spillout.writeLong(_counts[i]);
+			_spillout.writeDouble(_averages[i]);
+			for (int p=0; p<_percentiles.length; p++)
+			{
+				_spillout.writeLong(_unitpercentiles[i][p]);
+			}
+			_spilledunits++;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not spill the time series of "+getName()+" to disk, dropping its oldest units: "+e.getMessage());
+			_spill=false;
+			_droppedunits++;
 		}
 	}
-	
+
 	@Override
-	public void measure(int latency) 
+	public void measure(int latency)
 	{
 		checkEndOfUnit(false);
-		
+
 		count++;
 		sum+=latency;
 		totallatency+=latency;
 		operations++;
 		windowoperations++;
 		windowtotallatency+=latency;
-		
+		_unithistogram.recordValue(latency);
+		_histogram.recordValue(latency);
+
 		if (latency>max)
 		{
 			max=latency;
 		}
-		
+
 		if ( (latency<min) || (min<0) )
 		{
 			min=latency;
@@ -135,32 +247,97 @@ public class OneMeasurementTimeSeries extends OneMeasurement
     exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
     exporter.write(getName(), "MinLatency(us)", min);
     exporter.write(getName(), "MaxLatency(us)", max);
+    exporter.write(getName(), "95thPercentileLatency(us)", _histogram.getValueAtPercentile(95));
+    exporter.write(getName(), "99thPercentileLatency(us)", _histogram.getValueAtPercentile(99));
+
+    returncodes.export(getName(), exporter);
+
+    if (_droppedunits>0)
+    {
+      exporter.write(getName(), "DroppedUnits", _droppedunits);
+    }
 
-    //TODO: 95th and 99th percentile latency
+    if (_spillout!=null)
+    {
+      _spillout.flush();
+      DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(_spillfile)));
+      try
+      {
+        long[] percentiles=new long[_percentiles.length];
+        for (long u=0; u<_spilledunits; u++)
+        {
+          long time=in.readLong();
+          long unitcount=in.readLong();
+          double average=in.readDouble();
+          for (int p=0; p<percentiles.length; p++)
+          {
+            percentiles[p]=in.readLong();
+          }
+          exportUnit(exporter, time, unitcount, average, percentiles);
+        }
+      }
+      finally
+      {
+        in.close();
+      }
+    }
 
-    for (Integer I : returncodes.keySet())
+    for (int u=0; u<_units; u++)
     {
-      int[] val=returncodes.get(I);
-      exporter.write(getName(), "Return="+I, val[0]);
-    }     
+      int i=(_first+u)%_times.length;
+      exportUnit(exporter, _times[i], _counts[i], _averages[i], _unitpercentiles[i]);
+    }
+  }
 
-    for (SeriesUnit unit : _measurements)
+  void exportUnit(MeasurementsExporter exporter, long time, long unitcount, double average, long[] percentiles) throws IOException
+  {
+    exporter.write(getName(), Long.toString(time), average);
+    exporter.write(getName(), time+"-Operations", unitcount);
+    for (int p=0; p<_percentiles.length; p++)
     {
-      exporter.write(getName(), Long.toString(unit.time), unit.average);
+      exporter.write(getName(), time+"-"+OneMeasurementHdrHistogram.percentileName(_percentiles[p]), percentiles[p]);
     }
   }
-	
+
 	@Override
-	public void reportReturnCode(int code) {
-		Integer Icode=code;
-		if (!returncodes.containsKey(Icode))
-		{
-			int[] val=new int[1];
-			val[0]=0;
-			returncodes.put(Icode,val);
-		}
-		returncodes.get(Icode)[0]++;
+	public long getOperations()
+	{
+		return operations;
+	}
+
+	@Override
+	public long getTotalLatency()
+	{
+		return totallatency;
+	}
+
+	@Override
+	public double getPercentile(double percentile)
+	{
+		return _histogram.getValueAtPercentile(percentile);
+	}
 
+	/**
+	 * The distribution of the whole run, e.g. for the histogram log.
+	 */
+	@Override
+	public long[][] getDistribution()
+	{
+		return _histogram.getDistribution();
+	}
+
+	@Override
+	public Map<Integer,Long> getReturnCodes()
+	{
+		return returncodes.getCounts();
+	}
+
+	/**
+	 * Unlike the latencies, the return codes aren't recorded under the lock of Measurements.
+	 */
+	@Override
+	public void reportReturnCode(int code) {
+		returncodes.report(code);
 	}
 
 	@Override
@@ -0,0 +1,339 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Captures every single operation (when it started, what it was, the key it was on, its latency and return
+ * code) to a file, e.g. to correlate the run with the logs of the DB. Read it with RawCaptureReader.
+ *
+ * Each DB wrapper writes its operations as fixed-width records into a ring of its own, without any locking.
+ * A background thread drains the rings into the file every "rawcapture.flushinterval" ms. If it falls behind
+ * and a ring is full, the operation isn't captured, but counted as dropped.
+ *
+ * The file is gzipped. It starts with a header (the version, the time the capture started at as epoch ms, and
+ * the names of the operations), followed by one record per operation: the operation (1 byte), the start time
+ * in ns since the capture started, the key id, the latency in ns and the return code. Later phases of a
+ * multi-phase run append a header and records of their own.
+ */
+public class RawCapture extends Thread
+{
+	/**
+	 * The file to capture the operations to. There is no capture unless this is set.
+	 */
+	public static final String FILE_PROPERTY="rawcapture.file";
+
+	/**
+	 * The number of operations the ring of each client thread holds.
+	 */
+	public static final String BUFFER_SIZE_PROPERTY="rawcapture.buffersize";
+
+	public static final String BUFFER_SIZE_PROPERTY_DEFAULT="8192";
+
+	/**
+	 * How often the rings are drained into the file, in milliseconds.
+	 */
+	public static final String FLUSH_INTERVAL_PROPERTY="rawcapture.flushinterval";
+
+	public static final String FLUSH_INTERVAL_PROPERTY_DEFAULT="50";
+
+	public static final int READ=0;
+	public static final int SCAN=1;
+	public static final int UPDATE=2;
+	public static final int INSERT=3;
+	public static final int DELETE=4;
+	public static final int START=5;
+	public static final int COMMIT=6;
+	public static final int ABORT=7;
+
+	/**
+	 * The names of the operations, by their number.
+	 */
+	public static final String[] OPERATIONS={"READ","SCAN","UPDATE","INSERT","DELETE","START","COMMIT","ABORT"};
+
+	static final byte HEADER=-1;
+
+	static final int VERSION=1;
+
+	//the longs of each record: start time, key id, latency, operation and return code
+	static final int RECORD_LONGS=4;
+
+	/**
+	 * The operations of one client thread that were not written yet. Only that thread adds to it, and only the
+	 * capture thread takes from it.
+	 */
+	public static class Ring
+	{
+		final long[] _records;
+		final int _mask;
+
+		//the next record to add, and the next one to take
+		final AtomicLong _head=new AtomicLong();
+		final AtomicLong _tail=new AtomicLong();
+
+		volatile long _dropped;
+
+		Ring(int size)
+		{
+			int capacity=1;
+			while (capacity<size)
+			{
+				capacity<<=1;
+			}
+			_records=new long[capacity*RECORD_LONGS];
+			_mask=capacity-1;
+		}
+	}
+
+	ConcurrentLinkedQueue<Ring> _rings=new ConcurrentLinkedQueue<Ring>();
+	int _buffersize;
+	long _flushinterval;
+
+	DataOutputStream _out;
+	long _basetime;
+	long _records;
+	volatile boolean _done;
+
+	/**
+	 * @return true if the properties ask for a capture
+	 */
+	public static boolean isEnabled(Properties props)
+	{
+		return props.getProperty(FILE_PROPERTY)!=null;
+	}
+
+	/**
+	 * Open the capture file. Nothing is captured until the thread is started.
+	 *
+	 * @param append add to the capture of an earlier phase of this run rather than starting a new one
+	 */
+	public RawCapture(Properties props, boolean append) throws IOException
+	{
+		setDaemon(true);
+		_buffersize=Integer.parseInt(props.getProperty(BUFFER_SIZE_PROPERTY,BUFFER_SIZE_PROPERTY_DEFAULT));
+		_flushinterval=Long.parseLong(props.getProperty(FLUSH_INTERVAL_PROPERTY,FLUSH_INTERVAL_PROPERTY_DEFAULT));
+
+		File file=new File(props.getProperty(FILE_PROPERTY));
+		//compress fast, so the capture keeps up
+		GZIPOutputStream gzip=new GZIPOutputStream(new FileOutputStream(file,append),65536)
+		{
+			{
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		};
+		_out=new DataOutputStream(new BufferedOutputStream(gzip,65536));
+		_basetime=System.nanoTime();
+		_out.writeByte(HEADER);
+		_out.writeInt(VERSION);
+		_out.writeLong(System.currentTimeMillis());
+		_out.writeInt(OPERATIONS.length);
+		for (String operation : OPERATIONS)
+		{
+			_out.writeUTF(operation);
+		}
+	}
+
+	/**
+	 * Create the ring of a client thread.
+	 */
+	public Ring newRing()
+	{
+		Ring ring=new Ring(_buffersize);
+		_rings.add(ring);
+		return ring;
+	}
+
+	/**
+	 * Capture one operation into the ring of the calling thread, or count it as dropped if the ring is full.
+	 *
+	 * @param key the key the operation was on, or null
+	 * @param starttime the System.nanoTime() the operation started at
+	 */
+	public void record(Ring ring, int operation, String key, long starttime, long endtime, int returncode)
+	{
+		long head=ring._head.get();
+		if (head-ring._tail.get()>ring._mask)
+		{
+			ring._dropped++;
+			return;
+		}
+		int i=((int)head&ring._mask)*RECORD_LONGS;
+		ring._records[i]=starttime-_basetime;
+		ring._records[i+1]=keyId(key);
+		ring._records[i+2]=endtime-starttime;
+		ring._records[i+3]=(((long)operation)<<32)|(returncode&0xFFFFFFFFL);
+		ring._head.lazySet(head+1);
+	}
+
+	/**
+	 * @return the number the key ends with, e.g. 1234 for "user1234", or -1 if it doesn't end with one
+	 */
+	static long keyId(String key)
+	{
+		if (key==null)
+		{
+			return -1;
+		}
+		int end=key.length();
+		int start=end;
+		//at most 18 digits fit in a long
+		while ( (start>0) && (end-start<18) && Character.isDigit(key.charAt(start-1)) )
+		{
+			start--;
+		}
+		if (start==end)
+		{
+			return -1;
+		}
+		long id=0;
+		for (int i=start; i<end; i++)
+		{
+			id=id*10+(key.charAt(i)-'0');
+		}
+		return id;
+	}
+
+	/**
+	 * Drain the rings every so often, until finish() is called.
+	 */
+	public void run()
+	{
+		while (!_done)
+		{
+			try
+			{
+				sleep(_flushinterval);
+			}
+			catch (InterruptedException e)
+			{
+				continue;
+			}
+			if (!drain())
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Write the records in all rings to the file.
+	 *
+	 * @return false if the file could not be written, in which case the capture stops
+	 */
+	synchronized boolean drain()
+	{
+		if (_out==null)
+		{
+			return false;
+		}
+		try
+		{
+			for (Ring ring : _rings)
+			{
+				long tail=ring._tail.get();
+				long head=ring._head.get();
+				for (long r=tail; r<head; r++)
+				{
+					int i=((int)r&ring._mask)*RECORD_LONGS;
+					long opcode=ring._records[i+3];
+					_out.writeByte((int)(opcode>>>32));
+					_out.writeLong(ring._records[i]);
+					_out.writeLong(ring._records[i+1]);
+					_out.writeLong(ring._records[i+2]);
+					_out.writeInt((int)opcode);
+				}
+				_records+=head-tail;
+				ring._tail.lazySet(head);
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write the raw capture, stopping it: "+e.getMessage());
+			try
+			{
+				_out.close();
+			}
+			catch (IOException e2)
+			{
+			}
+			_out=null;
+			return false;
+		}
+	}
+
+	/**
+	 * Write what is left in the rings and close the file. Call this once the operations are done.
+	 */
+	public void finish()
+	{
+		_done=true;
+		interrupt();
+		try
+		{
+			join();
+		}
+		catch (InterruptedException e)
+		{
+		}
+		if (drain())
+		{
+			try
+			{
+				_out.close();
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not close the raw capture: "+e.getMessage());
+			}
+		}
+		if (getDropped()>0)
+		{
+			System.err.println("The raw capture dropped "+getDropped()+" operations, as it couldn't write them fast enough");
+		}
+	}
+
+	/**
+	 * @return the number of operations written to the file so far
+	 */
+	public synchronized long getRecords()
+	{
+		return _records;
+	}
+
+	/**
+	 * @return the number of operations that were not captured because a ring was full
+	 */
+	public long getDropped()
+	{
+		long dropped=0;
+		for (Ring ring : _rings)
+		{
+			dropped+=ring._dropped;
+		}
+		return dropped;
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the file written by RawCapture, and converts it to CSV: one line per operation, with the time it
+ * started at (in us since the epoch), the operation, the key id, the latency in ns and the return code.
+ *
+ * The operations of different client threads are written in batches, so they are not quite in the order of
+ * their start time; sort the CSV if that matters.
+ */
+public class RawCaptureReader
+{
+	/**
+	 * One captured operation.
+	 */
+	public static class Record
+	{
+		/**
+		 * The time the operation started at, in us since the epoch.
+		 */
+		public long _timestamp;
+		public String _operation;
+		public long _keyid;
+		public long _latency;
+		public int _returncode;
+	}
+
+	DataInputStream _in;
+	long _starttime;
+	String[] _operations;
+
+	/**
+	 * @throws IOException if the stream isn't a raw capture
+	 */
+	public RawCaptureReader(InputStream in) throws IOException
+	{
+		_in=new DataInputStream(new GZIPInputStream(new BufferedInputStream(in),65536));
+		if (_in.readByte()!=RawCapture.HEADER)
+		{
+			throw new IOException("Not a raw capture");
+		}
+		readHeader();
+	}
+
+	void readHeader() throws IOException
+	{
+		int version=_in.readInt();
+		if (version!=RawCapture.VERSION)
+		{
+			throw new IOException("Unknown raw capture version "+version);
+		}
+		_starttime=_in.readLong();
+		_operations=new String[_in.readInt()];
+		for (int i=0; i<_operations.length; i++)
+		{
+			_operations[i]=_in.readUTF();
+		}
+	}
+
+	/**
+	 * @return the next operation, or null at the end of the capture (or at an operation cut short)
+	 */
+	public Record next() throws IOException
+	{
+		try
+		{
+			int operation=_in.readByte();
+			//a later phase of the run
+			while (operation==RawCapture.HEADER)
+			{
+				readHeader();
+				operation=_in.readByte();
+			}
+			if ( (operation<0) || (operation>=_operations.length) )
+			{
+				throw new IOException("Corrupt raw capture: unknown operation "+operation);
+			}
+			Record record=new Record();
+			record._operation=_operations[operation];
+			record._timestamp=_starttime*1000+_in.readLong()/1000;
+			record._keyid=_in.readLong();
+			record._latency=_in.readLong();
+			record._returncode=_in.readInt();
+			return record;
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+	}
+
+	public void close() throws IOException
+	{
+		_in.close();
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length!=1)
+		{
+			System.out.println("Usage: java com.yahoo.ycsb.measurements.RawCaptureReader capturefile");
+			System.out.println("Prints the captured operations as CSV.");
+			System.exit(0);
+		}
+
+		try
+		{
+			RawCaptureReader reader=new RawCaptureReader(new FileInputStream(args[0]));
+			Writer out=new BufferedWriter(new OutputStreamWriter(System.out),65536);
+			out.write("Timestamp(us),Operation,KeyId,Latency(ns),ReturnCode\n");
+			Record record;
+			while ((record=reader.next())!=null)
+			{
+				out.write(record._timestamp+","+record._operation+","+record._keyid+","+record._latency+","+record._returncode+"\n");
+			}
+			out.flush();
+			reader.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not read the raw capture: "+e.getMessage());
+			System.exit(1);
+		}
+	}
+}
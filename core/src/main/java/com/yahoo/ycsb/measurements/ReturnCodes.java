@@ -0,0 +1,85 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Counts the return codes of one metric, without locking: they can be reported by any number of threads, and
+ * read while they are being reported.
+ */
+class ReturnCodes
+{
+	ConcurrentHashMap<Integer,AtomicLong> _counts=new ConcurrentHashMap<Integer,AtomicLong>();
+
+	void report(int code)
+	{
+		get(code).incrementAndGet();
+	}
+
+	AtomicLong get(int code)
+	{
+		AtomicLong count=_counts.get(code);
+		if (count==null)
+		{
+			AtomicLong created=new AtomicLong();
+			count=_counts.putIfAbsent(code,created);
+			if (count==null)
+			{
+				count=created;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Add the counts of other return codes to these.
+	 */
+	void add(ReturnCodes other)
+	{
+		for (Map.Entry<Integer,AtomicLong> e : other._counts.entrySet())
+		{
+			get(e.getKey()).addAndGet(e.getValue().get());
+		}
+	}
+
+	/**
+	 * @return the count of each code so far, by code
+	 */
+	Map<Integer,Long> getCounts()
+	{
+		TreeMap<Integer,Long> counts=new TreeMap<Integer,Long>();
+		for (Map.Entry<Integer,AtomicLong> e : _counts.entrySet())
+		{
+			counts.put(e.getKey(),e.getValue().get());
+		}
+		return counts;
+	}
+
+	void export(String name, MeasurementsExporter exporter) throws IOException
+	{
+		for (Map.Entry<Integer,Long> e : getCounts().entrySet())
+		{
+			exporter.write(name,"Return="+e.getKey(),e.getValue());
+		}
+	}
+}
@@ -0,0 +1,462 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+/**
+ * Compares exported runs of the same workload with a baseline run, e.g. to gate the release of a new build of a
+ * store on its nightly results. For the overall throughput, and for the throughput, average latency and
+ * percentiles of each operation, it reports how much the run differs from the baseline, and flags a regression
+ * when the run is worse by more than the threshold.
+ *
+ * Where the exports hold interval data (the throughput series of "throughputseries.granularity", the units of
+ * the "timeseries" measurement type), the intervals of both runs are taken as samples of the measurement: the
+ * confidence interval of the difference between their means is computed with Welch's t-test, and a regression
+ * is only flagged if it is statistically significant too. The intervals are taken as independent, so they
+ * should be long enough for that (e.g. 1 s or more). Without interval data, a regression is flagged on the
+ * threshold alone.
+ */
+public class RunComparison
+{
+	public static final String THRESHOLD_DEFAULT="5";
+	public static final String CONFIDENCE_DEFAULT="95";
+	public static final String MIN_OPERATIONS_DEFAULT="100";
+
+	static final String THROUGHPUT="Throughput(ops/sec)";
+
+	/**
+	 * One measurement compared.
+	 */
+	static class Comparison
+	{
+		String _metric;
+		String _measurement;
+		boolean _higherisbetter;
+		double _baseline;
+		double _run;
+
+		//the relative difference, and the half width of its confidence interval (NaN without intervals), in %
+		double _delta;
+		double _interval=Double.NaN;
+		boolean _significant;
+		boolean _regression;
+
+		/**
+		 * @return the difference, in %, positive if the run is worse than the baseline
+		 */
+		double getWorsening()
+		{
+			return _higherisbetter ? -_delta : _delta;
+		}
+	}
+
+	double _threshold;
+	double _confidence;
+	long _minoperations;
+
+	/**
+	 * @param threshold how much worse than the baseline a measurement must be to be a regression, in %
+	 * @param confidence the confidence level of the intervals, in %
+	 * @param minoperations how many operations both runs need to have for an operation to be compared
+	 */
+	public RunComparison(double threshold, double confidence, long minoperations)
+	{
+		_threshold=threshold;
+		_confidence=confidence;
+		_minoperations=minoperations;
+	}
+
+	/**
+	 * @return the comparisons of a run with the baseline, both as raw values by metric and measurement
+	 */
+	ArrayList<Comparison> compare(LinkedHashMap<String,LinkedHashMap<String,String>> baseline, LinkedHashMap<String,LinkedHashMap<String,String>> run)
+	{
+		ArrayList<Comparison> comparisons=new ArrayList<Comparison>();
+		LinkedHashMap<String,String> b=baseline.get(MergedMeasurements.OVERALL);
+		LinkedHashMap<String,String> r=run.get(MergedMeasurements.OVERALL);
+		if ( (b!=null) && (r!=null) )
+		{
+			for (String name : new String[] {THROUGHPUT,"Successful"+THROUGHPUT})
+			{
+				if (b.containsKey(name) && r.containsKey(name))
+				{
+					comparisons.add(compare(MergedMeasurements.OVERALL,name,true,MergedMeasurements.parse(b.get(name)),MergedMeasurements.parse(r.get(name)),
+							totalThroughput(baseline),totalThroughput(run)));
+				}
+			}
+		}
+
+		for (String metric : baseline.keySet())
+		{
+			b=baseline.get(metric);
+			r=run.get(metric);
+			if ( (r==null) || !b.containsKey(MergedMeasurements.OPERATIONS) || !r.containsKey(MergedMeasurements.OPERATIONS) )
+			{
+				continue;
+			}
+			double bops=MergedMeasurements.parse(b.get(MergedMeasurements.OPERATIONS));
+			double rops=MergedMeasurements.parse(r.get(MergedMeasurements.OPERATIONS));
+			//the latencies, in microseconds whatever unit they were exported in; other metrics aren't operations
+			LinkedHashMap<String,Double> blatencies=latencies(b);
+			LinkedHashMap<String,Double> rlatencies=latencies(r);
+			if ( !(bops>=_minoperations) || !(rops>=_minoperations) || blatencies.isEmpty() )
+			{
+				continue;
+			}
+
+			double bruntime=runtime(baseline);
+			double rruntime=runtime(run);
+			if ( (bruntime>0) && (rruntime>0) )
+			{
+				comparisons.add(compare(metric,THROUGHPUT,true,bops*1000/bruntime,rops*1000/rruntime,
+						series(baseline.get(metric+Measurements.THROUGHPUT)),series(run.get(metric+Measurements.THROUGHPUT))));
+			}
+
+			for (Map.Entry<String,Double> e : blatencies.entrySet())
+			{
+				String name=e.getKey();
+				if (rlatencies.containsKey(name))
+				{
+					//the intervals of a time series are all in microseconds
+					String suffix=name.startsWith("Average") ? "" : "-"+name;
+					comparisons.add(compare(metric,name,false,e.getValue(),rlatencies.get(name),intervals(b,suffix),intervals(r,suffix)));
+				}
+			}
+		}
+		return comparisons;
+	}
+
+	Comparison compare(String metric, String measurement, boolean higherisbetter, double baseline, double run, double[] bsamples, double[] rsamples)
+	{
+		Comparison c=new Comparison();
+		c._metric=metric;
+		c._measurement=measurement;
+		c._higherisbetter=higherisbetter;
+		c._baseline=baseline;
+		c._run=run;
+		c._delta=(baseline==0) ? ((run==0) ? 0 : Double.POSITIVE_INFINITY*Math.signum(run)) : (run-baseline)/Math.abs(baseline)*100;
+
+		boolean intervals=(bsamples.length>=2) && (rsamples.length>=2);
+		if (intervals)
+		{
+			double bmean=mean(bsamples);
+			double rmean=mean(rsamples);
+			double bvar=variance(bsamples,bmean)/bsamples.length;
+			double rvar=variance(rsamples,rmean)/rsamples.length;
+			double se=Math.sqrt(bvar+rvar);
+			//Welch-Satterthwaite
+			double df=(se==0) ? Double.POSITIVE_INFINITY
+					: Math.pow(bvar+rvar,2)/(bvar*bvar/(bsamples.length-1)+rvar*rvar/(rsamples.length-1));
+			double halfwidth=tQuantile(0.5+_confidence/200.0,df)*se;
+			c._significant=Math.abs(rmean-bmean)>halfwidth;
+			c._interval=(bmean==0) ? Double.NaN : halfwidth/Math.abs(bmean)*100;
+		}
+		c._regression=(c.getWorsening()>_threshold) && (c._significant || !intervals);
+		return c;
+	}
+
+	static double runtime(LinkedHashMap<String,LinkedHashMap<String,String>> run)
+	{
+		LinkedHashMap<String,String> overall=run.get(MergedMeasurements.OVERALL);
+		return ( (overall==null) || !overall.containsKey(MergedMeasurements.RUNTIME) ) ? 0 : MergedMeasurements.parse(overall.get(MergedMeasurements.RUNTIME));
+	}
+
+	/**
+	 * @return the average latency and the percentiles of a metric in microseconds, by their names in
+	 *         microseconds
+	 */
+	static LinkedHashMap<String,Double> latencies(LinkedHashMap<String,String> values)
+	{
+		LinkedHashMap<String,Double> latencies=new LinkedHashMap<String,Double>();
+		for (Map.Entry<String,String> e : values.entrySet())
+		{
+			String name=e.getKey();
+			long nanos=MergedMeasurements.unitOf(name);
+			if ( (nanos==0) || !(name.startsWith("AverageLatency(") || (MergedMeasurements.percentileOf(name)>=0)) )
+			{
+				continue;
+			}
+			String us=name.substring(0,name.lastIndexOf('('))+"(us)";
+			latencies.put(us,MergedMeasurements.parse(e.getValue())*nanos/1000.0);
+		}
+		return latencies;
+	}
+
+	/**
+	 * @return the values of a series by interval, e.g. "[READ-THROUGHPUT], 1000, 5000.0"
+	 */
+	static double[] series(LinkedHashMap<String,String> values)
+	{
+		if (values==null)
+		{
+			return new double[0];
+		}
+		ArrayList<Double> samples=new ArrayList<Double>();
+		for (Map.Entry<String,String> e : values.entrySet())
+		{
+			if (MergedMeasurements.isBucket(e.getKey()))
+			{
+				samples.add(MergedMeasurements.parse(e.getValue()));
+			}
+		}
+		return toArray(samples);
+	}
+
+	/**
+	 * @return the overall throughput of each interval, summed over the throughput series of all operations
+	 */
+	static double[] totalThroughput(LinkedHashMap<String,LinkedHashMap<String,String>> run)
+	{
+		TreeMap<Long,Double> total=new TreeMap<Long,Double>();
+		for (Map.Entry<String,LinkedHashMap<String,String>> m : run.entrySet())
+		{
+			if (!m.getKey().endsWith(Measurements.THROUGHPUT))
+			{
+				continue;
+			}
+			for (Map.Entry<String,String> e : m.getValue().entrySet())
+			{
+				if (MergedMeasurements.isBucket(e.getKey()))
+				{
+					long t=Long.parseLong(e.getKey());
+					Double before=total.get(t);
+					total.put(t,((before==null) ? 0 : before)+MergedMeasurements.parse(e.getValue()));
+				}
+			}
+		}
+		return toArray(new ArrayList<Double>(total.values()));
+	}
+
+	/**
+	 * @return the values of the units of a time series with the given suffix, e.g. "-99thPercentileLatency(us)"
+	 *         for the 99th percentile of each unit, or "" for the average latency of each unit
+	 */
+	static double[] intervals(LinkedHashMap<String,String> values, String suffix)
+	{
+		ArrayList<Double> samples=new ArrayList<Double>();
+		for (Map.Entry<String,String> e : values.entrySet())
+		{
+			//each unit starts with its time, and has its operations counted too, unlike the buckets of a histogram
+			String name=e.getKey();
+			String time=name.endsWith(suffix) ? name.substring(0,name.length()-suffix.length()) : "";
+			if (MergedMeasurements.isBucket(time) && values.containsKey(time+"-"+MergedMeasurements.OPERATIONS))
+			{
+				double v=MergedMeasurements.parse(e.getValue());
+				if (!Double.isNaN(v))
+				{
+					samples.add(v);
+				}
+			}
+		}
+		return toArray(samples);
+	}
+
+	static double[] toArray(ArrayList<Double> list)
+	{
+		double[] array=new double[list.size()];
+		for (int i=0; i<array.length; i++)
+		{
+			array[i]=list.get(i);
+		}
+		return array;
+	}
+
+	static double mean(double[] samples)
+	{
+		double sum=0;
+		for (double s : samples)
+		{
+			sum+=s;
+		}
+		return sum/samples.length;
+	}
+
+	static double variance(double[] samples, double mean)
+	{
+		double sum=0;
+		for (double s : samples)
+		{
+			sum+=(s-mean)*(s-mean);
+		}
+		return sum/(samples.length-1);
+	}
+
+	/**
+	 * @return the quantile of the standard normal distribution at probability p (Acklam's approximation, with a
+	 *         relative error below 1.2e-9)
+	 */
+	static double normalQuantile(double p)
+	{
+		double[] a={-3.969683028665376e+01,2.209460984245205e+02,-2.759285104469687e+02,1.383577518672690e+02,-3.066479806614716e+01,2.506628277459239e+00};
+		double[] b={-5.447609879822406e+01,1.615858368580409e+02,-1.556989798598866e+02,6.680131188771972e+01,-1.328068155288572e+01};
+		double[] c={-7.784894002430293e-03,-3.223964580411365e-01,-2.400758277161838e+00,-2.549732539343734e+00,4.374664141464968e+00,2.938163982698783e+00};
+		double[] d={7.784695709041462e-03,3.224671290700398e-01,2.445134137142996e+00,3.754408661907416e+00};
+		if (p<0.02425)
+		{
+			double q=Math.sqrt(-2*Math.log(p));
+			return (((((c[0]*q+c[1])*q+c[2])*q+c[3])*q+c[4])*q+c[5])/((((d[0]*q+d[1])*q+d[2])*q+d[3])*q+1);
+		}
+		if (p>1-0.02425)
+		{
+			return -normalQuantile(1-p);
+		}
+		double q=p-0.5;
+		double r=q*q;
+		return (((((a[0]*r+a[1])*r+a[2])*r+a[3])*r+a[4])*r+a[5])*q/(((((b[0]*r+b[1])*r+b[2])*r+b[3])*r+b[4])*r+1);
+	}
+
+	/**
+	 * @return the quantile of Student's t distribution with df degrees of freedom at probability p, from that of
+	 *         the normal distribution (Cornish-Fisher expansion, accurate to about 1% from 3 degrees of freedom)
+	 */
+	static double tQuantile(double p, double df)
+	{
+		double z=normalQuantile(p);
+		if (Double.isInfinite(df))
+		{
+			return z;
+		}
+		double z2=z*z;
+		return z+z*(z2+1)/(4*df)
+				+z*((5*z2+16)*z2+3)/(96*df*df)
+				+z*(((3*z2+19)*z2+17)*z2-15)/(384*df*df*df)
+				+z*((((79*z2+776)*z2+1482)*z2-1920)*z2-945)/(92160*df*df*df*df);
+	}
+
+	/**
+	 * Print the comparisons of a run, one per line.
+	 *
+	 * @return true if any of them is a regression
+	 */
+	boolean print(String name, ArrayList<Comparison> comparisons, PrintStream out)
+	{
+		boolean regression=false;
+		out.println("Run: "+name);
+		out.println(String.format("  %-24s %-32s %14s %14s %9s %10s","Metric","Measurement","Baseline","Run","Delta","CI"));
+		for (Comparison c : comparisons)
+		{
+			String interval=Double.isNaN(c._interval) ? "-" : String.format("+-%.1f%%",c._interval);
+			String flag=c._regression ? "  REGRESSION" : (c._significant ? "  significant" : "");
+			out.println(String.format("  %-24s %-32s %14.2f %14.2f %+8.1f%% %10s%s","["+c._metric+"]",c._measurement,c._baseline,c._run,c._delta,interval,flag));
+			regression|=c._regression;
+		}
+		return regression;
+	}
+
+	/**
+	 * @return the raw values of a run: an export file, or a directory of the exports of several clients that ran
+	 *         side by side, merged
+	 */
+	static LinkedHashMap<String,LinkedHashMap<String,String>> readRun(File file) throws IOException
+	{
+		File[] children=file.listFiles();
+		if (children==null)
+		{
+			return MergedMeasurements.readFile(file);
+		}
+		MergedMeasurements merged=new MergedMeasurements();
+		merged.setExportDistribution(false);
+		for (File child : children)
+		{
+			merged.add(MergedMeasurements.readFile(child));
+		}
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		TextMeasurementsExporter exporter=new TextMeasurementsExporter(out);
+		merged.exportMeasurements(exporter);
+		exporter.close();
+		return MergedMeasurements.readSource(new StringReader(out.toString()));
+	}
+
+	static void usageMessage()
+	{
+		System.out.println("Usage: java com.yahoo.ycsb.measurements.RunComparison [options] baseline run...");
+		System.out.println("Compares the throughput and latencies of each run with those of the baseline run. Each run");
+		System.out.println("is a file written by the text or JSON exporter, or a directory of the exports of several");
+		System.out.println("clients. Exits with status 1 if any run regressed, 2 on bad arguments.");
+		System.out.println("Options:");
+		System.out.println("  -threshold pct: how much worse a measurement must be to regress (default: "+THRESHOLD_DEFAULT+")");
+		System.out.println("  -confidence pct: the confidence level of the intervals (default: "+CONFIDENCE_DEFAULT+")");
+		System.out.println("  -minoperations n: leave out operations with fewer operations in either run (default: "+MIN_OPERATIONS_DEFAULT+")");
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		String threshold=THRESHOLD_DEFAULT;
+		String confidence=CONFIDENCE_DEFAULT;
+		String minoperations=MIN_OPERATIONS_DEFAULT;
+		ArrayList<File> runs=new ArrayList<File>();
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-threshold") && (i+1<args.length))
+			{
+				threshold=args[++i];
+			}
+			else if (args[i].equals("-confidence") && (i+1<args.length))
+			{
+				confidence=args[++i];
+			}
+			else if (args[i].equals("-minoperations") && (i+1<args.length))
+			{
+				minoperations=args[++i];
+			}
+			else if (args[i].startsWith("-"))
+			{
+				usageMessage();
+				System.exit(2);
+			}
+			else
+			{
+				runs.add(new File(args[i]));
+			}
+		}
+		if (runs.size()<2)
+		{
+			usageMessage();
+			System.exit(2);
+		}
+
+		RunComparison comparison=null;
+		try
+		{
+			comparison=new RunComparison(Double.parseDouble(threshold),Double.parseDouble(confidence),Long.parseLong(minoperations));
+		}
+		catch (NumberFormatException e)
+		{
+			usageMessage();
+			System.exit(2);
+		}
+
+		LinkedHashMap<String,LinkedHashMap<String,String>> baseline=readRun(runs.get(0));
+		System.out.println("Baseline: "+runs.get(0));
+		boolean regression=false;
+		for (File run : runs.subList(1,runs.size()))
+		{
+			regression|=comparison.print(run.toString(),comparison.compare(baseline,readRun(run)),System.out);
+		}
+		System.exit(regression ? 1 : 0);
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * A metric counted without locking into a fixed number of stripes of atomic counters, one counter per bucket of
+ * the distribution of the measurement it is merged into, so that client threads recording the same metric at
+ * the same time don't wait on each other and mostly don't share a counter. A thread always counts into the same
+ * stripe, chosen by its id; the number of stripes depends on the processors, not on the threads, so that
+ * thousands of (virtual) client threads don't take a set of counters each. Return codes are counted without
+ * locking anyway, so they go straight to the merged measurement.
+ *
+ * The stripes are added into one merged measurement lazily, when the metric is read: each counter is taken and
+ * zeroed atomically, so reading never blocks recording, the merged view grows incrementally and reading it
+ * allocates nothing. Stripes nothing was counted into since the last read are skipped.
+ */
+public class StripedMeasurement extends OneMeasurement
+{
+	/**
+	 * The most stripes of a metric.
+	 */
+	static final int MAX_STRIPES=64;
+
+	/**
+	 * The counters of one stripe, the sum, minimum and maximum of the latencies counted in them (in ns), and
+	 * whether anything was counted since they were last merged.
+	 */
+	static class Stripe
+	{
+		AtomicLongArray _counts;
+		AtomicLong _sum=new AtomicLong();
+		AtomicLong _min=new AtomicLong(Long.MAX_VALUE);
+		AtomicLong _max=new AtomicLong(Long.MIN_VALUE);
+		volatile boolean _dirty;
+
+		Stripe(int counters)
+		{
+			_counts=new AtomicLongArray(counters);
+		}
+	}
+
+	//created on first use
+	AtomicReferenceArray<Stripe> _stripes;
+
+	//everything counted up to the last merge
+	OneMeasurement _merged;
+
+	//the totals at the last status summary
+	long _summaryoperations;
+	long _summarytotallatency;
+
+	/**
+	 * @param measurements creates the measurement the stripes are merged into, which has to support counters()
+	 */
+	public StripedMeasurement(String name, Measurements measurements)
+	{
+		super(name);
+		_stripes=new AtomicReferenceArray<Stripe>(stripes());
+		_merged=measurements.constructRecorder(name);
+	}
+
+	/**
+	 * @return the number of stripes of a metric: the processors, rounded up to a power of 2 and at most
+	 *         MAX_STRIPES, so that a thread's stripe is its id masked
+	 */
+	static int stripes()
+	{
+		int stripes=1;
+		while (stripes<Math.min(Runtime.getRuntime().availableProcessors(),MAX_STRIPES))
+		{
+			stripes<<=1;
+		}
+		return stripes;
+	}
+
+	/**
+	 * @return the stripe of the current thread
+	 */
+	Stripe stripe()
+	{
+		int i=(int)Thread.currentThread().getId()&(_stripes.length()-1);
+		Stripe stripe=_stripes.get(i);
+		if (stripe==null)
+		{
+			_stripes.compareAndSet(i,null,new Stripe(_merged.counters()));
+			stripe=_stripes.get(i);
+		}
+		return stripe;
+	}
+
+	@Override
+	public void reportReturnCode(int code)
+	{
+		_merged.reportReturnCode(code);
+	}
+
+	@Override
+	public void measure(int latency)
+	{
+		measureNanos(latency*1000L);
+	}
+
+	/**
+	 * Count a latency in the stripe of the current thread. The minimum and maximum go first and the count last,
+	 * so that a merge that takes the count also finds the rest.
+	 */
+	@Override
+	public void measureNanos(long latency)
+	{
+		Stripe stripe=stripe();
+		long min=stripe._min.get();
+		while ( (latency<min) && !stripe._min.compareAndSet(min,latency) )
+		{
+			min=stripe._min.get();
+		}
+		long max=stripe._max.get();
+		while ( (latency>max) && !stripe._max.compareAndSet(max,latency) )
+		{
+			max=stripe._max.get();
+		}
+		stripe._sum.addAndGet(latency);
+		stripe._counts.incrementAndGet(_merged.counterOf(latency));
+		if (!stripe._dirty)
+		{
+			stripe._dirty=true;
+		}
+	}
+
+	/**
+	 * @return the measurements of all stripes so far, merged into one. This is the same instance every time,
+	 *         kept up to date by every call. Latencies being counted while it runs are merged by the next call.
+	 */
+	public synchronized OneMeasurement merge()
+	{
+		synchronized (_merged)
+		{
+			for (int i=0; i<_stripes.length(); i++)
+			{
+				Stripe stripe=_stripes.get(i);
+				if ( (stripe==null) || !stripe._dirty )
+				{
+					continue;
+				}
+				stripe._dirty=false;
+				for (int c=0; c<stripe._counts.length(); c++)
+				{
+					if (stripe._counts.get(c)!=0)
+					{
+						_merged.addCount(c,stripe._counts.getAndSet(c,0));
+					}
+				}
+				_merged.addTotals(stripe._sum.getAndSet(0),stripe._min.getAndSet(Long.MAX_VALUE),stripe._max.getAndSet(Long.MIN_VALUE));
+			}
+		}
+		return _merged;
+	}
+
+	@Override
+	public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		merge().exportMeasurements(exporter);
+	}
+
+	@Override
+	public double getPercentile(double percentile)
+	{
+		return merge().getPercentile(percentile);
+	}
+
+	@Override
+	public long[][] getDistribution()
+	{
+		return merge().getDistribution();
+	}
+
+	@Override
+	public Map<Integer,Long> getReturnCodes()
+	{
+		return _merged.getReturnCodes();
+	}
+
+	@Override
+	public long getOperations()
+	{
+		return merge().getOperations();
+	}
+
+	@Override
+	public long getTotalLatency()
+	{
+		return merge().getTotalLatency();
+	}
+
+	@Override
+	public synchronized String getSummary()
+	{
+		OneMeasurement merged=merge();
+		long operations=merged.getOperations();
+		long totallatency=merged.getTotalLatency();
+		long windowoperations=operations-_summaryoperations;
+		long windowtotallatency=totallatency-_summarytotallatency;
+		_summaryoperations=operations;
+		_summarytotallatency=totallatency;
+		if (windowoperations<=0)
+		{
+			return "";
+		}
+		DecimalFormat d = new DecimalFormat("#.##");
+		double report=((double)windowtotallatency)/((double)windowoperations);
+		return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
+	}
+}
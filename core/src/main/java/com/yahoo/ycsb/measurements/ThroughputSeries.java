@@ -0,0 +1,148 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Counts the operations of one metric completed in each interval of the run, without locking. The counters are
+ * striped by thread, so that client threads counting the same interval at the same time mostly don't share a
+ * counter, and grow in chunks as the run goes on.
+ */
+class ThroughputSeries
+{
+	//the intervals in a chunk, and the most chunks kept (about 12 days at 1 s)
+	static final int CHUNK=1024;
+	static final int MAX_CHUNKS=1024;
+
+	/**
+	 * The chunks of counters of one stripe, created on first use.
+	 */
+	static class Stripe
+	{
+		AtomicReferenceArray<AtomicLongArray> _chunks=new AtomicReferenceArray<AtomicLongArray>(MAX_CHUNKS);
+	}
+
+	String _name;
+	long _granularity;
+	Stripe[] _stripes;
+
+	//operations after the last interval kept
+	AtomicLong _late=new AtomicLong();
+
+	/**
+	 * @param granularity the length of an interval, in milliseconds
+	 */
+	ThroughputSeries(String name, long granularity)
+	{
+		_name=name;
+		_granularity=granularity;
+		int stripes=StripedMeasurement.stripes();
+		_stripes=new Stripe[stripes];
+		for (int i=0; i<stripes; i++)
+		{
+			_stripes[i]=new Stripe();
+		}
+	}
+
+	/**
+	 * Count one operation completed in the given interval.
+	 */
+	void count(long interval)
+	{
+		if (interval>=((long)CHUNK)*MAX_CHUNKS)
+		{
+			_late.incrementAndGet();
+			return;
+		}
+		AtomicReferenceArray<AtomicLongArray> chunks=_stripes[(int)Thread.currentThread().getId()&(_stripes.length-1)]._chunks;
+		int c=(int)(interval/CHUNK);
+		AtomicLongArray chunk=chunks.get(c);
+		if (chunk==null)
+		{
+			chunks.compareAndSet(c,null,new AtomicLongArray(CHUNK));
+			chunk=chunks.get(c);
+		}
+		chunk.incrementAndGet((int)(interval%CHUNK));
+	}
+
+	/**
+	 * @return the operations completed in each interval so far, up to the last one with any
+	 */
+	long[] getCounts()
+	{
+		int used=0;
+		for (Stripe stripe : _stripes)
+		{
+			for (int c=used; c<MAX_CHUNKS; c++)
+			{
+				if (stripe._chunks.get(c)!=null)
+				{
+					used=c+1;
+				}
+			}
+		}
+
+		long[] counts=new long[used*CHUNK];
+		int intervals=0;
+		for (Stripe stripe : _stripes)
+		{
+			for (int c=0; c<used; c++)
+			{
+				AtomicLongArray chunk=stripe._chunks.get(c);
+				if (chunk==null)
+				{
+					continue;
+				}
+				for (int i=0; i<CHUNK; i++)
+				{
+					long count=chunk.get(i);
+					if (count>0)
+					{
+						counts[c*CHUNK+i]+=count;
+						intervals=Math.max(intervals,c*CHUNK+i+1);
+					}
+				}
+			}
+		}
+		long[] trimmed=new long[intervals];
+		System.arraycopy(counts,0,trimmed,0,intervals);
+		return trimmed;
+	}
+
+	/**
+	 * Export the throughput of each interval in operations per second, as the metric's name followed by
+	 * "-THROUGHPUT", with the time the interval started at (in ms since the first operation of the run).
+	 */
+	void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		String metric=_name+Measurements.THROUGHPUT;
+		long[] counts=getCounts();
+		for (int i=0; i<counts.length; i++)
+		{
+			exporter.write(metric,Long.toString(i*_granularity),counts[i]*1000.0/_granularity);
+		}
+		if (_late.get()>0)
+		{
+			exporter.write(metric,"LateOperations",_late.get());
+		}
+	}
+}
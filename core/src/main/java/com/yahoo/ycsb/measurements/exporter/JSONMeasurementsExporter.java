@@ -51,6 +51,15 @@ public class JSONMeasurementsExporter implements MeasurementsExporter
     g.writeEndObject();
   }
 
+  public void write(String metric, String measurement, long l) throws IOException
+  {
+    g.writeStartObject();
+    g.writeStringField("metric", metric);
+    g.writeStringField("measurement", measurement);
+    g.writeNumberField("value", l);
+    g.writeEndObject();
+  }
+
   public void write(String metric, String measurement, double d) throws IOException
   {
     g.writeStartObject();
@@ -60,6 +69,37 @@ public class JSONMeasurementsExporter implements MeasurementsExporter
     g.writeEndObject();
   }
 
+  /**
+   * Writes the values with a count as two arrays, "values" and "counts".
+   */
+  public void write(String metric, String measurement, long[] values, long[] counts) throws IOException
+  {
+    g.writeStartObject();
+    g.writeStringField("metric", metric);
+    g.writeStringField("measurement", measurement);
+    g.writeFieldName("values");
+    g.writeStartArray();
+    for (int i = 0; i < values.length; i++)
+    {
+      if (counts[i] != 0)
+      {
+        g.writeNumber(values[i]);
+      }
+    }
+    g.writeEndArray();
+    g.writeFieldName("counts");
+    g.writeStartArray();
+    for (int i = 0; i < values.length; i++)
+    {
+      if (counts[i] != 0)
+      {
+        g.writeNumber(counts[i]);
+      }
+    }
+    g.writeEndArray();
+    g.writeEndObject();
+  }
+
   public void close() throws IOException
   {
     if (g != null)
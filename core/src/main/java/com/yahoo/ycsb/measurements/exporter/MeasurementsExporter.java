@@ -36,6 +36,16 @@ public interface MeasurementsExporter extends Closeable
    */
   public void write(String metric, String measurement, int i) throws IOException;
 
+  /**
+   * Write a measurement to the exported format.
+   * 
+   * @param metric Metric name, for example "READ LATENCY".
+   * @param measurement Measurement name, for example "Average latency".
+   * @param l Measurement to write.
+   * @throws IOException if writing failed
+   */
+  public void write(String metric, String measurement, long l) throws IOException;
+
   /**
    * Write a measurement to the exported format.
    * 
@@ -46,4 +56,17 @@ public interface MeasurementsExporter extends Closeable
    */
   public void write(String metric, String measurement, double d) throws IOException;
 
+  /**
+   * Write a distribution to the exported format, without losing anything, so that the
+   * distributions of several clients can be added up later (see MergedMeasurements).
+   * Only the values with a count are written.
+   * 
+   * @param metric Metric name, for example "READ".
+   * @param measurement Measurement name, for example "Distribution(ns)".
+   * @param values The values, in increasing order.
+   * @param counts The count at each value.
+   * @throws IOException if writing failed
+   */
+  public void write(String metric, String measurement, long[] values, long[] counts) throws IOException;
+
 }
@@ -40,12 +40,39 @@ public class TextMeasurementsExporter implements MeasurementsExporter
     bw.newLine();
   }
 
+  public void write(String metric, String measurement, long l) throws IOException
+  {
+    bw.write("[" + metric + "], " + measurement + ", " + l);
+    bw.newLine();
+  }
+
   public void write(String metric, String measurement, double d) throws IOException
   {
     bw.write("[" + metric + "], " + measurement + ", " + d);
     bw.newLine();
   }
 
+  /**
+   * Writes the values with a count as value:count, separated by spaces.
+   */
+  public void write(String metric, String measurement, long[] values, long[] counts) throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; i++)
+    {
+      if (counts[i] != 0)
+      {
+        if (sb.length() > 0)
+        {
+          sb.append(' ');
+        }
+        sb.append(values[i]).append(':').append(counts[i]);
+      }
+    }
+    bw.write("[" + metric + "], " + measurement + ", " + sb);
+    bw.newLine();
+  }
+
   public void close() throws IOException
   {
     this.bw.close();
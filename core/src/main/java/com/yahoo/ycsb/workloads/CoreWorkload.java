@@ -57,7 +57,9 @@ import java.util.Vector;
  * <LI><b>requestdistribution</b>: what distribution should be used to select the records to operate on - uniform, zipfian, hotspot, or latest (default: uniform)
  * <LI><b>maxscanlength</b>: for scans, what is the maximum number of records to scan (default: 1000)
  * <LI><b>scanlengthdistribution</b>: for scans, what distribution should be used to choose the number of records to scan, for each scan, between 1 and maxscanlength (default: uniform)
+ * <LI><b>zipfian.constant</b>: the skew (theta) of the zipfian and latest request distributions and of zipfian scan lengths, greater than 0 but not 1; the larger, the more skewed (default: 0.99)
  * <LI><b>insertorder</b>: should records be inserted in order by key ("ordered"), or in hashed order ("hashed") (default: hashed)
+ * <LI><b>transactioninsertoffset</b> and <b>transactioninsertstride</b>: the transaction phase inserts keys recordcount+offset, then every stride-th key after it, so that several clients can insert disjoint keys (default: 0 and 1)
  * </ul> 
  */
 public class CoreWorkload extends Workload
@@ -227,7 +229,36 @@ public class CoreWorkload extends Workload
 	 * The default max scan length.
 	 */
 	public static final String SCAN_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT="uniform";
+
+	/**
+	 * The name of the property for the zipfian constant (theta) of the zipfian and latest request distributions,
+	 * and of the zipfian scan length distribution.
+	 */
+	public static final String ZIPFIAN_CONSTANT_PROPERTY="zipfian.constant";
+
+	/**
+	 * The default zipfian constant.
+	 */
+	public static final String ZIPFIAN_CONSTANT_PROPERTY_DEFAULT=""+ZipfianGenerator.ZIPFIAN_CONSTANT;
 	
+	/**
+	 * The name of the property for the offset of the first key inserted in the transaction phase from
+	 * "recordcount". Several clients inserting into the same key space (e.g. the workers of a Coordinator) each
+	 * take an offset of their own below the stride.
+	 */
+	public static final String TRANSACTION_INSERT_OFFSET_PROPERTY="transactioninsertoffset";
+
+	public static final String TRANSACTION_INSERT_OFFSET_PROPERTY_DEFAULT="0";
+
+	/**
+	 * The name of the property for how far apart the keys inserted in the transaction phase are, i.e. the number
+	 * of clients inserting into the same key space. Each client reads the keys up to the last one it inserted,
+	 * which the others insert at about the same time.
+	 */
+	public static final String TRANSACTION_INSERT_STRIDE_PROPERTY="transactioninsertstride";
+
+	public static final String TRANSACTION_INSERT_STRIDE_PROPERTY_DEFAULT="1";
+
 	/**
 	 * The name of the property for the order to insert records. Options are "ordered" or "hashed"
 	 */
@@ -272,7 +303,7 @@ public class CoreWorkload extends Workload
 	
 	boolean orderedinserts;
 
-	int recordcount;
+	long recordcount;
 	
 	protected static IntegerGenerator getFieldLengthGenerator(Properties p) throws WorkloadException{
 		IntegerGenerator fieldlengthgenerator;
@@ -296,6 +327,29 @@ public class CoreWorkload extends Workload
 		}
 		return fieldlengthgenerator;
 	}
+
+	/**
+	 * @return the zipfian constant the properties ask for. The zipfian generators can't skew by exactly 1, so
+	 *         use e.g. 0.999 or 1.001 instead.
+	 */
+	protected static double getZipfianConstant(Properties p) throws WorkloadException
+	{
+		String value=p.getProperty(ZIPFIAN_CONSTANT_PROPERTY,ZIPFIAN_CONSTANT_PROPERTY_DEFAULT);
+		double zipfianconstant;
+		try
+		{
+			zipfianconstant=Double.parseDouble(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new WorkloadException("Invalid zipfian constant \""+value+"\"",e);
+		}
+		if (!(zipfianconstant>0) || zipfianconstant==1 || Double.isInfinite(zipfianconstant))
+		{
+			throw new WorkloadException("The zipfian constant must be greater than 0 and not 1, not "+value);
+		}
+		return zipfianconstant;
+	}
 	
 	/**
 	 * Initialize the scenario. 
@@ -313,12 +367,13 @@ public class CoreWorkload extends Workload
 		double insertproportion=Double.parseDouble(p.getProperty(INSERT_PROPORTION_PROPERTY,INSERT_PROPORTION_PROPERTY_DEFAULT));
 		double scanproportion=Double.parseDouble(p.getProperty(SCAN_PROPORTION_PROPERTY,SCAN_PROPORTION_PROPERTY_DEFAULT));
 		double readmodifywriteproportion=Double.parseDouble(p.getProperty(READMODIFYWRITE_PROPORTION_PROPERTY,READMODIFYWRITE_PROPORTION_PROPERTY_DEFAULT));
-		recordcount=Integer.parseInt(p.getProperty(Client.RECORD_COUNT_PROPERTY));
+		recordcount=Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY));
 		String requestdistrib=p.getProperty(REQUEST_DISTRIBUTION_PROPERTY,REQUEST_DISTRIBUTION_PROPERTY_DEFAULT);
 		int maxscanlength=Integer.parseInt(p.getProperty(MAX_SCAN_LENGTH_PROPERTY,MAX_SCAN_LENGTH_PROPERTY_DEFAULT));
 		String scanlengthdistrib=p.getProperty(SCAN_LENGTH_DISTRIBUTION_PROPERTY,SCAN_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT);
+		double zipfianconstant=getZipfianConstant(p);
 		
-		int insertstart=Integer.parseInt(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
+		long insertstart=Long.parseLong(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
 		
 		readallfields=Boolean.parseBoolean(p.getProperty(READ_ALL_FIELDS_PROPERTY,READ_ALL_FIELDS_PROPERTY_DEFAULT));
 		writeallfields=Boolean.parseBoolean(p.getProperty(WRITE_ALL_FIELDS_PROPERTY,WRITE_ALL_FIELDS_PROPERTY_DEFAULT));
@@ -367,7 +422,9 @@ public class CoreWorkload extends Workload
 			operationchooser.addValue(readmodifywriteproportion,"READMODIFYWRITE");
 		}
 
-		transactioninsertkeysequence=new CounterGenerator(recordcount);
+		long transactioninsertoffset=Long.parseLong(p.getProperty(TRANSACTION_INSERT_OFFSET_PROPERTY,TRANSACTION_INSERT_OFFSET_PROPERTY_DEFAULT));
+		long transactioninsertstride=Long.parseLong(p.getProperty(TRANSACTION_INSERT_STRIDE_PROPERTY,TRANSACTION_INSERT_STRIDE_PROPERTY_DEFAULT));
+		transactioninsertkeysequence=new CounterGenerator(recordcount+transactioninsertoffset,transactioninsertstride);
 		if (requestdistrib.compareTo("uniform")==0)
 		{
 			keychooser=new UniformIntegerGenerator(0,recordcount-1);
@@ -381,14 +438,15 @@ public class CoreWorkload extends Workload
 			//plus the number of predicted keys as the total keyspace. then, if the generator picks a key that hasn't been inserted yet, will
 			//just ignore it and pick another key. this way, the size of the keyspace doesn't change from the perspective of the scrambled zipfian generator
 			
-			int opcount=Integer.parseInt(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
-			int expectednewkeys=(int)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
+			long opcount=Long.parseLong(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
+			//all the clients inserting into the key space insert about as many
+			long expectednewkeys=(long)(((double)opcount)*transactioninsertstride*insertproportion*2.0); //2 is fudge factor
 			
-			keychooser=new ScrambledZipfianGenerator(recordcount+expectednewkeys);
+			keychooser=new ScrambledZipfianGenerator(recordcount+expectednewkeys,zipfianconstant);
 		}
 		else if (requestdistrib.compareTo("latest")==0)
 		{
-			keychooser=new SkewedLatestGenerator(transactioninsertkeysequence);
+			keychooser=new SkewedLatestGenerator(transactioninsertkeysequence,zipfianconstant);
 		}
 		else if (requestdistrib.equals("hotspot")) 
 		{
@@ -412,7 +470,7 @@ public class CoreWorkload extends Workload
 		}
 		else if (scanlengthdistrib.compareTo("zipfian")==0)
 		{
-			scanlength=new ZipfianGenerator(1,maxscanlength);
+			scanlength=new ZipfianGenerator(1,maxscanlength,zipfianconstant);
 		}
 		else
 		{
@@ -420,6 +478,28 @@ public class CoreWorkload extends Workload
 		}
 	}
 
+	/**
+	 * Initialize the scenario for one phase of a multi-phase run. If the previous phase ran a CoreWorkload,
+	 * the records it inserted are taken over: transactional inserts continue after them, and
+	 * the "latest" distribution keeps favoring them.
+	 */
+	public void init(Properties p, Workload previous) throws WorkloadException
+	{
+		init(p);
+		if (previous instanceof CoreWorkload)
+		{
+			CoreWorkload prev=(CoreWorkload)previous;
+			if (prev.transactioninsertkeysequence.lastLong()>transactioninsertkeysequence.lastLong())
+			{
+				transactioninsertkeysequence=prev.transactioninsertkeysequence;
+				if (keychooser instanceof SkewedLatestGenerator)
+				{
+					keychooser=new SkewedLatestGenerator(transactioninsertkeysequence,getZipfianConstant(p));
+				}
+			}
+		}
+	}
+
 	public String buildKeyName(long keynum) {
  		if (!orderedinserts)
  		{
@@ -455,7 +535,7 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doInsert(DB db, Object threadstate)
 	{
-		int keynum=keysequence.nextInt();
+		long keynum=keysequence.nextLong();
 		String dbkey = buildKeyName(keynum);
 		HashMap<String, ByteIterator> values = buildValues();
 		if (db.insert(table,dbkey,values) == 0)
@@ -498,20 +578,20 @@ public class CoreWorkload extends Workload
 		return true;
 	}
 
-    int nextKeynum() {
-        int keynum;
+    long nextKeynum() {
+        long keynum;
         if(keychooser instanceof ExponentialGenerator) {
             do
                 {
-                    keynum=transactioninsertkeysequence.lastInt() - keychooser.nextInt();
+                    keynum=transactioninsertkeysequence.lastLong() - keychooser.nextLong();
                 }
             while(keynum < 0);
         } else {
             do
                 {
-                    keynum=keychooser.nextInt();
+                    keynum=keychooser.nextLong();
                 }
-            while (keynum > transactioninsertkeysequence.lastInt());
+            while (keynum > transactioninsertkeysequence.lastLong());
         }
         return keynum;
     }
@@ -519,7 +599,7 @@ public class CoreWorkload extends Workload
 	public void doTransactionRead(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 		
 		String keyname = buildKeyName(keynum);
 		
@@ -540,7 +620,7 @@ public class CoreWorkload extends Workload
 	public void doTransactionReadModifyWrite(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String keyname = buildKeyName(keynum);
 
@@ -570,6 +650,8 @@ public class CoreWorkload extends Workload
 
 		//do the transaction
 		
+		Measurements measurements=Measurements.getMeasurements();
+		long ist=measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 
 		db.read(table,keyname,fields,new HashMap<String,ByteIterator>());
@@ -578,13 +660,14 @@ public class CoreWorkload extends Workload
 
 		long en=System.nanoTime();
 		
-		Measurements.getMeasurements().measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
+		measurements.measureNanos("READ-MODIFY-WRITE", en-st);
+		measurements.measureIntendedNanos("READ-MODIFY-WRITE", en-ist);
 	}
 	
 	public void doTransactionScan(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String startkeyname = buildKeyName(keynum);
 		
@@ -608,7 +691,7 @@ public class CoreWorkload extends Workload
 	public void doTransactionUpdate(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String keyname=buildKeyName(keynum);
 
@@ -631,7 +714,7 @@ public class CoreWorkload extends Workload
 	public void doTransactionInsert(DB db)
 	{
 		//choose the next key
-		int keynum=transactioninsertkeysequence.nextInt();
+		long keynum=transactioninsertkeysequence.nextLong();
 
 		String dbkey = buildKeyName(keynum);
 
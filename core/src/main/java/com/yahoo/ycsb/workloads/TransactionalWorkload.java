@@ -34,7 +34,7 @@ import com.yahoo.ycsb.measurements.Measurements;
  * <UL>
  * <LI><b>maxtransactionlength</b>: maximum number of operations per transaction (default 10)
  * <LI><b>transactionlengthdistribution</b>: what distribution should be used to choose the number of operations for
- * each transaction, between 1 and maxtransactionlength (default: uniform)
+ * each transaction, between 1 and maxtransactionlength (default: uniform), skewed by zipfian.constant if zipfian
  * </ul>
  * 
  */
@@ -59,7 +59,7 @@ public class TransactionalWorkload extends CoreWorkload {
         if (transactionlengthdistrib.equals("uniform")) {
             transactionlength = new UniformIntegerGenerator(1, maxtransactionlength);
         } else if (transactionlengthdistrib.equals("zipfian")) {
-            transactionlength = new ZipfianGenerator(1, maxtransactionlength);
+            transactionlength = new ZipfianGenerator(1, maxtransactionlength, getZipfianConstant(p));
         } else {
             throw new WorkloadException("Distribution \"" + transactionlengthdistrib
                     + "\" not allowed for transaction length");
@@ -73,6 +73,8 @@ public class TransactionalWorkload extends CoreWorkload {
 
         int transactions = transactionlength.nextInt();
 
+        Measurements measurements = Measurements.getMeasurements();
+        long ist = measurements.getIntendedStartTimeNs();
         long st = System.nanoTime();
         db.startTransaction();
         for (int i = 0; i < transactions; ++i) {
@@ -82,7 +84,8 @@ public class TransactionalWorkload extends CoreWorkload {
 
         long en = System.nanoTime();
 
-        Measurements.getMeasurements().measure("TRANSACTION", (int) ((en - st) / 1000));
+        measurements.measureNanos("TRANSACTION", en - st);
+        measurements.measureIntendedNanos("TRANSACTION", en - ist);
 
         return true;
     }
@@ -0,0 +1,81 @@
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Vector;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestAsyncDBAdapter {
+  /**
+   * Completes its reads later, from another thread, fails every update before issuing it, and fails every
+   * delete after completing it.
+   */
+  static class SlowDB extends AsyncDB {
+    volatile int completed;
+
+    public void read(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result, final Callback callback) {
+      new Thread() {
+        public void run() {
+          try {
+            Thread.sleep(50);
+          } catch (InterruptedException e) {
+          }
+          completed++;
+          callback.complete(0);
+        }
+      }.start();
+    }
+
+    public void scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String, ByteIterator>> result, Callback callback) {
+      callback.complete(0);
+    }
+
+    public void update(String table, String key, HashMap<String, ByteIterator> values, Callback callback) {
+      throw new IllegalStateException("not connected");
+    }
+
+    public void insert(String table, String key, HashMap<String, ByteIterator> values, Callback callback) {
+      callback.complete(0);
+    }
+
+    public void delete(String table, String key, Callback callback) {
+      callback.complete(0);
+      throw new IllegalStateException("lost the connection");
+    }
+  }
+
+  @Test
+  public void testDrain() {
+    SlowDB slow = new SlowDB();
+    AsyncDBAdapter db = new AsyncDBAdapter(slow, 1);
+    db.read("usertable", "user1", null, new HashMap<String, ByteIterator>());
+    db.drain();
+    assertEquals(1, slow.completed);
+  }
+
+  @Test
+  public void testFailedIssueReleasesItsTurn() throws Exception {
+    AsyncDBAdapter db = new AsyncDBAdapter(new SlowDB(), 1);
+    try {
+      db.update("usertable", "user1", new HashMap<String, ByteIterator>());
+      fail("the update should have thrown");
+    } catch (IllegalStateException e) {
+    }
+    //would block forever if the failed update still held its turn
+    db.insert("usertable", "user2", new HashMap<String, ByteIterator>());
+    db.cleanup();
+  }
+
+  @Test
+  public void testCompletedThenFailedGivesItsTurnBackOnce() {
+    AsyncDBAdapter db = new AsyncDBAdapter(new SlowDB(), 2);
+    try {
+      db.delete("usertable", "user1");
+      fail("the delete should have thrown");
+    } catch (IllegalStateException e) {
+    }
+    assertEquals(2, db._inflight.availablePermits());
+  }
+}
@@ -0,0 +1,129 @@
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.workloads.CoreWorkload;
+
+public class TestCoordinator {
+  static Properties runProperties() {
+    Properties props = new Properties();
+    props.setProperty(Coordinator.WORKERS_PROPERTY, "3");
+    props.setProperty(Client.RECORD_COUNT_PROPERTY, "1000");
+    props.setProperty(Client.OPERATION_COUNT_PROPERTY, "1001");
+    props.setProperty("insertstart", "10");
+    return props;
+  }
+
+  @Test
+  public void testLoadSplitIntoKeyRanges() {
+    Coordinator coordinator = new Coordinator(runProperties(), false);
+    long next = 10;
+    double targetshare = 0;
+    for (int i = 0; i < 3; i++) {
+      Properties props = coordinator.workerProperties(i);
+      assertNull(props.getProperty(Coordinator.WORKERS_PROPERTY));
+      //each range starts where the last one ended
+      assertEquals(next, Long.parseLong(props.getProperty("insertstart")));
+      next += Long.parseLong(props.getProperty(Client.INSERT_COUNT_PROPERTY));
+      targetshare += Double.parseDouble(props.getProperty(Client.TARGET_SHARE_PROPERTY));
+    }
+    assertEquals(1010, next);
+    assertEquals(1.0, targetshare, 1e-9);
+  }
+
+  @Test
+  public void testTransactionsSplitIntoShares() {
+    Coordinator coordinator = new Coordinator(runProperties(), true);
+    long operations = 0;
+    for (int i = 0; i < 3; i++) {
+      Properties props = coordinator.workerProperties(i);
+      long share = Long.parseLong(props.getProperty(Client.OPERATION_COUNT_PROPERTY));
+      assertTrue(share == 333 || share == 334);
+      operations += share;
+    }
+    assertEquals(1001, operations);
+  }
+
+  /**
+   * Remembers the keys inserted into it.
+   */
+  static class InsertedKeys extends BasicDB {
+    HashSet<String> keys = new HashSet<String>();
+
+    public int insert(String table, String key, HashMap<String, ByteIterator> values) {
+      assertTrue("inserted twice: " + key, keys.add(key));
+      return 0;
+    }
+  }
+
+  @Test
+  public void testTransactionInsertsDontOverlap() throws Exception {
+    Properties run = runProperties();
+    run.setProperty("insertorder", "ordered");
+    Coordinator coordinator = new Coordinator(run, true);
+    InsertedKeys db = new InsertedKeys();
+    for (int i = 0; i < 3; i++) {
+      CoreWorkload workload = new CoreWorkload();
+      workload.init(coordinator.workerProperties(i));
+      for (int n = 0; n < 100; n++) {
+        workload.doTransactionInsert(db);
+      }
+    }
+    //together, the workers inserted the keys one client would have
+    assertEquals(300, db.keys.size());
+    for (long key = 1000; key < 1300; key++) {
+      assertTrue(db.keys.contains("user" + key));
+    }
+  }
+
+  /**
+   * @return the operations of each metric in a text export
+   */
+  static HashMap<String, Long> readOperations(File export) throws Exception {
+    HashMap<String, Long> operations = new HashMap<String, Long>();
+    BufferedReader in = new BufferedReader(new FileReader(export));
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] fields = line.split(", ");
+      if (fields.length == 3 && fields[1].equals("Operations")) {
+        operations.put(fields[0], Long.parseLong(fields[2]));
+      }
+    }
+    in.close();
+    return operations;
+  }
+
+  @Test
+  public void testRunOnTwoWorkers() throws Exception {
+    File export = File.createTempFile("ycsb-coordinator-", ".txt");
+    export.deleteOnExit();
+    Properties props = new Properties();
+    props.setProperty("db", BasicDB.class.getName());
+    props.setProperty("basicdb.verbose", "false");
+    props.setProperty(Client.WORKLOAD_PROPERTY, "com.yahoo.ycsb.workloads.CoreWorkload");
+    props.setProperty(Client.RECORD_COUNT_PROPERTY, "100");
+    props.setProperty(Client.OPERATION_COUNT_PROPERTY, "1001");
+    props.setProperty("readproportion", "0.5");
+    props.setProperty("updateproportion", "0.5");
+    props.setProperty("exportfile", export.getPath());
+    props.setProperty(Coordinator.WORKERS_PROPERTY, "2");
+    props.setProperty(Coordinator.START_DELAY_PROPERTY, "100");
+
+    //the workers are launched as processes on this machine, each with its own measurements
+    new Coordinator(props, true).run();
+
+    HashMap<String, Long> operations = readOperations(export);
+    assertEquals(1001, operations.get("[READ]") + operations.get("[UPDATE]"));
+    //each worker cleaned up its one DB
+    assertEquals(Long.valueOf(2), operations.get("[CLEANUP]"));
+    export.delete();
+  }
+}
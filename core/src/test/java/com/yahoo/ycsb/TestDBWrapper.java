@@ -0,0 +1,113 @@
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurement;
+
+public class TestDBWrapper {
+  /**
+   * Fails every read of a key ending in 0, after sleeping 2 ms on the successful ones.
+   */
+  static class FailingDB extends DB {
+    public int read(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result) {
+      if (key.endsWith("0")) {
+        return -1;
+      }
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+      }
+      return 0;
+    }
+
+    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
+      return 0;
+    }
+
+    public int update(String table, String key, HashMap<String, ByteIterator> values) {
+      return 0;
+    }
+
+    public int insert(String table, String key, HashMap<String, ByteIterator> values) {
+      return 0;
+    }
+
+    public int delete(String table, String key) {
+      return 0;
+    }
+  }
+
+  @BeforeMethod
+  public void setUp() {
+    //the wrapper looks up the global measurements, whatever ran before
+    Measurements.setProperties(new Properties());
+  }
+
+  @Test
+  public void testFailuresMeasuredApart() {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "hdrhistogram");
+    Measurements measurements = new Measurements(props);
+    DBWrapper db = new DBWrapper(new FailingDB());
+    db._measurements = measurements;
+    for (int i = 0; i < 20; i++) {
+      db.read("usertable", "user" + i, null, new HashMap<String, ByteIterator>());
+    }
+
+    OneMeasurement succeeded = measurements.getMeasurement("READ");
+    OneMeasurement failed = measurements.getMeasurement("READ" + Measurements.FAILED);
+    assertEquals(18, succeeded.getOperations());
+    assertEquals(2, failed.getOperations());
+    assertEquals(Long.valueOf(18), succeeded.getReturnCodes().get(0));
+    assertEquals(Long.valueOf(2), failed.getReturnCodes().get(-1));
+    //the fast failures don't pull the successful latencies down
+    assertTrue(succeeded.getPercentile(0) >= 2000);
+
+    long[] outcomes = measurements.getOutcomes("");
+    assertEquals(18, outcomes[0]);
+    assertEquals(2, outcomes[1]);
+  }
+
+  @Test
+  public void testTotalsCountEachOperationOnce() throws DBException {
+    Properties props = new Properties();
+    props.setProperty("measurement.interval", "both");
+    Measurements measurements = new Measurements(props);
+    DBWrapper db = new DBWrapper(new FailingDB());
+    db._measurements = measurements;
+    for (int i = 0; i < 20; i++) {
+      db.read("usertable", "user" + i, null, new HashMap<String, ByteIterator>());
+    }
+    measurements.measure("READ-MODIFY-WRITE", 1000);
+    db.cleanup();
+
+    //not the INTENDED- reads, the failed ones, the read-modify-write or the cleanup
+    assertEquals(18, measurements.getTotals("")[0]);
+  }
+
+  @Test
+  public void testIntendedLatencyOncePerOperation() {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "hdrhistogram");
+    props.setProperty("measurement.interval", "both");
+    Measurements measurements = new Measurements(props);
+    DBWrapper db = new DBWrapper(new FailingDB());
+    db._measurements = measurements;
+    //a read-modify-write that was due a second ago
+    measurements.setIntendedStartTimeNs(System.nanoTime() - 1000000000L);
+    db.read("usertable", "user1", null, new HashMap<String, ByteIterator>());
+    db.update("usertable", "user1", new HashMap<String, ByteIterator>());
+
+    assertTrue(measurements.getMeasurement("INTENDED-READ").getPercentile(100) >= 1000000);
+    //the update wasn't late, only the read that came before it was
+    assertTrue(measurements.getMeasurement("INTENDED-UPDATE").getPercentile(100) < 500000);
+  }
+}
@@ -0,0 +1,56 @@
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+public class TestMetricsServer {
+  @Test
+  public void testScrape() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(MetricsServer.PORT_PROPERTY, "0");
+    props.setProperty("measurementtype", "hdrhistogram");
+    Measurements.setProperties(props);
+    //an earlier test may have created the global measurements already, so start over as a new phase does
+    Measurements measurements = Measurements.getMeasurements();
+    measurements.reset(props);
+    for (int i = 1; i <= 1000; i++) {
+      measurements.measure("READ", i);
+      measurements.reportReturnCode("READ", (i % 10 == 0) ? -1 : 0);
+    }
+
+    MetricsServer server = new MetricsServer(props);
+    try {
+      URL url = new URL("http://localhost:" + server.getPort() + "/metrics");
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      assertEquals(200, connection.getResponseCode());
+      assertTrue(connection.getContentType().startsWith("application/openmetrics-text"));
+      BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+      StringBuilder body = new StringBuilder();
+      String line;
+      while ((line = in.readLine()) != null) {
+        body.append(line).append("\n");
+      }
+      in.close();
+
+      String metrics = body.toString();
+      assertTrue(metrics.contains("ycsb_operations_total 0\n"));
+      assertTrue(metrics.contains("ycsb_latency_microseconds{operation=\"READ\",quantile=\"0.5\"} 500\n"));
+      assertTrue(metrics.contains("ycsb_latency_microseconds{operation=\"READ\",quantile=\"0.999\"} 999\n"));
+      assertTrue(metrics.contains("ycsb_latency_microseconds_count{operation=\"READ\"} 1000\n"));
+      assertTrue(metrics.contains("ycsb_latency_microseconds_sum{operation=\"READ\"} 500500\n"));
+      assertTrue(metrics.contains("ycsb_return_codes_total{operation=\"READ\",code=\"-1\"} 100\n"));
+      assertTrue(metrics.contains("ycsb_return_codes_total{operation=\"READ\",code=\"0\"} 900\n"));
+      assertTrue(metrics.endsWith("# EOF\n"));
+    } finally {
+      server.stop();
+    }
+  }
+}
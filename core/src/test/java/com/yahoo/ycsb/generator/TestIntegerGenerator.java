@@ -0,0 +1,55 @@
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestIntegerGenerator {
+  /**
+   * Only knows its values as ints, without ever setting them.
+   */
+  static class IntOnlyGenerator extends IntegerGenerator {
+    int last = -1;
+
+    public int nextInt() {
+      return ++last;
+    }
+
+    public int lastInt() {
+      return last;
+    }
+
+    public double mean() {
+      return 0;
+    }
+  }
+
+  @Test
+  public void testLastLongOfIntGenerator() {
+    IntOnlyGenerator gen = new IntOnlyGenerator();
+    gen.nextInt();
+    gen.nextInt();
+    assertEquals(1, gen.lastLong());
+    assertEquals("1", gen.lastString());
+  }
+
+  @Test
+  public void testLastLongBeyondInts() {
+    CounterGenerator counter = new CounterGenerator(5000000000L);
+    assertEquals(5000000000L, counter.nextLong());
+    assertEquals(5000000000L, counter.lastLong());
+    assertEquals((int) 5000000000L, counter.lastInt());
+
+    UniformIntegerGenerator uniform = new UniformIntegerGenerator(5000000000L, 5000000000L);
+    assertEquals(5000000000L, uniform.nextLong());
+    assertEquals(5000000000L, uniform.lastLong());
+  }
+
+  @Test
+  public void testStridedCounter() {
+    CounterGenerator counter = new CounterGenerator(1002, 3);
+    assertEquals(1001, counter.lastLong());
+    assertEquals(1002, counter.nextLong());
+    assertEquals(1005, counter.nextLong());
+    assertEquals(1005, counter.lastLong());
+  }
+}
@@ -0,0 +1,55 @@
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestZipfianGenerator {
+  static double sum(long n, double theta) {
+    double sum = 0;
+    for (long i = n; i >= 1; i--) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+
+  @Test
+  public void testZetaApproximation() {
+    for (double theta : new double[] {0.5, 0.99, 1.0, 1.3}) {
+      for (long n : new long[] {10, 1000, 1001, 123456}) {
+        double exact = sum(n, theta);
+        assertEquals(exact, ZipfianGenerator.zetastatic(n, theta), exact * 1e-13);
+        //incrementally, from less items
+        double zeta = ZipfianGenerator.zetastatic(n / 2, theta);
+        assertEquals(exact, ZipfianGenerator.zetastatic(n / 2, n, theta, zeta), exact * 1e-13);
+      }
+    }
+  }
+
+  @Test
+  public void testZetaOfTenBillionItems() {
+    long start = System.nanoTime();
+    double zeta = ZipfianGenerator.zetastatic(ScrambledZipfianGenerator.ITEM_COUNT, ScrambledZipfianGenerator.USED_ZIPFIAN_CONSTANT);
+    assertTrue(System.nanoTime() - start < 1000000000L);
+    assertEquals(ScrambledZipfianGenerator.ZETAN, zeta, 1e-9);
+  }
+
+  @Test
+  public void testOtherConstants() {
+    for (double theta : new double[] {0.5, 1.2}) {
+      long start = System.nanoTime();
+      new ScrambledZipfianGenerator(ScrambledZipfianGenerator.ITEM_COUNT, theta);
+      assertTrue(System.nanoTime() - start < 1000000000L);
+
+      //the most popular item comes up 1/zeta of the time
+      ZipfianGenerator gen = new ZipfianGenerator(1000, theta);
+      int first = 0;
+      for (int i = 0; i < 200000; i++) {
+        if (gen.nextLong() == 0) {
+          first++;
+        }
+      }
+      double expected = 1 / sum(1000, theta);
+      assertEquals(expected, first / 200000.0, expected * 0.1);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how recording latencies scales with the number of client threads, with the striped and the
+ * synchronized recorders. Run with
+ *
+ *   mvn -pl core test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=MeasurementsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MeasurementsBenchmark {
+  @Param({"striped", "synchronized"})
+  public String recorder;
+
+  @Param({"histogram", "hdrhistogram"})
+  public String measurementtype;
+
+  Measurements measurements;
+
+  @Setup
+  public void setup() {
+    Properties props = new Properties();
+    props.setProperty(Measurements.RECORDER, recorder);
+    props.setProperty("measurementtype", measurementtype);
+    measurements = new Measurements(props);
+  }
+
+  /**
+   * The latencies one thread records, spread over a few milliseconds.
+   */
+  @State(Scope.Thread)
+  public static class Latencies {
+    int next;
+
+    int next() {
+      next = (next + 997) % 5000;
+      return next;
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void measure1(Latencies latencies) {
+    measurements.measure("READ", latencies.next());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void measure8(Latencies latencies) {
+    measurements.measure("READ", latencies.next());
+  }
+
+  @Benchmark
+  @Threads(32)
+  public void measure32(Latencies latencies) {
+    measurements.measure("READ", latencies.next());
+  }
+
+  @Benchmark
+  @Threads(128)
+  public void measure128(Latencies latencies) {
+    measurements.measure("READ", latencies.next());
+  }
+}
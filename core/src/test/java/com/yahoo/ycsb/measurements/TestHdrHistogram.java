@@ -0,0 +1,99 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+public class TestHdrHistogram {
+  @Test
+  public void testPercentiles() {
+    HdrHistogram h = new HdrHistogram(3600000000L, 3);
+    for (long v = 1; v <= 100000; v++) {
+      h.recordValue(v);
+    }
+    assertEquals(100000, h.getTotalCount());
+    assertEquals(1, h.getMin());
+    assertEquals(100000, h.getMax());
+    assertEquals(50000.5, h.getMean(), 0.0);
+    //3 significant digits: within 0.1% of the exact value, never below it
+    assertTrue(Math.abs(h.getValueAtPercentile(50) - 50000) <= 50);
+    assertTrue(Math.abs(h.getValueAtPercentile(99) - 99000) <= 99);
+    assertTrue(Math.abs(h.getValueAtPercentile(99.9) - 99900) <= 100);
+    assertEquals(100000, h.getValueAtPercentile(100));
+    //small values are exact
+    HdrHistogram small = new HdrHistogram(3600000000L, 3);
+    small.recordValue(200);
+    small.recordValue(201);
+    assertEquals(200, small.getValueAtPercentile(50));
+    assertEquals(201, small.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testAdd() {
+    HdrHistogram a = new HdrHistogram(1000000L, 2);
+    HdrHistogram b = new HdrHistogram(a);
+    a.recordValue(10);
+    b.recordValue(5000000);
+    a.add(b);
+    assertEquals(2, a.getTotalCount());
+    assertEquals(10, a.getMin());
+    //beyond the highest trackable value, but the maximum is still exact
+    assertEquals(5000000, a.getMax());
+    assertEquals(10, a.getValueAtPercentile(50));
+  }
+
+  @Test
+  public void testDistributionInCoarserUnits() {
+    HdrHistogram h = new HdrHistogram(3600000000000L, 3);
+    h.recordValue(300);
+    h.recordValue(999);
+    h.recordValue(1500);
+    h.recordValue(200000);
+    long[][] us = h.getDistribution(1000);
+    assertEquals(us[0].length, new HdrHistogram(h).getDistribution(1000)[0].length);
+    long total = 0;
+    for (int i = 0; i < us[0].length; i++) {
+      if (i > 0) {
+        assertTrue(us[0][i] > us[0][i - 1]);
+      }
+      total += us[1][i];
+    }
+    assertEquals(4, total);
+    assertEquals(0, us[0][0]);
+    assertEquals(2, us[1][0]);
+  }
+
+  @Test
+  public void testNanosExportedInReadableUnits() throws Exception {
+    OneMeasurementHdrHistogram fast = new OneMeasurementHdrHistogram("READ", new Properties());
+    for (int i = 1; i <= 1000; i++) {
+      fast.measureNanos(i);
+    }
+    String export = export(fast);
+    assertTrue(export.contains("[READ], AverageLatency(ns), 500.5\n"));
+    assertTrue(export.contains("[READ], 50thPercentileLatency(ns), 500.0\n"));
+    assertTrue(export.contains("[READ], MaxLatency(ns), 1000.0\n"));
+    assertEquals(0.5, fast.getPercentile(50), 0.0);
+
+    OneMeasurementHdrHistogram slow = new OneMeasurementHdrHistogram("READ", new Properties());
+    slow.measure(2000);
+    assertTrue(export(slow).contains("[READ], 50thPercentileLatency(us), 2000.0\n"));
+
+    //not truncated to whole units
+    OneMeasurementHdrHistogram mid = new OneMeasurementHdrHistogram("READ", new Properties());
+    mid.measureNanos(12345);
+    assertTrue(export(mid).contains("[READ], MaxLatency(us), 12.345\n"));
+  }
+
+  static String export(OneMeasurement m) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    m.exportMeasurements(exporter);
+    exporter.close();
+    return out.toString();
+  }
+}
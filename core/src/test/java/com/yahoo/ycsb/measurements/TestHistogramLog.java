@@ -0,0 +1,73 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestHistogramLog {
+  @Test
+  public void testIntervals() throws Exception {
+    File file = File.createTempFile("histogram", ".log");
+    file.deleteOnExit();
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "hdrhistogram");
+    props.setProperty(HistogramLogWriter.FILE_PROPERTY, file.getPath());
+
+    Measurements measurements = new Measurements(props);
+    HistogramLogWriter writer = new HistogramLogWriter(props, false, measurements);
+    for (int i = 1; i <= 100; i++) {
+      measurements.measure("READ", i);
+    }
+    writer.logInterval();
+    //only what was measured since is in the next interval
+    for (int i = 0; i < 10; i++) {
+      measurements.measure("READ", 5000);
+      measurements.measure("UPDATE", 7);
+    }
+    writer.finish();
+
+    HistogramLogReader reader = new HistogramLogReader(new FileInputStream(file));
+    HistogramLogReader.Interval first = reader.next();
+    assertEquals(1, first._counts.size());
+    assertEquals(100, HistogramLogReader.getOperations(first._counts.get("READ")));
+    assertEquals(50, HistogramLogReader.getPercentile(first._counts.get("READ"), 50));
+    assertEquals(100, HistogramLogReader.getPercentile(first._counts.get("READ"), 100));
+
+    HistogramLogReader.Interval second = reader.next();
+    assertTrue(second._start >= first._end);
+    assertEquals(10, HistogramLogReader.getOperations(second._counts.get("READ")));
+    assertTrue(Math.abs(HistogramLogReader.getPercentile(second._counts.get("READ"), 50) - 5000) <= 5);
+    assertEquals(7, HistogramLogReader.getPercentile(second._counts.get("UPDATE"), 99));
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testIntervalAfterReset() throws Exception {
+    File file = File.createTempFile("histogram", ".log");
+    file.deleteOnExit();
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "hdrhistogram");
+    props.setProperty(HistogramLogWriter.FILE_PROPERTY, file.getPath());
+
+    Measurements measurements = new Measurements(props);
+    HistogramLogWriter writer = new HistogramLogWriter(props, false, measurements);
+    for (int i = 0; i < 10; i++) {
+      measurements.measure("READ", 100);
+    }
+    writer.logInterval();
+    //the next phase measures more of the same, so no count goes down
+    measurements.reset(props);
+    for (int i = 0; i < 30; i++) {
+      measurements.measure("READ", 100);
+    }
+    writer.finish();
+
+    HistogramLogReader reader = new HistogramLogReader(new FileInputStream(file));
+    assertEquals(10, HistogramLogReader.getOperations(reader.next()._counts.get("READ")));
+    assertEquals(30, HistogramLogReader.getOperations(reader.next()._counts.get("READ")));
+    assertNull(reader.next());
+  }
+}
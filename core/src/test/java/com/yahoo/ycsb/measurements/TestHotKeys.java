@@ -0,0 +1,102 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestHotKeys {
+  @Test
+  public void testTopK() throws InterruptedException {
+    Properties props = new Properties();
+    props.setProperty(HotKeys.TOP_K_PROPERTY, "3");
+    final HotKeys hotkeys = new HotKeys(props);
+    //a long tail of cold keys, with user1..user3 hot in both threads and user4 the slowest
+    Thread[] threads = new Thread[2];
+    for (int t = 0; t < threads.length; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        public void run() {
+          Random random = new Random(42 + thread);
+          for (int i = 0; i < 50000; i++) {
+            hotkeys.add("user" + (1000 + random.nextInt(100000)), 1000);
+          }
+          for (int hot = 1; hot <= 3; hot++) {
+            for (int i = 0; i < 500 * hot; i++) {
+              hotkeys.add("user" + hot, 1000);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    hotkeys.add("user4", 100000000000L);
+
+    ArrayList<HotKeys.HotKey> byoperations = hotkeys.getTop(false);
+    assertEquals(3, byoperations.size());
+    assertEquals("user3", byoperations.get(0)._key);
+    assertEquals("user2", byoperations.get(1)._key);
+    assertEquals("user1", byoperations.get(2)._key);
+    //estimates can only be too high, by at most e/width of all operations with depth 4
+    assertTrue(byoperations.get(0)._operations >= 3000);
+    assertTrue(byoperations.get(0)._operations <= 3000 + 106000 * Math.E / 4096);
+
+    ArrayList<HotKeys.HotKey> bylatency = hotkeys.getTop(true);
+    assertEquals("user4", bylatency.get(0)._key);
+    assertEquals("user3", bylatency.get(1)._key);
+  }
+
+  @Test
+  public void testStripesDontGrowWithThreads() throws InterruptedException {
+    Properties props = new Properties();
+    props.setProperty(HotKeys.TOP_K_PROPERTY, "1");
+    final HotKeys hotkeys = new HotKeys(props);
+    Thread[] threads = new Thread[16];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            hotkeys.add("user1", 1);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    int sketches = 0;
+    for (int i = 0; i < hotkeys._sketches.length(); i++) {
+      if (hotkeys._sketches.get(i) != null) {
+        sketches++;
+      }
+    }
+    assertEquals(StripedMeasurement.stripes(), hotkeys._sketches.length());
+    assertTrue(sketches <= Math.min(threads.length, StripedMeasurement.stripes()));
+    //the only key, so its counters hold exactly its operations: none were lost to threads sharing a stripe
+    HotKeys.HotKey top = hotkeys.getTop(false).get(0);
+    assertEquals(160000, top._operations);
+    assertEquals(160000, top._latency);
+  }
+
+  @Test
+  public void testHeap() {
+    HotKeys.TopK top = new HotKeys.TopK(2);
+    top.offer("a", 1);
+    top.offer("b", 2);
+    top.offer("c", 3);
+    assertFalse(top._positions.containsKey("a"));
+    top.offer("b", 5);
+    top.offer("d", 4);
+    assertEquals(2, top._size);
+    assertEquals("d", top._keys[0]);
+    assertEquals(4, top._values[0]);
+    assertTrue(top._positions.containsKey("b"));
+  }
+}
@@ -0,0 +1,77 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+public class TestJvmTelemetry {
+  static JvmTelemetry newTelemetry() {
+    Properties props = new Properties();
+    props.setProperty(JvmTelemetry.INTERVAL_PROPERTY, "1000");
+    return new JvmTelemetry(props);
+  }
+
+  @Test
+  public void testPausesOverlappingOperations() throws Exception {
+    JvmTelemetry telemetry = newTelemetry();
+    //timer slack, then two stalls of 5 ms and 20 ms
+    telemetry.hiccup(1000000, 1100000);
+    telemetry.hiccup(10000000, 15000000);
+    telemetry.hiccup(30000000, 50000000);
+
+    assertEquals(2, telemetry._stalls);
+    assertEquals(25000000, telemetry._hiccuptime);
+    assertEquals(0, telemetry.getPausedTime(0, 5000000));
+    assertEquals(5000000, telemetry.getPausedTime(0, 20000000));
+    assertEquals(2000000 + 10000000, telemetry.getPausedTime(13000000, 40000000));
+
+    telemetry.countPause("READ", 0, 5000000);
+    telemetry.countPause("READ", 0, 20000000);
+    telemetry.countPause("READ", 13000000, 40000000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    telemetry.exportPauses("READ", exporter);
+    telemetry.exportPauses("UPDATE", exporter);
+    exporter.close();
+    String exported = out.toString();
+    assertTrue(exported.contains("[READ], ClientPauseTime(us), 17000\n"));
+    assertTrue(exported.contains("[READ], PausedOperations, 2\n"));
+    assertTrue(exported.contains("[UPDATE], PausedOperations, 0\n"));
+  }
+
+  @Test
+  public void testSamples() throws Exception {
+    JvmTelemetry telemetry = newTelemetry();
+    telemetry.start();
+    byte[][] garbage = new byte[100][];
+    for (int i = 0; i < garbage.length; i++) {
+      garbage[i] = new byte[100000];
+    }
+    telemetry.finish();
+    assertFalse(telemetry._samples.isEmpty());
+    //the garbage above, if the JVM counts allocations at all
+    assertTrue(telemetry._allocated == 0 || telemetry._allocated >= 100 * 100000);
+    for (long[] sample : telemetry._samples) {
+      assertTrue(sample[5] > 0);
+    }
+  }
+
+  @Test
+  public void testAllocationRateOfPartialInterval() throws Exception {
+    JvmTelemetry telemetry = newTelemetry();
+    //a full interval, then the last one cut short at 250 ms, with 2 MB allocated in each
+    telemetry._samples.add(new long[] {0, 0, 0, 0, 2 * 1048576, 1000000000});
+    telemetry._samples.add(new long[] {0, 0, 0, 0, 2 * 1048576, 250000000});
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    telemetry.exportMeasurements(exporter);
+    exporter.close();
+    String exported = out.toString();
+    assertTrue(exported.contains("[JVM-ALLOCATION(MB/sec)], 0, 2.0\n"));
+    assertTrue(exported.contains("[JVM-ALLOCATION(MB/sec)], 1000, 8.0\n"));
+  }
+}
@@ -0,0 +1,90 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+public class TestMergedMeasurements {
+  static String merge(String... sources) throws Exception {
+    MergedMeasurements merged = new MergedMeasurements();
+    for (String source : sources) {
+      merged.addSource(new StringReader(source));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    merged.exportMeasurements(exporter);
+    exporter.close();
+    return out.toString();
+  }
+
+  @Test
+  public void testMergeHistograms() throws Exception {
+    String a = "[OVERALL], RunTime(ms), 1000.0\n[OVERALL], Throughput(ops/sec), 100.0\n"
+        + "[READ], Operations, 100\n[READ], AverageLatency(us), 500.0\n[READ], MinLatency(us), 10\n"
+        + "[READ], MaxLatency(us), 900\n[READ], 95thPercentileLatency(ms), 0\n[READ], Return=0, 100\n"
+        + "[READ], 0, 100\n[READ], 1, 0\n[READ], 2, 0\n[READ], >3, 0\n";
+    String b = "[OVERALL], RunTime(ms), 2000.0\n[OVERALL], Throughput(ops/sec), 50.0\n"
+        + "[READ], Operations, 100\n[READ], AverageLatency(us), 2500.0\n[READ], MinLatency(us), 2000\n"
+        + "[READ], MaxLatency(us), 2900\n[READ], 95thPercentileLatency(ms), 2\n[READ], Return=0, 99\n"
+        + "[READ], Return=-1, 1\n[READ], 0, 0\n[READ], 1, 0\n[READ], 2, 100\n[READ], >3, 0\n";
+    String merged = merge(a, b);
+
+    assertTrue(merged.contains("[OVERALL], RunTime(ms), 2000.0\n"));
+    assertTrue(merged.contains("[OVERALL], Throughput(ops/sec), 100.0\n"));
+    assertTrue(merged.contains("[READ], Operations, 200\n"));
+    assertTrue(merged.contains("[READ], AverageLatency(us), 1500.0\n"));
+    assertTrue(merged.contains("[READ], MinLatency(us), 10\n"));
+    assertTrue(merged.contains("[READ], MaxLatency(us), 2900\n"));
+    //half the operations are in the first bucket, so the 95th percentile is in the third
+    assertTrue(merged.contains("[READ], 95thPercentileLatency(ms), 2\n"));
+    assertTrue(merged.contains("[READ], Return=0, 199\n"));
+    assertTrue(merged.contains("[READ], Return=-1, 1\n"));
+    assertTrue(merged.contains("[READ], 0, 100\n"));
+    assertTrue(merged.contains("[READ], 2, 100\n"));
+    assertTrue(merged.contains("[READ], >3, 0\n"));
+  }
+
+  static String export(OneMeasurement measurement) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    measurement.exportMeasurements(exporter);
+    exporter.close();
+    return out.toString();
+  }
+
+  @Test
+  public void testMergeDistributions() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(OneMeasurementHdrHistogram.EXPORT_DISTRIBUTION, "true");
+    props.setProperty(OneMeasurementHdrHistogram.LATENCY_UNIT, "us");
+    props.setProperty(OneMeasurementHdrHistogram.PERCENTILES, "50,99,99.9");
+    OneMeasurementHdrHistogram a = new OneMeasurementHdrHistogram("READ", props);
+    OneMeasurementHdrHistogram b = new OneMeasurementHdrHistogram("READ", props);
+    OneMeasurementHdrHistogram all = new OneMeasurementHdrHistogram("READ", props);
+    //a fast client and a slow one: the mean of their 99th percentiles is far from the real one
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      long fast = 100000 + random.nextInt(100000);
+      long slow = 1000000 + random.nextInt(9000000);
+      a.measureNanos(fast);
+      b.measureNanos(slow);
+      all.measureNanos(fast);
+      all.measureNanos(slow);
+    }
+    a.reportReturnCode(0);
+    b.reportReturnCode(0);
+    all.reportReturnCode(0);
+    all.reportReturnCode(0);
+
+    String merged = merge(export(a), export(b));
+    assertEquals(export(all), merged);
+    //and merging the merged export again changes nothing
+    assertEquals(merged, merge(merged));
+  }
+}
@@ -0,0 +1,55 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+public class TestOneMeasurementTimeSeries {
+  /**
+   * Measure 10 latencies of 1..10 ms in each of 5 units, and export the series.
+   */
+  static String export(Properties props) throws Exception {
+    props.setProperty(OneMeasurementTimeSeries.MAX_UNITS, "2");
+    OneMeasurementTimeSeries m = new OneMeasurementTimeSeries("READ", props);
+    for (int unit = 0; unit < 5; unit++) {
+      for (int i = 1; i <= 10; i++) {
+        m.measure(i * 1000);
+      }
+      //move on to the next unit
+      m.start -= 1000;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    m.exportMeasurements(exporter);
+    exporter.close();
+    return out.toString();
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    String series = export(new Properties());
+    assertTrue(series.contains("[READ], Operations, 50\n"));
+    assertTrue(series.contains("[READ], 99thPercentileLatency(us), 10000\n"));
+    for (int unit = 0; unit < 5; unit++) {
+      assertTrue(series.contains("[READ], " + unit * 1000 + ", 5500.0\n"));
+      assertTrue(series.contains("[READ], " + unit * 1000 + "-Operations, 10\n"));
+      assertTrue(series.contains("[READ], " + unit * 1000 + "-50thPercentileLatency(us), 5003\n"));
+    }
+    assertFalse(series.contains("DroppedUnits"));
+  }
+
+  @Test
+  public void testDrop() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(OneMeasurementTimeSeries.SPILL, "false");
+    String series = export(props);
+    assertTrue(series.contains("[READ], DroppedUnits, 3\n"));
+    assertFalse(series.contains("[READ], 2000, "));
+    assertTrue(series.contains("[READ], 3000-Operations, 10\n"));
+    assertTrue(series.contains("[READ], 4000-Operations, 10\n"));
+  }
+}
@@ -0,0 +1,62 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestRawCapture {
+  @Test
+  public void testKeyId() {
+    assertEquals(1234, RawCapture.keyId("user1234"));
+    assertEquals(7, RawCapture.keyId("7"));
+    assertEquals(-1, RawCapture.keyId("user"));
+    assertEquals(-1, RawCapture.keyId(null));
+    assertEquals(123456789012345678L, RawCapture.keyId("user99123456789012345678"));
+  }
+
+  @Test
+  public void testCapture() throws Exception {
+    File file = File.createTempFile("rawcapture", ".bin");
+    file.deleteOnExit();
+    Properties props = new Properties();
+    props.setProperty(RawCapture.FILE_PROPERTY, file.getPath());
+    props.setProperty(RawCapture.BUFFER_SIZE_PROPERTY, "4");
+
+    //two phases, the second one appending to the first
+    for (int phase = 0; phase < 2; phase++) {
+      long start = System.currentTimeMillis();
+      RawCapture capture = new RawCapture(props, phase > 0);
+      RawCapture.Ring ring = capture.newRing();
+      long now = System.nanoTime();
+      //nothing drains the ring, so only the first 4 fit
+      for (int i = 0; i < 6; i++) {
+        capture.record(ring, RawCapture.UPDATE, "user" + i, now, now + 1000 * i, -i);
+      }
+      capture.start();
+      capture.finish();
+      assertEquals(4, capture.getRecords());
+      assertEquals(2, capture.getDropped());
+
+      RawCaptureReader reader = new RawCaptureReader(new FileInputStream(file));
+      for (int p = 0; p <= phase; p++) {
+        for (int i = 0; i < 4; i++) {
+          RawCaptureReader.Record record = reader.next();
+          assertEquals("UPDATE", record._operation);
+          assertEquals(i, record._keyid);
+          assertEquals(1000 * i, record._latency);
+          assertEquals(-i, record._returncode);
+          if (p == phase) {
+            assertTrue(record._timestamp >= start * 1000);
+            //the header time is in ms and the offset from it in us, so the timestamp can be ahead of the ms clock
+            assertTrue(record._timestamp <= (System.currentTimeMillis() + 1) * 1000);
+          }
+        }
+      }
+      assertNull(reader.next());
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestRunComparison {
+  @Test
+  public void testQuantiles() {
+    assertEquals(1.95996, RunComparison.normalQuantile(0.975), 1e-5);
+    assertEquals(-2.32635, RunComparison.normalQuantile(0.01), 1e-5);
+    assertEquals(2.228, RunComparison.tQuantile(0.975, 10), 0.005);
+    assertEquals(2.042, RunComparison.tQuantile(0.975, 30), 0.002);
+  }
+
+  /**
+   * An export of 20 intervals of READ throughput around the given one, and a fixed 99th percentile.
+   */
+  static LinkedHashMap<String, LinkedHashMap<String, String>> run(double throughput, double noise, long p99, long seed) throws Exception {
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder();
+    sb.append("[OVERALL], RunTime(ms), 20000\n[OVERALL], Throughput(ops/sec), " + throughput + "\n");
+    sb.append("[READ], Operations, " + (long) (throughput * 20) + "\n[READ], 99thPercentileLatency(ms), " + p99 + "\n");
+    for (int i = 0; i < 20; i++) {
+      sb.append("[READ-THROUGHPUT], " + (i * 1000) + ", " + (throughput + noise * random.nextGaussian()) + "\n");
+    }
+    return MergedMeasurements.readSource(new StringReader(sb.toString()));
+  }
+
+  static RunComparison.Comparison find(ArrayList<RunComparison.Comparison> comparisons, String metric, String measurement) {
+    for (RunComparison.Comparison c : comparisons) {
+      if (c._metric.equals(metric) && c._measurement.equals(measurement)) {
+        return c;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testRegressions() throws Exception {
+    RunComparison comparison = new RunComparison(5, 95, 100);
+    LinkedHashMap<String, LinkedHashMap<String, String>> baseline = run(1000, 10, 2, 1);
+
+    //10% slower, well past the noise, and a 99th percentile that went from 2 to 3 ms
+    ArrayList<RunComparison.Comparison> slower = comparison.compare(baseline, run(900, 10, 3, 2));
+    RunComparison.Comparison overall = find(slower, "OVERALL", "Throughput(ops/sec)");
+    assertEquals(-10.0, overall._delta, 1e-9);
+    assertTrue(overall._significant);
+    assertTrue(overall._regression);
+    assertTrue(find(slower, "READ", "Throughput(ops/sec)")._regression);
+    RunComparison.Comparison p99 = find(slower, "READ", "99thPercentileLatency(us)");
+    assertEquals(2000.0, p99._baseline, 1e-9);
+    assertEquals(50.0, p99._delta, 1e-9);
+    //no intervals of the percentile, so the threshold alone decides
+    assertTrue(Double.isNaN(p99._interval));
+    assertTrue(p99._regression);
+
+    //10% slower on average, but within the noise of the intervals
+    ArrayList<RunComparison.Comparison> noisy = comparison.compare(run(1000, 400, 2, 3), run(900, 400, 2, 4));
+    assertFalse(find(noisy, "OVERALL", "Throughput(ops/sec)")._regression);
+
+    //faster is never a regression
+    ArrayList<RunComparison.Comparison> faster = comparison.compare(baseline, run(1200, 10, 1, 5));
+    for (RunComparison.Comparison c : faster) {
+      assertFalse(c._regression);
+    }
+  }
+}
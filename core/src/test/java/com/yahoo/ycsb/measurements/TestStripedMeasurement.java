@@ -0,0 +1,110 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestStripedMeasurement {
+  @Test
+  public void testMerge() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "histogram");
+    final Measurements measurements = new Measurements(props);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int latency = (t + 1) * 1000;
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            measurements.measure("READ", latency);
+            measurements.reportReturnCode("READ", 0);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    OneMeasurement m = measurements.getMeasurement("READ");
+    assertTrue(m instanceof StripedMeasurement);
+    assertEquals(4000, m.getOperations());
+    assertEquals(10000000, m.getTotalLatency());
+    assertEquals(3000.0, m.getPercentile(50), 0.0);
+    assertEquals(4000.0, m.getPercentile(99), 0.0);
+
+    OneMeasurementHistogram merged = (OneMeasurementHistogram) ((StripedMeasurement) m).merge();
+    assertEquals(1000, merged.min);
+    assertEquals(4000, merged.max);
+    assertEquals(4000, merged.returncodes.get(0).get());
+    assertEquals("[READ AverageLatency(us)=2500]", m.getSummary());
+    assertEquals("", m.getSummary());
+  }
+
+  @Test
+  public void testStripesDontGrowWithThreads() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "hdrhistogram");
+    final Measurements measurements = new Measurements(props);
+    final StripedMeasurement m = (StripedMeasurement) measurements.constructOneMeasurement("READ");
+    Thread[] threads = new Thread[200];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          m.measure(1000);
+          m.reportReturnCode(0);
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(m._stripes.length() <= StripedMeasurement.MAX_STRIPES);
+    assertEquals(200, m.getOperations());
+
+    //the merged view is kept, and only what was recorded since is added to it
+    OneMeasurement merged = m.merge();
+    m.measure(3000);
+    m.reportReturnCode(-1);
+    assertSame(merged, m.merge());
+    assertEquals(201, m.getOperations());
+    assertEquals(Long.valueOf(200), m.getReturnCodes().get(0));
+    assertEquals(Long.valueOf(1), m.getReturnCodes().get(-1));
+    assertEquals(3000.0, m.getPercentile(100), 1.0);
+  }
+
+  @Test
+  public void testMergeWhileRecording() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "hdrhistogram");
+    final StripedMeasurement m = (StripedMeasurement) new Measurements(props).constructOneMeasurement("READ");
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final long latency = (t + 1) * 100L;
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            m.measureNanos(latency);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    //reads take what was counted so far, while the threads go on counting
+    for (int i = 0; i < 50; i++) {
+      m.getPercentile(99);
+      Thread.yield();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    OneMeasurementHdrHistogram merged = (OneMeasurementHdrHistogram) m.merge();
+    assertEquals(160000, merged.histogram.getTotalCount());
+    assertEquals(20000L * 3600, merged.histogram.getSum());
+    assertEquals(100, merged.histogram.getMin());
+    assertEquals(800, merged.histogram.getMax());
+  }
+}
@@ -0,0 +1,56 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
+
+public class TestThroughputSeries {
+  @Test
+  public void testSeries() throws Exception {
+    ThroughputSeries series = new ThroughputSeries("READ", 500);
+    for (int i = 0; i < 10; i++) {
+      series.count(0);
+    }
+    series.count(3);
+    series.count(ThroughputSeries.CHUNK + 1);
+    series.count(((long) ThroughputSeries.CHUNK) * ThroughputSeries.MAX_CHUNKS);
+
+    long[] counts = series.getCounts();
+    assertEquals(ThroughputSeries.CHUNK + 2, counts.length);
+    assertEquals(10, counts[0]);
+    assertEquals(0, counts[1]);
+    assertEquals(1, counts[3]);
+    assertEquals(1, counts[ThroughputSeries.CHUNK + 1]);
+  }
+
+  @Test
+  public void testExportedAlongsideLatency() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Measurements.THROUGHPUT_GRANULARITY, "1000");
+    Measurements measurements = new Measurements(props);
+    for (int i = 0; i < 5; i++) {
+      measurements.measure("READ", 100);
+      measurements.reportReturnCode("READ", 0);
+    }
+    measurements.measure("UPDATE", 100);
+    measurements.reportReturnCode("UPDATE", 0);
+    //as if the run started 2.5 s ago
+    measurements.throughputstart.addAndGet(-2500000000L);
+    measurements.reportReturnCode("READ", 0);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextMeasurementsExporter exporter = new TextMeasurementsExporter(out);
+    measurements.exportMeasurements(exporter);
+    exporter.close();
+    String export = out.toString();
+    assertTrue(export.contains("[READ-THROUGHPUT], 0, 5.0\n"));
+    assertTrue(export.contains("[READ-THROUGHPUT], 1000, 0.0\n"));
+    assertTrue(export.contains("[READ-THROUGHPUT], 2000, 1.0\n"));
+    assertTrue(export.contains("[UPDATE-THROUGHPUT], 0, 1.0\n"));
+    assertTrue(export.indexOf("[READ], Operations") < export.indexOf("[READ-THROUGHPUT]"));
+  }
+}